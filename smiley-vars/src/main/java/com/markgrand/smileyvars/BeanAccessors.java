@@ -0,0 +1,183 @@
+package com.markgrand.smileyvars;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Functions that get the values of the properties of objects, so that objects can be used to provide the values of
+ * SmileyVars. A property is a record component, a public getter ({@code getName()} or, for {@code boolean},
+ * {@code isName()}) or a field, in that order of precedence. The accessors for a class are found the first time they
+ * are needed and then cached.
+ * <p>Getters of public classes that are visible to SmileyVars are called through functions generated with {@link
+ * LambdaMetafactory}, so they cost about the same as calling the getter directly. Other properties are read through
+ * {@link MethodHandle}s.</p>
+ *
+ * @author Mark Grand
+ */
+final class BeanAccessors {
+    private static final Logger logger = LoggerFactory.getLogger(BeanAccessors.class);
+
+    private static final ClassValue<Map<String, Function<Object, Object>>> accessorsByClass
+            = new ClassValue<Map<String, Function<Object, Object>>>() {
+        @Override
+        protected Map<String, Function<Object, Object>> computeValue(Class<?> type) {
+            return findAccessors(type);
+        }
+    };
+
+    private BeanAccessors() {
+    }
+
+    /**
+     * Get the accessors for the properties of a class.
+     *
+     * @param type The class.
+     * @return an unmodifiable map of accessors keyed by property name.
+     */
+    @NotNull
+    static Map<String, Function<Object, Object>> forClass(@NotNull Class<?> type) {
+        return accessorsByClass.get(type);
+    }
+
+    @NotNull
+    private static Map<String, Function<Object, Object>> findAccessors(@NotNull Class<?> type) {
+        Map<String, Function<Object, Object>> accessors = new HashMap<>();
+        // Properties with higher precedence are found later, so they replace those with lower precedence.
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic() && !accessors.containsKey(field.getName())) {
+                    Function<Object, Object> accessor = fieldAccessor(field);
+                    if (accessor != null) {
+                        accessors.put(field.getName(), accessor);
+                    }
+                }
+            }
+        }
+        for (Method method : type.getMethods()) {
+            String name = propertyName(method);
+            if (name != null) {
+                Function<Object, Object> accessor = methodAccessor(method);
+                if (accessor != null) {
+                    accessors.put(name, accessor);
+                }
+            }
+        }
+        addRecordComponentAccessors(type, accessors);
+        logger.debug("Found properties {} of {}", accessors.keySet(), type.getName());
+        return Collections.unmodifiableMap(accessors);
+    }
+
+    /**
+     * Get the name of the property that a method is the getter for.
+     *
+     * @return the name or null if the method is not a getter.
+     */
+    @Nullable
+    private static String propertyName(@NotNull Method method) {
+        if (method.getParameterCount() != 0 || Modifier.isStatic(method.getModifiers())
+                    || method.getDeclaringClass() == Object.class || method.getReturnType() == void.class) {
+            return null;
+        }
+        String name = method.getName();
+        int prefixLength;
+        if (name.startsWith("get")) {
+            prefixLength = 3;
+        } else if (name.startsWith("is") && method.getReturnType() == boolean.class) {
+            prefixLength = 2;
+        } else {
+            return null;
+        }
+        if (name.length() == prefixLength) {
+            return null;
+        }
+        String propertyName = name.substring(prefixLength);
+        if (propertyName.length() > 1 && Character.isUpperCase(propertyName.charAt(1))) {
+            // Like java.beans.Introspector, leave names like URL alone.
+            return propertyName;
+        }
+        return Character.toLowerCase(propertyName.charAt(0)) + propertyName.substring(1);
+    }
+
+    /**
+     * Add the accessors of the components of a record class.
+     */
+    private static void addRecordComponentAccessors(@NotNull Class<?> type, @NotNull Map<String, Function<Object, Object>> accessors) {
+        List<Reflection.RecordComponent> components;
+        try {
+            components = Reflection.recordComponents(type);
+        } catch (SmileyVarsException e) {
+            logger.debug("Ignoring the record components of {}", type.getName(), e);
+            return;
+        }
+        if (components != null) {
+            for (Reflection.RecordComponent component : components) {
+                Function<Object, Object> accessor = methodAccessor(component.getAccessor());
+                if (accessor != null) {
+                    accessors.put(component.getName(), accessor);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> methodAccessor(@NotNull Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (Reflection.isVisiblePublicClass(declaringClass) && Modifier.isPublic(method.getModifiers())) {
+            try {
+                MethodHandle handle = Reflection.lookup.unreflect(method);
+                CallSite callSite = LambdaMetafactory.metafactory(Reflection.lookup,
+                        "apply", MethodType.methodType(Function.class),
+                        MethodType.methodType(Object.class, Object.class), handle,
+                        MethodType.methodType(method.getReturnType(), declaringClass).wrap());
+                return (Function<Object, Object>) callSite.getTarget().invokeExact();
+            } catch (Throwable e) {
+                logger.debug("Using a method handle to call {}", method, e);
+            }
+        }
+        try {
+            method.setAccessible(true);
+            return handleAccessor(Reflection.lookup.unreflect(method), method.getName());
+        } catch (IllegalAccessException | RuntimeException e) {
+            logger.debug("Ignoring inaccessible getter {}", method, e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Function<Object, Object> fieldAccessor(@NotNull Field field) {
+        try {
+            field.setAccessible(true);
+            return handleAccessor(Reflection.lookup.unreflectGetter(field), field.getName());
+        } catch (IllegalAccessException | RuntimeException e) {
+            logger.debug("Ignoring inaccessible field {}", field, e);
+            return null;
+        }
+    }
+
+    @NotNull
+    private static Function<Object, Object> handleAccessor(@NotNull MethodHandle handle, @NotNull String name) {
+        MethodHandle objectHandle = handle.asType(MethodType.methodType(Object.class, Object.class));
+        return bean -> {
+            try {
+                return objectHandle.invokeExact(bean);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new SmileyVarsException("Unable to get the value of " + name + " from " + bean, (Exception) e);
+            }
+        };
+    }
+}
@@ -0,0 +1,448 @@
+package com.markgrand.smileyvars;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * A batch of rows from a query's result, stored a column at a time in primitive arrays instead of as an object per
+ * row. Batches are passed to the consumer given to {@link SmileyVarsPreparedStatement#forEachBatch(int,
+ * com.markgrand.smileyvars.util.SqlConsumer)}.
+ * <p>How a column is stored depends on its SQL type:</p>
+ * <ul>
+ * <li>Integer and boolean columns, and {@code DECIMAL} or {@code NUMERIC} columns with no fraction digits and no more
+ * than 18 digits, are stored as {@link ColumnType#LONG} in a {@code long[]}. Booleans are stored as 1 or 0.</li>
+ * <li>Other {@code DECIMAL} or {@code NUMERIC} columns with no more than 18 digits are stored as {@link
+ * ColumnType#DECIMAL}: the unscaled value is in a {@code long[]} and the column's scale is the same for every row, so
+ * a value of 12.34 in a column with a scale of 2 is stored as 1234. This keeps decimal values such as amounts of money
+ * exact.</li>
+ * <li>{@code DECIMAL} or {@code NUMERIC} columns with more than 18 digits or with no declared precision are stored as
+ * {@link ColumnType#OBJECT}, with {@link BigDecimal} values.</li>
+ * <li>Floating point columns are stored as {@link ColumnType#DOUBLE} in a {@code double[]}.</li>
+ * <li>Character columns are stored as {@link ColumnType#STRING}, dictionary encoded. Each row has an {@code int} code
+ * that is the index of its value in the column's dictionary, so each distinct value in a batch is only stored
+ * once.</li>
+ * <li>Other columns are stored as {@link ColumnType#OBJECT} in an {@code Object[]}.</li>
+ * </ul>
+ * <p>Each column has a null bitmap, with one bit per row that is set if the row's value is null. The value stored for
+ * a null is 0 or null.</p>
+ * <p>The arrays are reused for the next batch after the consumer returns, so a consumer must copy anything that it
+ * needs to keep. The arrays are as long as the batch size; only the first {@link #getRowCount()} elements are
+ * valid. Columns are numbered from 0.</p>
+ *
+ * @author Mark Grand
+ */
+public final class ColumnBatch {
+    /**
+     * How the values of a column are stored.
+     */
+    public enum ColumnType {
+        /**
+         * Values are in a {@code long[]} returned by {@link #getLongs(int)}.
+         */
+        LONG,
+        /**
+         * Values are unscaled in a {@code long[]} returned by {@link #getUnscaledLongs(int)}, with the scale returned
+         * by {@link #getScale(int)}.
+         */
+        DECIMAL,
+        /**
+         * Values are in a {@code double[]} returned by {@link #getDoubles(int)}.
+         */
+        DOUBLE,
+        /**
+         * Values are codes in an {@code int[]} returned by {@link #getStringCodes(int)} that index the list returned by
+         * {@link #getDictionary(int)}.
+         */
+        STRING,
+        /**
+         * Values are in an {@code Object[]} returned by {@link #getObjects(int)}.
+         */
+        OBJECT
+    }
+
+    private final int capacity;
+    private final String[] columnNames;
+    private final ColumnType[] columnTypes;
+    private final boolean[] booleanColumns;
+    /**
+     * The scale of each {@link ColumnType#DECIMAL} column.
+     */
+    private final int[] scales;
+    /**
+     * True for each {@link ColumnType#OBJECT} column that is read with {@code getBigDecimal}.
+     */
+    private final boolean[] bigDecimalColumns;
+    private final long[][] longColumns;
+    private final double[][] doubleColumns;
+    private final int[][] stringCodeColumns;
+    private final Object[][] objectColumns;
+    private final List<List<String>> dictionaries = new ArrayList<>();
+    private final List<List<String>> dictionaryViews = new ArrayList<>();
+    private final List<Map<String, Integer>> dictionaryCodes = new ArrayList<>();
+    private final long[][] nullBitmaps;
+    private int rowCount = 0;
+
+    /**
+     * Constructor
+     *
+     * @param metaData The metadata of the result set that the batch's rows will come from.
+     * @param capacity The most rows that the batch can hold.
+     * @throws SQLException if there is a problem getting the column types from the metadata.
+     */
+    ColumnBatch(@NotNull ResultSetMetaData metaData, int capacity) throws SQLException {
+        this.capacity = capacity;
+        int columnCount = metaData.getColumnCount();
+        columnNames = new String[columnCount];
+        columnTypes = new ColumnType[columnCount];
+        booleanColumns = new boolean[columnCount];
+        scales = new int[columnCount];
+        bigDecimalColumns = new boolean[columnCount];
+        longColumns = new long[columnCount][];
+        doubleColumns = new double[columnCount][];
+        stringCodeColumns = new int[columnCount][];
+        objectColumns = new Object[columnCount][];
+        nullBitmaps = new long[columnCount][(capacity + Long.SIZE - 1) / Long.SIZE];
+        for (int column = 0; column < columnCount; column++) {
+            columnNames[column] = metaData.getColumnLabel(column + 1);
+            int sqlType = metaData.getColumnType(column + 1);
+            columnTypes[column] = columnTypeOf(sqlType, metaData.getPrecision(column + 1), metaData.getScale(column + 1));
+            booleanColumns[column] = sqlType == Types.BOOLEAN || sqlType == Types.BIT;
+            bigDecimalColumns[column] = (sqlType == Types.DECIMAL || sqlType == Types.NUMERIC)
+                                                && columnTypes[column] == ColumnType.OBJECT;
+            List<String> dictionary = null;
+            switch (columnTypes[column]) {
+                case DECIMAL:
+                    scales[column] = metaData.getScale(column + 1);
+                    longColumns[column] = new long[capacity];
+                    break;
+                case LONG:
+                    longColumns[column] = new long[capacity];
+                    break;
+                case DOUBLE:
+                    doubleColumns[column] = new double[capacity];
+                    break;
+                case STRING:
+                    stringCodeColumns[column] = new int[capacity];
+                    dictionary = new ArrayList<>();
+                    break;
+                default:
+                    objectColumns[column] = new Object[capacity];
+            }
+            dictionaries.add(dictionary);
+            dictionaryViews.add(dictionary == null ? null : Collections.unmodifiableList(dictionary));
+            dictionaryCodes.add(dictionary == null ? null : new HashMap<>());
+        }
+    }
+
+    @NotNull
+    private static ColumnType columnTypeOf(int sqlType, int precision, int scale) {
+        switch (sqlType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return ColumnType.LONG;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return ColumnType.DOUBLE;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                if (precision <= 0 || precision > 18 || scale < 0) {
+                    return ColumnType.OBJECT;
+                }
+                return scale == 0 ? ColumnType.LONG : ColumnType.DECIMAL;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return ColumnType.STRING;
+            default:
+                return ColumnType.OBJECT;
+        }
+    }
+
+    /**
+     * Add the current row of a result set to this batch.
+     *
+     * @param resultSet The result set. Its columns must be the ones that this batch was created for.
+     * @throws SQLException if there is a problem getting values from the result set.
+     */
+    void addRow(@NotNull ResultSet resultSet) throws SQLException {
+        int row = rowCount;
+        for (int column = 0; column < columnTypes.length; column++) {
+            int index = column + 1;
+            boolean isNull;
+            switch (columnTypes[column]) {
+                case LONG:
+                    longColumns[column][row] = booleanColumns[column] ? (resultSet.getBoolean(index) ? 1 : 0)
+                                                       : resultSet.getLong(index);
+                    isNull = resultSet.wasNull();
+                    break;
+                case DECIMAL:
+                    BigDecimal decimal = resultSet.getBigDecimal(index);
+                    isNull = decimal == null;
+                    longColumns[column][row] = isNull ? 0 : unscaled(column, decimal);
+                    break;
+                case DOUBLE:
+                    doubleColumns[column][row] = resultSet.getDouble(index);
+                    isNull = resultSet.wasNull();
+                    break;
+                case STRING:
+                    String value = resultSet.getString(index);
+                    isNull = value == null;
+                    stringCodeColumns[column][row] = isNull ? -1 : encode(column, value);
+                    break;
+                default:
+                    objectColumns[column][row] = bigDecimalColumns[column] ? resultSet.getBigDecimal(index)
+                                                         : resultSet.getObject(index);
+                    isNull = objectColumns[column][row] == null;
+            }
+            if (isNull) {
+                nullBitmaps[column][row >>> 6] |= 1L << row;
+            }
+        }
+        rowCount++;
+    }
+
+    private long unscaled(int column, @NotNull BigDecimal value) {
+        try {
+            return value.setScale(scales[column], RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new SmileyVarsException("The value " + value + " of column " + columnNames[column]
+                                                  + " does not fit its declared precision and scale", e);
+        }
+    }
+
+    private int encode(int column, @NotNull String value) {
+        Map<String, Integer> codes = dictionaryCodes.get(column);
+        Integer code = codes.get(value);
+        if (code == null) {
+            List<String> dictionary = dictionaries.get(column);
+            code = dictionary.size();
+            dictionary.add(value);
+            codes.put(value, code);
+        }
+        return code;
+    }
+
+    /**
+     * Remove all of the rows from this batch so that it can be filled again.
+     */
+    void clear() {
+        int usedWords = (rowCount + Long.SIZE - 1) / Long.SIZE;
+        for (int column = 0; column < columnTypes.length; column++) {
+            Arrays.fill(nullBitmaps[column], 0, usedWords, 0L);
+            if (objectColumns[column] != null) {
+                Arrays.fill(objectColumns[column], 0, rowCount, null);
+            }
+            if (dictionaries.get(column) != null) {
+                dictionaries.get(column).clear();
+                dictionaryCodes.get(column).clear();
+            }
+        }
+        rowCount = 0;
+    }
+
+    /**
+     * @return true if this batch has as many rows as it can hold.
+     */
+    boolean isFull() {
+        return rowCount >= capacity;
+    }
+
+    /**
+     * @return the number of rows in this batch.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the most rows that this batch can hold, which is the length of its arrays.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of columns.
+     */
+    public int getColumnCount() {
+        return columnTypes.length;
+    }
+
+    /**
+     * @param column The column number, starting from 0.
+     * @return the column's label.
+     */
+    @NotNull
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    /**
+     * Get the number of the column with the given label, ignoring case.
+     *
+     * @param label The column label.
+     * @return the column number, starting from 0.
+     * @throws SmileyVarsException if there is no column with the label.
+     */
+    public int findColumn(@NotNull String label) {
+        for (int column = 0; column < columnNames.length; column++) {
+            if (columnNames[column].equalsIgnoreCase(label)) {
+                return column;
+            }
+        }
+        throw new SmileyVarsException("There is no column labeled " + label);
+    }
+
+    /**
+     * @param column The column number, starting from 0.
+     * @return how the column's values are stored.
+     */
+    @NotNull
+    public ColumnType getColumnType(int column) {
+        return columnTypes[column];
+    }
+
+    /**
+     * @param column The column number, starting from 0.
+     * @return the values of a {@link ColumnType#LONG} column.
+     * @throws SmileyVarsException if the column is a different type.
+     */
+    @NotNull
+    public long[] getLongs(int column) {
+        return checkColumn(columnTypes[column] == ColumnType.LONG ? longColumns[column] : null, column,
+                ColumnType.LONG);
+    }
+
+    /**
+     * @param column The column number, starting from 0.
+     * @return the unscaled values of a {@link ColumnType#DECIMAL} column.
+     * @throws SmileyVarsException if the column is a different type.
+     */
+    @NotNull
+    public long[] getUnscaledLongs(int column) {
+        return checkColumn(columnTypes[column] == ColumnType.DECIMAL ? longColumns[column] : null, column,
+                ColumnType.DECIMAL);
+    }
+
+    /**
+     * @param column The column number, starting from 0.
+     * @return the scale of the values of a {@link ColumnType#DECIMAL} column, which is the number of digits after the
+     * decimal point.
+     * @throws SmileyVarsException if the column is a different type.
+     */
+    public int getScale(int column) {
+        getUnscaledLongs(column);
+        return scales[column];
+    }
+
+    /**
+     * @param column The column number, starting from 0.
+     * @param row    The row number, starting from 0.
+     * @return the value of a {@link ColumnType#DECIMAL} column in a row, or null if it is null.
+     * @throws SmileyVarsException if the column is a different type.
+     */
+    @Nullable
+    public BigDecimal getBigDecimal(int column, int row) {
+        long unscaled = getUnscaledLongs(column)[row];
+        return isNull(column, row) ? null : BigDecimal.valueOf(unscaled, scales[column]);
+    }
+
+    /**
+     * @param column The column number, starting from 0.
+     * @return the values of a {@link ColumnType#DOUBLE} column.
+     * @throws SmileyVarsException if the column is a different type.
+     */
+    @NotNull
+    public double[] getDoubles(int column) {
+        return checkColumn(doubleColumns[column], column, ColumnType.DOUBLE);
+    }
+
+    /**
+     * @param column The column number, starting from 0.
+     * @return the dictionary codes of a {@link ColumnType#STRING} column. The code for a null is -1.
+     * @throws SmileyVarsException if the column is a different type.
+     */
+    @NotNull
+    public int[] getStringCodes(int column) {
+        return checkColumn(stringCodeColumns[column], column, ColumnType.STRING);
+    }
+
+    /**
+     * @param column The column number, starting from 0.
+     * @return an unmodifiable list of the distinct values in this batch of a {@link ColumnType#STRING} column, indexed
+     * by their codes.
+     * @throws SmileyVarsException if the column is a different type.
+     */
+    @NotNull
+    public List<String> getDictionary(int column) {
+        return checkColumn(dictionaryViews.get(column), column, ColumnType.STRING);
+    }
+
+    /**
+     * @param column The column number, starting from 0.
+     * @param row    The row number, starting from 0.
+     * @return the value of a {@link ColumnType#STRING} column in a row, or null if it is null.
+     * @throws SmileyVarsException if the column is a different type.
+     */
+    @Nullable
+    public String getString(int column, int row) {
+        int code = getStringCodes(column)[row];
+        return code < 0 ? null : dictionaries.get(column).get(code);
+    }
+
+    /**
+     * @param column The column number, starting from 0.
+     * @return the values of an {@link ColumnType#OBJECT} column.
+     * @throws SmileyVarsException if the column is a different type.
+     */
+    @NotNull
+    public Object[] getObjects(int column) {
+        return checkColumn(objectColumns[column], column, ColumnType.OBJECT);
+    }
+
+    /**
+     * @param column The column number, starting from 0.
+     * @param row    The row number, starting from 0.
+     * @return true if the value of the column in the row is null.
+     */
+    public boolean isNull(int column, int row) {
+        return (nullBitmaps[column][row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Get the null bitmap of a column. Bit <i>r</i> % 64 of element <i>r</i> / 64 is set if the value in row <i>r</i>
+     * is null.
+     *
+     * @param column The column number, starting from 0.
+     * @return the null bitmap.
+     */
+    @NotNull
+    public long[] getNullBitmap(int column) {
+        return nullBitmaps[column];
+    }
+
+    @NotNull
+    private <A> A checkColumn(@Nullable A values, int column, @NotNull ColumnType expectedType) {
+        if (values == null) {
+            throw new SmileyVarsException("Column " + column + " (" + columnNames[column] + ") is " + columnTypes[column]
+                                                  + ", not " + expectedType);
+        }
+        return values;
+    }
+}
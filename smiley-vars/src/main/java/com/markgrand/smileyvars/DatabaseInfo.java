@@ -0,0 +1,210 @@
+package com.markgrand.smileyvars;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Information about a database that SmileyVars gets from a connection's metadata. Since getting the metadata may
+ * require round trips to the database, the information is cached. It is cached for each {@code DataSource}, each
+ * {@code Connection} and each JDBC URL, so it is only fetched the first time that a data source or a database is used,
+ * and the metadata of a connection is only looked at once. Data sources and connections are compared by identity and
+ * are only weakly referenced by the cache.
+ *
+ * @author Mark Grand
+ */
+@SuppressWarnings("WeakerAccess")
+public class DatabaseInfo {
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseInfo.class);
+
+    /**
+     * The most parameters that a prepared statement can have for some types of database, keyed by the upper case
+     * product name.
+     */
+    private static final Map<String, Integer> maxParameterCountMap = new HashMap<>();
+
+    static {
+        maxParameterCountMap.put("MICROSOFT SQL SERVER", 2100);
+        maxParameterCountMap.put("MYSQL", 65535);
+        maxParameterCountMap.put("MARIADB", 65535);
+        maxParameterCountMap.put("ORACLE", 65535);
+        maxParameterCountMap.put("POSTGRESQL", 32767);
+        maxParameterCountMap.put("ENTERPRISEDB", 32767);
+        maxParameterCountMap.put("SQLITE", 999);
+    }
+
+    private static final WeakIdentityMap<DataSource, DatabaseInfo> dataSourceCache = new WeakIdentityMap<>();
+    private static final WeakIdentityMap<Connection, DatabaseInfo> connectionCache = new WeakIdentityMap<>();
+    private static final ConcurrentHashMap<String, DatabaseInfo> urlCache = new ConcurrentHashMap<>();
+
+    private final DatabaseType databaseType;
+    @Nullable
+    private final String productName;
+    private final boolean batchUpdatesSupported;
+    private final int maxParameterCount;
+
+    private DatabaseInfo(@NotNull DatabaseMetaData metaData) {
+        databaseType = DatabaseType.inferDatabaseType(metaData);
+        productName = getProductName(metaData);
+        batchUpdatesSupported = getBatchUpdatesSupported(metaData);
+        maxParameterCount = productName == null ? 0 : maxParameterCountMap.getOrDefault(productName.toUpperCase(), 0);
+    }
+
+    @Nullable
+    private static String getProductName(@NotNull DatabaseMetaData metaData) {
+        try {
+            return metaData.getDatabaseProductName();
+        } catch (SQLException e) {
+            logger.warn("Attempt to get the database product name failed", e);
+            return null;
+        }
+    }
+
+    private static boolean getBatchUpdatesSupported(@NotNull DatabaseMetaData metaData) {
+        try {
+            return metaData.supportsBatchUpdates();
+        } catch (SQLException e) {
+            logger.warn("Attempt to determine if batch updates are supported failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Get information about the database that the given connection is to.
+     *
+     * @param conn the connection.
+     * @return the information.
+     * @throws SQLException if there is a problem getting the connection's metadata.
+     */
+    @NotNull
+    public static DatabaseInfo forConnection(@NotNull Connection conn) throws SQLException {
+        DatabaseInfo info = connectionCache.get(conn);
+        if (info == null) {
+            info = connectionCache.putIfAbsent(conn, forMetaData(conn.getMetaData()));
+        }
+        return info;
+    }
+
+    /**
+     * Get information about the database that the given data source provides connections to. A connection is only
+     * obtained from the data source the first time this is called for it.
+     *
+     * @param ds the data source.
+     * @return the information.
+     * @throws SQLException if there is a problem getting a connection or its metadata.
+     */
+    @NotNull
+    public static DatabaseInfo forDataSource(@NotNull DataSource ds) throws SQLException {
+        DatabaseInfo info = dataSourceCache.get(ds);
+        if (info == null) {
+            try (Connection conn = ds.getConnection()) {
+                info = forConnection(conn);
+            }
+            info = dataSourceCache.putIfAbsent(ds, info);
+        }
+        return info;
+    }
+
+    @NotNull
+    private static DatabaseInfo forMetaData(@NotNull DatabaseMetaData metaData) throws SQLException {
+        String url = metaData.getURL();
+        if (url == null) {
+            return new DatabaseInfo(metaData);
+        }
+        DatabaseInfo info = urlCache.get(url);
+        if (info == null) {
+            logger.debug("Getting database information for {}", url);
+            info = new DatabaseInfo(metaData);
+            DatabaseInfo previous = urlCache.putIfAbsent(url, info);
+            if (previous != null) {
+                info = previous;
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Discard all of the cached database information.
+     */
+    static void clearCache() {
+        dataSourceCache.clear();
+        connectionCache.clear();
+        urlCache.clear();
+    }
+
+    /**
+     * @return the type of database.
+     */
+    @NotNull
+    public DatabaseType getDatabaseType() {
+        return databaseType;
+    }
+
+    /**
+     * @return the database product name, or null if it is not known.
+     */
+    @Nullable
+    public String getProductName() {
+        return productName;
+    }
+
+    /**
+     * @return true if the database supports batch updates.
+     */
+    public boolean isBatchUpdatesSupported() {
+        return batchUpdatesSupported;
+    }
+
+    /**
+     * Get the most parameters that a prepared statement for this database can have.
+     *
+     * @return the maximum number of parameters, or zero if there is no limit or the limit is not known.
+     */
+    public int getMaxParameterCount() {
+        return maxParameterCount;
+    }
+
+    /**
+     * Get the fetch size to use for reading a result set one block of rows at a time instead of all at once. MySQL
+     * and MariaDB drivers only do this when the fetch size is {@link Integer#MIN_VALUE}, which makes them read one row
+     * at a time.
+     *
+     * @param rows the number of rows to fetch at a time.
+     * @return the fetch size to give the driver.
+     */
+    public int getStreamingFetchSize(int rows) {
+        String upperProductName = productName == null ? "" : productName.toUpperCase();
+        if (upperProductName.equals("MYSQL") || upperProductName.equals("MARIADB")) {
+            return Integer.MIN_VALUE;
+        }
+        return rows;
+    }
+
+    /**
+     * Return true if the database's driver only honours the fetch size inside of a transaction. The PostgreSQL driver
+     * reads the whole result set into memory unless auto-commit is off.
+     *
+     * @return true if auto-commit must be off for a result set to be read a block of rows at a time.
+     */
+    public boolean isStreamingTransactional() {
+        return databaseType == DatabaseType.POSTGRESQL;
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseInfo{" +
+                       "databaseType=" + databaseType +
+                       ", productName='" + productName + '\'' +
+                       ", batchUpdatesSupported=" + batchUpdatesSupported +
+                       ", maxParameterCount=" + maxParameterCount +
+                       '}';
+    }
+}
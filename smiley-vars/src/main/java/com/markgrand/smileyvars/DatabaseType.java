@@ -1,6 +1,7 @@
 package com.markgrand.smileyvars;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,19 +17,19 @@ public enum DatabaseType {
     /**
      * Generic type of template that is not specialized for any particular type of database.
      */
-    ANSI(Tokenizer.builder().configureForAnsi(), ValueFormatterRegistry.ansiInstance()),
+    ANSI(Tokenizer.builder().configureForAnsi(), ValueFormatterRegistry.ansiInstance(), false),
     /**
      * Template specialized for PostgreSQL.
      */
-    POSTGRESQL(Tokenizer.builder().configureForPostgresql(), ValueFormatterRegistry.postgresqlInstance()),
+    POSTGRESQL(Tokenizer.builder().configureForPostgresql(), ValueFormatterRegistry.postgresqlInstance(), false),
     /**
      * Template specialized for Oracle.
      */
-    ORACLE(Tokenizer.builder().configureForOracle(), ValueFormatterRegistry.ansiInstance()),
+    ORACLE(Tokenizer.builder().configureForOracle(), ValueFormatterRegistry.ansiInstance(), true),
     /**
      * Template specialized for SQL Server.
      */
-    SQL_SERVER(Tokenizer.builder().configureForSqlServer(), ValueFormatterRegistry.ansiInstance())
+    SQL_SERVER(Tokenizer.builder().configureForSqlServer(), ValueFormatterRegistry.ansiInstance(), true)
     ;
 
     private static final Logger logger = LoggerFactory.getLogger(DatabaseType.class);
@@ -56,10 +57,13 @@ public enum DatabaseType {
 
     private final Tokenizer.TokenizerBuilder tokenizerBuilder;
     private final ValueFormatterRegistry valueFormatterRegistry;
+    private final boolean safeStringLiterals;
 
-    DatabaseType(Tokenizer.TokenizerBuilder tokenizerBuilder, ValueFormatterRegistry valueFormatterRegistry) {
+    DatabaseType(Tokenizer.TokenizerBuilder tokenizerBuilder, ValueFormatterRegistry valueFormatterRegistry,
+                 boolean safeStringLiterals) {
         this.tokenizerBuilder = tokenizerBuilder;
         this.valueFormatterRegistry = valueFormatterRegistry;
+        this.safeStringLiterals = safeStringLiterals;
     }
 
     /**
@@ -95,6 +99,43 @@ public enum DatabaseType {
 
     }
 
+    /**
+     * Memoize the SQL literals that templates for this type of database produce for values of immutable types such as
+     * {@code String}, {@code Enum}, {@code UUID} and boxed numbers. This is useful when the same values are formatted
+     * many times. If a literal cache is already enabled, it is replaced.
+     * <p><b>Note:</b> {@link #ANSI}, {@link #ORACLE} and {@link #SQL_SERVER} share their formatters, so enabling or
+     * disabling the literal cache for one of them does the same for all of them.</p>
+     *
+     * @param maxEntries The maximum number of literals to cache.
+     * @param maxWeight  The maximum total number of characters in the cached literals and the {@code String} values they
+     *                   were formatted from.
+     * @throws IllegalArgumentException if maxEntries or maxWeight is not positive.
+     */
+    @SuppressWarnings("unused")
+    public void enableLiteralCache(int maxEntries, long maxWeight) {
+        valueFormatterRegistry.enableLiteralCache(maxEntries, maxWeight);
+    }
+
+    /**
+     * Stop memoizing the SQL literals that templates for this type of database produce.
+     */
+    @SuppressWarnings("unused")
+    public void disableLiteralCache() {
+        valueFormatterRegistry.disableLiteralCache();
+    }
+
+    /**
+     * Get the literal cache used by templates for this type of database. Its hit, miss and rejection counts can be
+     * used to tune its bounds.
+     *
+     * @return the literal cache or null if literal caching is not enabled.
+     */
+    @SuppressWarnings("unused")
+    @Nullable
+    public FormattedLiteralCache getLiteralCache() {
+        return valueFormatterRegistry.getLiteralCache();
+    }
+
     Tokenizer.TokenizerBuilder getTokenizerBuilder() {
         return tokenizerBuilder;
     }
@@ -102,4 +143,17 @@ public enum DatabaseType {
     ValueFormatterRegistry getValueFormatterRegistry() {
         return valueFormatterRegistry;
     }
+
+    /**
+     * Tell whether every database of this type treats a backslash in a string literal as an ordinary character, so
+     * that a string formatted as a literal by doubling its single quotes cannot end the literal early. This is false
+     * for {@link #ANSI}, since MySQL and MariaDB are treated as ANSI and by default use backslash as an escape
+     * character, and for {@link #POSTGRESQL}, since {@code standard_conforming_strings} may be turned off. Strings
+     * that the caller expects to be bound as parameters must not be put into the SQL as literals unless this is true.
+     *
+     * @return true if string values can safely be put into SQL as literals.
+     */
+    boolean hasSafeStringLiterals() {
+        return safeStringLiterals;
+    }
 }
@@ -0,0 +1,26 @@
+package com.markgrand.smileyvars;
+
+/**
+ * How a {@link SmileyVarsStatementPlan} expands its template for a {@link SmileyVarsPreparedStatement}.
+ */
+public enum ExpansionMode {
+    /**
+     * Each combination of variables that have values gets its own expansion, which leaves out the bracketed segments
+     * whose variables do not all have values. This is the default. Each expansion is a different prepared statement,
+     * so the database can plan each one for the predicates it actually has.
+     */
+    VARIANTS,
+
+    /**
+     * The template has just one expansion, which keeps every bracketed segment. Each segment must begin with {@code
+     * AND} or {@code OR}. It is rewritten so that it has no effect when its variables do not all have values:
+     * <pre>
+     * (: AND x=:x :)   becomes   AND (? = 0 OR ( x=? ))
+     * (: OR x=:x :)    becomes   OR (? = 1 AND ( x=? ))
+     * </pre>
+     * The first parameter of each rewritten segment is set to 1 if all of the segment's variables have values and 0
+     * otherwise. Variables that do not have values are set to null. A template that is expanded this way always uses
+     * the same prepared statement, so the database has only one plan for it. Nested brackets are not supported.
+     */
+    NULL_TOLERANT
+}
@@ -0,0 +1,294 @@
+package com.markgrand.smileyvars;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the SQL literals that a {@link ValueFormatterRegistry} has produced for immutable values. When
+ * the same value is formatted many times, such as a status string or a tenant ID, the cached literal is reused rather
+ * than being formatted again.
+ * <p>Only values of immutable types are cached: {@code String}, {@code Enum}, {@code UUID}, {@code Boolean} and boxed
+ * numbers. The cache is bounded both by the number of entries and by its weight, which is the total number of
+ * characters in the cached literals and in the {@code String} values they were formatted from. When the cache is full,
+ * a literal is evicted to make room for a new one. Literals are chosen for eviction with the clock (second chance)
+ * algorithm, so literals that have been used since the clock hand last passed them are kept. Reads do not lock;
+ * adding a literal does.</p>
+ * <p>The hit, miss, eviction and rejection counts are provided so that the bounds can be tuned.</p>
+ *
+ * @author Mark Grand
+ */
+@SuppressWarnings("WeakerAccess")
+public class FormattedLiteralCache {
+    private final ConcurrentHashMap<Object, Entry> literals = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long maxWeight;
+    private final AtomicLong weight = new AtomicLong();
+    private final LongAdder hitCount;
+    private final LongAdder missCount;
+    private final LongAdder evictionCount;
+    private final LongAdder rejectionCount;
+
+    /**
+     * The entries in the order that the clock hand visits them. Empty positions are null. This and the fields below
+     * are only used while holding this object's lock.
+     */
+    private final Entry[] clock;
+    /**
+     * The empty positions in {@link #clock}, used as a stack.
+     */
+    private final int[] freePositions;
+    private int freePositionCount;
+    private int hand = 0;
+
+    /**
+     * Constructor
+     *
+     * @param maxEntries The maximum number of literals to cache.
+     * @param maxWeight  The maximum total number of characters in the cached literals and the {@code String} values they
+     *                   were formatted from.
+     */
+    FormattedLiteralCache(int maxEntries, long maxWeight) {
+        this(checkBounds(maxEntries, maxWeight), maxWeight, new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder());
+    }
+
+    private FormattedLiteralCache(int maxEntries, long maxWeight, LongAdder hitCount, LongAdder missCount,
+                                  LongAdder evictionCount, LongAdder rejectionCount) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.rejectionCount = rejectionCount;
+        clock = new Entry[maxEntries];
+        freePositions = new int[maxEntries];
+        resetFreePositions();
+    }
+
+    private static int checkBounds(int maxEntries, long maxWeight) {
+        if (maxEntries <= 0 || maxWeight <= 0) {
+            throw new IllegalArgumentException("maxEntries and maxWeight must be positive: " + maxEntries + ", " + maxWeight);
+        }
+        return maxEntries;
+    }
+
+    private void resetFreePositions() {
+        for (int i = 0; i < maxEntries; i++) {
+            freePositions[i] = maxEntries - 1 - i;
+        }
+        freePositionCount = maxEntries;
+    }
+
+    /**
+     * Create an empty cache with the same bounds as this one that shares this cache's counts.
+     *
+     * @return the new cache.
+     */
+    @NotNull
+    FormattedLiteralCache emptyCopy() {
+        return new FormattedLiteralCache(maxEntries, maxWeight, hitCount, missCount, evictionCount, rejectionCount);
+    }
+
+    /**
+     * Return true if the given value is of a type whose formatted literal may be cached.
+     *
+     * @param value the value to be formatted.
+     * @return true if the value's formatted literal can be cached.
+     */
+    static boolean isCacheable(@NotNull Object value) {
+        Class<?> clazz = value.getClass();
+        return clazz == String.class || clazz == Integer.class || clazz == Long.class || clazz == Short.class
+                       || clazz == Byte.class || clazz == Double.class || clazz == Float.class || clazz == Boolean.class
+                       || clazz == BigInteger.class || clazz == BigDecimal.class || clazz == UUID.class
+                       || value instanceof Enum;
+    }
+
+    /**
+     * Get the cached literal for the given value.
+     *
+     * @param value the value whose literal is wanted.
+     * @return the cached literal or null if there is none.
+     */
+    @Nullable
+    String get(@NotNull Object value) {
+        Entry entry = literals.get(value);
+        if (entry == null) {
+            missCount.increment();
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hitCount.increment();
+        return entry.literal;
+    }
+
+    /**
+     * Add the given literal to the cache, evicting other literals if that is needed to stay within the cache's bounds.
+     * A literal that would be heavier than the whole cache is not added.
+     *
+     * @param value   The value that was formatted.
+     * @param literal The literal the value was formatted as.
+     */
+    void put(@NotNull Object value, @NotNull String literal) {
+        int entryWeight = literal.length() + (value instanceof String ? ((String) value).length() : 0);
+        if (entryWeight > maxWeight) {
+            rejectionCount.increment();
+            return;
+        }
+        synchronized (this) {
+            if (literals.containsKey(value)) {
+                return;
+            }
+            while (freePositionCount == 0 || weight.get() + entryWeight > maxWeight) {
+                evict();
+            }
+            Entry entry = new Entry(value, literal, entryWeight);
+            int position = freePositions[--freePositionCount];
+            clock[position] = entry;
+            literals.put(value, entry);
+            weight.addAndGet(entryWeight);
+        }
+    }
+
+    /**
+     * Advance the clock hand to the first entry that has not been used since the hand last passed it, giving the
+     * entries it passes a second chance, and evict that entry. Must be called while holding this object's lock when
+     * the cache is not empty.
+     */
+    private void evict() {
+        while (true) {
+            Entry entry = clock[hand];
+            int position = hand;
+            hand = (hand + 1) % maxEntries;
+            if (entry != null) {
+                if (entry.referenced) {
+                    entry.referenced = false;
+                } else {
+                    clock[position] = null;
+                    freePositions[freePositionCount++] = position;
+                    literals.remove(entry.value);
+                    weight.addAndGet(-entry.weight);
+                    evictionCount.increment();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Discard all of the cached literals. The counts are not reset.
+     */
+    synchronized void clear() {
+        literals.clear();
+        Arrays.fill(clock, null);
+        resetFreePositions();
+        hand = 0;
+        weight.set(0);
+    }
+
+    /**
+     * Get the number of times that a literal was found in this cache.
+     *
+     * @return the hit count.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Get the number of times that a literal was looked for and not found in this cache.
+     *
+     * @return the miss count.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Get the number of literals that were evicted from this cache to make room for others.
+     *
+     * @return the eviction count.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Get the number of literals that were not added to this cache because they were heavier than its weight bound.
+     *
+     * @return the rejection count.
+     */
+    public long getRejectionCount() {
+        return rejectionCount.sum();
+    }
+
+    /**
+     * Get the fraction of lookups that found a cached literal.
+     *
+     * @return the hit rate, a number between 0 and 1. If there have been no lookups, the result is 0.
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * Get the number of literals currently in this cache.
+     *
+     * @return the number of cached literals.
+     */
+    public int size() {
+        return literals.size();
+    }
+
+    /**
+     * Get the total number of characters in the literals currently in this cache and the {@code String} values they
+     * were formatted from.
+     *
+     * @return the weight of this cache.
+     */
+    public long getWeight() {
+        return weight.get();
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "FormattedLiteralCache{" +
+                       "size=" + size() +
+                       ", weight=" + getWeight() +
+                       ", hitCount=" + getHitCount() +
+                       ", missCount=" + getMissCount() +
+                       ", evictionCount=" + getEvictionCount() +
+                       ", rejectionCount=" + getRejectionCount() +
+                       '}';
+    }
+
+    /**
+     * A cached literal.
+     */
+    private static final class Entry {
+        private final Object value;
+        private final String literal;
+        private final int weight;
+        /**
+         * Set when the literal is read, and cleared when the clock hand passes the entry.
+         */
+        private volatile boolean referenced = false;
+
+        Entry(@NotNull Object value, @NotNull String literal, int weight) {
+            this.value = value;
+            this.literal = literal;
+            this.weight = weight;
+        }
+    }
+}
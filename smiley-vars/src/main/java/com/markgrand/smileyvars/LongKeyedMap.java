@@ -0,0 +1,167 @@
+package com.markgrand.smileyvars;
+
+import com.markgrand.smileyvars.util.SqlConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * A map whose keys are primitive {@code long} values. It is an open addressing hash table with linear probing, so
+ * lookups do not box the key or allocate anything. Any {@code long}, including zero, may be a key. Null values are not
+ * allowed.
+ * <p>This class is not thread safe.</p>
+ *
+ * @param <V> The type of the values.
+ * @author Mark Grand
+ */
+class LongKeyedMap<V> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+    /**
+     * A null value marks an empty entry.
+     */
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    LongKeyedMap() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private int indexFor(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Get the value associated with the given key.
+     *
+     * @param key The key to look up.
+     * @return the value or null if there is no value associated with the key.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        for (int i = indexFor(key); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Associate the given value with the given key.
+     *
+     * @param key   The key.
+     * @param value The value.
+     * @return the value that was previously associated with the key or null if there was none.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    V put(long key, @NotNull V value) {
+        int i = indexFor(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        if (size * 4 > values.length * 3) {
+            rehash(values.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Remove the value associated with the given key.
+     *
+     * @param key The key.
+     * @return the value that was removed or null if there was none.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int i = indexFor(key);
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == null) {
+            return null;
+        }
+        V removed = (V) values[i];
+        // Shift entries back into the hole so that no probe sequence is broken.
+        int hole = i;
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = indexFor(keys[j]);
+            // Move the entry at j if its home position is not cyclically between the hole and j.
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        values[hole] = null;
+        size--;
+        return removed;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = indexFor(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Pass each value in this map to the given consumer.
+     *
+     * @param consumer The consumer.
+     * @throws SQLException if the consumer throws an {@code SQLException}.
+     */
+    @SuppressWarnings("unchecked")
+    void forEachValue(@NotNull SqlConsumer<V> consumer) throws SQLException {
+        for (Object value : values) {
+            if (value != null) {
+                consumer.accept((V) value);
+            }
+        }
+    }
+
+    /**
+     * Remove all of the entries from this map.
+     */
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @return the number of entries in this map.
+     */
+    int size() {
+        return size;
+    }
+}
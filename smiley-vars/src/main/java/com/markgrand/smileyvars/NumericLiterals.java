@@ -0,0 +1,441 @@
+package com.markgrand.smileyvars;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Format numbers as SQL numeric literals.
+ * <p>{@code double} and {@code float} values are written as the shortest decimal that reads back as exactly the same
+ * value, using the Ryu algorithm described in Ulf Adams, "Ryū: fast float-to-string conversion", PLDI 2018. The digits
+ * are computed with integer arithmetic and written directly into the output buffer. {@code BigDecimal} values are
+ * written in plain notation, never in scientific notation.</p>
+ *
+ * @author Mark Grand
+ */
+class NumericLiterals {
+    private static final int DOUBLE_MANTISSA_BITS = 52;
+    private static final int DOUBLE_EXPONENT_BIAS = 1023;
+    private static final int FLOAT_MANTISSA_BITS = 23;
+    private static final int FLOAT_EXPONENT_BIAS = 127;
+
+    private static final int POW5_BITCOUNT = 125;
+    private static final int POW5_INV_BITCOUNT = 125;
+    private static final int POW5_TABLE_SIZE = 326;
+    private static final int POW5_INV_TABLE_SIZE = 342;
+
+    /**
+     * 5<sup>i</sup> truncated to its most significant 125 bits, as {low 64 bits, high 64 bits}.
+     */
+    private static final long[][] POW5_SPLIT = new long[POW5_TABLE_SIZE][];
+    /**
+     * floor(2<sup>j</sup> / 5<sup>q</sup>) + 1, where j = bitLength(5<sup>q</sup>) - 1 + 125, as {low 64 bits, high
+     * 64 bits}.
+     */
+    private static final long[][] POW5_INV_SPLIT = new long[POW5_INV_TABLE_SIZE][];
+
+    /**
+     * Values that are at least 10<sup>-7</sup> and less than 10<sup>21</sup> are written in plain notation. Others are
+     * written in scientific notation.
+     */
+    private static final int MIN_PLAIN_EXPONENT = -7;
+    private static final int MAX_PLAIN_EXPONENT = 20;
+
+    /**
+     * BigDecimal values whose unscaled value has at most this many digits are written without creating a string.
+     */
+    private static final int MAX_LONG_PRECISION = 18;
+
+    static {
+        BigInteger mask64 = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (int i = 0; i < Math.max(POW5_TABLE_SIZE, POW5_INV_TABLE_SIZE); i++) {
+            BigInteger pow = BigInteger.valueOf(5).pow(i);
+            int pow5len = pow.bitLength();
+            if (i < POW5_TABLE_SIZE) {
+                BigInteger truncated = pow5len >= POW5_BITCOUNT ? pow.shiftRight(pow5len - POW5_BITCOUNT) : pow.shiftLeft(POW5_BITCOUNT - pow5len);
+                POW5_SPLIT[i] = new long[]{truncated.and(mask64).longValue(), truncated.shiftRight(64).longValue()};
+            }
+            if (i < POW5_INV_TABLE_SIZE) {
+                int j = pow5len - 1 + POW5_INV_BITCOUNT;
+                BigInteger inverse = BigInteger.ONE.shiftLeft(j).divide(pow).add(BigInteger.ONE);
+                POW5_INV_SPLIT[i] = new long[]{inverse.and(mask64).longValue(), inverse.shiftRight(64).longValue()};
+            }
+        }
+    }
+
+    private NumericLiterals() {
+    }
+
+    /**
+     * Format the given number as an SQL numeric literal.
+     *
+     * @param value the number to format.
+     * @return the literal.
+     * @throws SmileyVarsException if the value is a NaN or infinite, since these have no SQL literal representation.
+     */
+    @NotNull
+    static String format(@NotNull Object value) {
+        if (value instanceof Double) {
+            return appendDouble(new StringBuilder(24), (Double) value).toString();
+        } else if (value instanceof Float) {
+            return appendFloat(new StringBuilder(16), (Float) value).toString();
+        } else if (value instanceof BigDecimal) {
+            BigDecimal bigDecimal = (BigDecimal) value;
+            return appendBigDecimal(new StringBuilder(bigDecimal.precision() + 4), bigDecimal).toString();
+        }
+        return value.toString();
+    }
+
+    /**
+     * Append the shortest decimal representation of the given {@code double} that reads back as the same value.
+     *
+     * @param builder The builder to append to.
+     * @param value   The value to append.
+     * @return the builder.
+     * @throws SmileyVarsException if the value is a NaN or infinite.
+     */
+    @NotNull
+    static StringBuilder appendDouble(@NotNull StringBuilder builder, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        long ieeeMantissa = bits & ((1L << DOUBLE_MANTISSA_BITS) - 1);
+        int ieeeExponent = (int) ((bits >>> DOUBLE_MANTISSA_BITS) & 0x7ff);
+        if (ieeeExponent == 0x7ff) {
+            throw new SmileyVarsException(value + " cannot be represented as an SQL numeric literal.");
+        }
+        if (bits < 0) {
+            builder.append('-');
+        }
+        if (ieeeExponent == 0 && ieeeMantissa == 0) {
+            return builder.append("0.0");
+        }
+        return appendShortest(builder, ieeeMantissa, ieeeExponent, DOUBLE_MANTISSA_BITS, DOUBLE_EXPONENT_BIAS);
+    }
+
+    /**
+     * Append the shortest decimal representation of the given {@code float} that reads back as the same value.
+     *
+     * @param builder The builder to append to.
+     * @param value   The value to append.
+     * @return the builder.
+     * @throws SmileyVarsException if the value is a NaN or infinite.
+     */
+    @NotNull
+    static StringBuilder appendFloat(@NotNull StringBuilder builder, float value) {
+        int bits = Float.floatToRawIntBits(value);
+        long ieeeMantissa = bits & ((1 << FLOAT_MANTISSA_BITS) - 1);
+        int ieeeExponent = (bits >>> FLOAT_MANTISSA_BITS) & 0xff;
+        if (ieeeExponent == 0xff) {
+            throw new SmileyVarsException(value + " cannot be represented as an SQL numeric literal.");
+        }
+        if (bits < 0) {
+            builder.append('-');
+        }
+        if (ieeeExponent == 0 && ieeeMantissa == 0) {
+            return builder.append("0.0");
+        }
+        return appendShortest(builder, ieeeMantissa, ieeeExponent, FLOAT_MANTISSA_BITS, FLOAT_EXPONENT_BIAS);
+    }
+
+    /**
+     * Append the given {@code BigDecimal} in plain notation.
+     *
+     * @param builder The builder to append to.
+     * @param value   The value to append.
+     * @return the builder.
+     */
+    @NotNull
+    static StringBuilder appendBigDecimal(@NotNull StringBuilder builder, @NotNull BigDecimal value) {
+        if (value.precision() > MAX_LONG_PRECISION) {
+            return builder.append(value.toPlainString());
+        }
+        long unscaled = value.unscaledValue().longValue();
+        if (unscaled < 0) {
+            builder.append('-');
+            unscaled = -unscaled;
+        }
+        int length = decimalLength(unscaled);
+        int scale = value.scale();
+        if (unscaled == 0 && scale <= 0) {
+            builder.append('0');
+        } else if (scale <= 0) {
+            appendDigits(builder, unscaled, length);
+            appendZeros(builder, -scale);
+        } else if (scale < length) {
+            appendDigitsWithPoint(builder, unscaled, length, length - scale);
+        } else {
+            builder.append("0.");
+            appendZeros(builder, scale - length);
+            appendDigits(builder, unscaled, length);
+        }
+        return builder;
+    }
+
+    /**
+     * Compute the shortest decimal in the rounding interval of a positive finite binary floating point number, and
+     * append it.
+     */
+    @NotNull
+    private static StringBuilder appendShortest(@NotNull StringBuilder builder, long ieeeMantissa, int ieeeExponent,
+                                                int mantissaBits, int exponentBias) {
+        // Step 1: Decode the floating point number and unify normalized and subnormal cases.
+        int e2;
+        long m2;
+        if (ieeeExponent == 0) {
+            e2 = 1 - exponentBias - mantissaBits - 2;
+            m2 = ieeeMantissa;
+        } else {
+            e2 = ieeeExponent - exponentBias - mantissaBits - 2;
+            m2 = (1L << mantissaBits) | ieeeMantissa;
+        }
+        boolean acceptBounds = (m2 & 1) == 0;
+
+        // Step 2: Determine the interval of valid decimal representations.
+        long mv = 4 * m2;
+        int mmShift = ieeeMantissa != 0 || ieeeExponent <= 1 ? 1 : 0;
+
+        // Step 3: Convert to a decimal power base using 128-bit arithmetic.
+        long vr;
+        long vp;
+        long vm;
+        int e10;
+        boolean vmIsTrailingZeros = false;
+        boolean vrIsTrailingZeros = false;
+        if (e2 >= 0) {
+            int q = log10Pow2(e2) - (e2 > 3 ? 1 : 0);
+            e10 = q;
+            int k = POW5_INV_BITCOUNT + pow5bits(q) - 1;
+            int i = -e2 + q + k;
+            long[] multiplier = POW5_INV_SPLIT[q];
+            vr = mulShift(4 * m2, multiplier, i);
+            vp = mulShift(4 * m2 + 2, multiplier, i);
+            vm = mulShift(4 * m2 - 1 - mmShift, multiplier, i);
+            if (q <= 21) {
+                // Only one of mp, mv, and mm can be a multiple of 5, if any.
+                if (mv % 5 == 0) {
+                    vrIsTrailingZeros = multipleOfPowerOf5(mv, q);
+                } else if (acceptBounds) {
+                    vmIsTrailingZeros = multipleOfPowerOf5(mv - 1 - mmShift, q);
+                } else if (multipleOfPowerOf5(mv + 2, q)) {
+                    vp -= 1;
+                }
+            }
+        } else {
+            int q = log10Pow5(-e2) - (-e2 > 1 ? 1 : 0);
+            e10 = q + e2;
+            int i = -e2 - q;
+            int k = pow5bits(i) - POW5_BITCOUNT;
+            int j = q - k;
+            long[] multiplier = POW5_SPLIT[i];
+            vr = mulShift(4 * m2, multiplier, j);
+            vp = mulShift(4 * m2 + 2, multiplier, j);
+            vm = mulShift(4 * m2 - 1 - mmShift, multiplier, j);
+            if (q <= 1) {
+                // mv = 4 * m2, so it always has at least two trailing 0 bits.
+                vrIsTrailingZeros = true;
+                if (acceptBounds) {
+                    vmIsTrailingZeros = mmShift == 1;
+                } else {
+                    vp -= 1;
+                }
+            } else if (q < 63) {
+                vrIsTrailingZeros = multipleOfPowerOf2(mv, q);
+            }
+        }
+
+        // Step 4: Find the shortest decimal representation in the interval of valid representations.
+        int removed = 0;
+        long output;
+        if (vmIsTrailingZeros || vrIsTrailingZeros) {
+            int lastRemovedDigit = 0;
+            while (vp / 10 > vm / 10) {
+                vmIsTrailingZeros &= vm % 10 == 0;
+                vrIsTrailingZeros &= lastRemovedDigit == 0;
+                lastRemovedDigit = (int) (vr % 10);
+                vr /= 10;
+                vp /= 10;
+                vm /= 10;
+                removed++;
+            }
+            if (vmIsTrailingZeros) {
+                while (vm % 10 == 0) {
+                    vrIsTrailingZeros &= lastRemovedDigit == 0;
+                    lastRemovedDigit = (int) (vr % 10);
+                    vr /= 10;
+                    vp /= 10;
+                    vm /= 10;
+                    removed++;
+                }
+            }
+            if (vrIsTrailingZeros && lastRemovedDigit == 5 && vr % 2 == 0) {
+                // Round even if the exact number is .....50..0.
+                lastRemovedDigit = 4;
+            }
+            output = vr + ((vr == vm && (!acceptBounds || !vmIsTrailingZeros)) || lastRemovedDigit >= 5 ? 1 : 0);
+        } else {
+            // This is the common case, where no digits of vm or vr that are removed can be trailing zeros.
+            boolean roundUp = false;
+            while (vp / 10 > vm / 10) {
+                roundUp = vr % 10 >= 5;
+                vr /= 10;
+                vp /= 10;
+                vm /= 10;
+                removed++;
+            }
+            output = vr + (vr == vm || roundUp ? 1 : 0);
+        }
+        return appendDecimal(builder, output, e10 + removed);
+    }
+
+    /**
+     * Append the number digits &times; 10<sup>exponent</sup>. The result always has a decimal point or an exponent,
+     * so that it is not taken to be an integer.
+     */
+    @NotNull
+    private static StringBuilder appendDecimal(@NotNull StringBuilder builder, long digits, int exponent) {
+        int length = decimalLength(digits);
+        int scientificExponent = exponent + length - 1;
+        if (scientificExponent < MIN_PLAIN_EXPONENT || scientificExponent > MAX_PLAIN_EXPONENT) {
+            if (length == 1) {
+                appendDigits(builder, digits, 1);
+                builder.append(".0");
+            } else {
+                appendDigitsWithPoint(builder, digits, length, 1);
+            }
+            return builder.append('E').append(scientificExponent);
+        }
+        if (exponent >= 0) {
+            appendDigits(builder, digits, length);
+            appendZeros(builder, exponent);
+            return builder.append(".0");
+        }
+        if (scientificExponent >= 0) {
+            return appendDigitsWithPoint(builder, digits, length, scientificExponent + 1);
+        }
+        builder.append("0.");
+        appendZeros(builder, -scientificExponent - 1);
+        return appendDigits(builder, digits, length);
+    }
+
+    @NotNull
+    private static StringBuilder appendDigits(@NotNull StringBuilder builder, long digits, int length) {
+        int start = builder.length();
+        builder.setLength(start + length);
+        for (int i = start + length - 1; i >= start; i--) {
+            builder.setCharAt(i, (char) ('0' + digits % 10));
+            digits /= 10;
+        }
+        return builder;
+    }
+
+    /**
+     * Append the given digits with a decimal point after the first {@code integerLength} of them.
+     */
+    @NotNull
+    private static StringBuilder appendDigitsWithPoint(@NotNull StringBuilder builder, long digits, int length, int integerLength) {
+        int start = builder.length();
+        builder.setLength(start + length + 1);
+        int pointIndex = start + integerLength;
+        for (int i = start + length; i >= start; i--) {
+            if (i == pointIndex) {
+                builder.setCharAt(i, '.');
+            } else {
+                builder.setCharAt(i, (char) ('0' + digits % 10));
+                digits /= 10;
+            }
+        }
+        return builder;
+    }
+
+    private static void appendZeros(@NotNull StringBuilder builder, int count) {
+        for (int i = 0; i < count; i++) {
+            builder.append('0');
+        }
+    }
+
+    private static int decimalLength(long value) {
+        long limit = 10;
+        for (int length = 1; length < 19; length++) {
+            if (value < limit) {
+                return length;
+            }
+            limit *= 10;
+        }
+        return 19;
+    }
+
+    /**
+     * Returns ceil(log_2(5<sup>e</sup>)), or 1 if e is 0. This is the number of bits in 5<sup>e</sup>. Valid for 0
+     * &lt;= e &lt;= 3528.
+     */
+    private static int pow5bits(int e) {
+        return ((e * 1217359) >>> 19) + 1;
+    }
+
+    /**
+     * Returns floor(log_10(2<sup>e</sup>)). Valid for 0 &lt;= e &lt;= 1650.
+     */
+    private static int log10Pow2(int e) {
+        return (int) ((e * 78913L) >>> 18);
+    }
+
+    /**
+     * Returns floor(log_10(5<sup>e</sup>)). Valid for 0 &lt;= e &lt;= 2620.
+     */
+    private static int log10Pow5(int e) {
+        return (int) ((e * 732923L) >>> 20);
+    }
+
+    private static boolean multipleOfPowerOf5(long value, int p) {
+        int count = 0;
+        while (value > 0 && value % 5 == 0) {
+            value /= 5;
+            count++;
+            if (count >= p) {
+                return true;
+            }
+        }
+        return count >= p;
+    }
+
+    private static boolean multipleOfPowerOf2(long value, int p) {
+        return (value & ((1L << p) - 1)) == 0;
+    }
+
+    /**
+     * Compute (m &times; multiplier) &gt;&gt; shift, where multiplier is a 128-bit number given as {low 64 bits, high
+     * 64 bits} and the result is known to fit in 64 bits.
+     */
+    private static long mulShift(long m, long[] multiplier, int shift) {
+        long low0 = m * multiplier[0];
+        long high0 = unsignedMultiplyHigh(m, multiplier[0]);
+        long low1 = m * multiplier[1];
+        long high1 = unsignedMultiplyHigh(m, multiplier[1]);
+        // (high0:low0 >> 64) + (high1:low1), a 128-bit sum.
+        long sumLow = high0 + low1;
+        long sumHigh = high1 + (Long.compareUnsigned(sumLow, high0) < 0 ? 1 : 0);
+        int remainingShift = shift - 64;
+        if (remainingShift == 0) {
+            return sumLow;
+        } else if (remainingShift < 64) {
+            return (sumLow >>> remainingShift) | (sumHigh << (64 - remainingShift));
+        }
+        return sumHigh >>> (remainingShift - 64);
+    }
+
+    /**
+     * Return the high 64 bits of the unsigned 128-bit product of the given numbers.
+     */
+    private static long unsignedMultiplyHigh(long x, long y) {
+        long x0 = x & 0xffffffffL;
+        long x1 = x >>> 32;
+        long y0 = y & 0xffffffffL;
+        long y1 = y >>> 32;
+        long p00 = x0 * y0;
+        long p01 = x0 * y1;
+        long p10 = x1 * y0;
+        long p11 = x1 * y1;
+        long middle = (p00 >>> 32) + (p01 & 0xffffffffL) + (p10 & 0xffffffffL);
+        return p11 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
+    }
+}
@@ -0,0 +1,60 @@
+package com.markgrand.smileyvars;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dispatch from the class of a value to the {@link PreparedStatement} setter that is specific to the class. Using the
+ * specific setter saves the driver from working out the type of the value, which it has to do for {@code setObject}.
+ *
+ * @author Mark Grand
+ */
+final class ParameterSetters {
+    /**
+     * Sets a parameter to a value.
+     */
+    @FunctionalInterface
+    interface ParameterSetter {
+        void set(@NotNull PreparedStatement preparedStatement, int parameterIndex, @NotNull Object value) throws SQLException;
+    }
+
+    private static final Map<Class<?>, ParameterSetter> setterMap = new HashMap<>();
+
+    static {
+        setterMap.put(String.class, (ps, i, value) -> ps.setString(i, (String) value));
+        setterMap.put(Integer.class, (ps, i, value) -> ps.setInt(i, (Integer) value));
+        setterMap.put(Long.class, (ps, i, value) -> ps.setLong(i, (Long) value));
+        setterMap.put(Short.class, (ps, i, value) -> ps.setShort(i, (Short) value));
+        setterMap.put(Byte.class, (ps, i, value) -> ps.setByte(i, (Byte) value));
+        setterMap.put(Boolean.class, (ps, i, value) -> ps.setBoolean(i, (Boolean) value));
+        setterMap.put(Double.class, (ps, i, value) -> ps.setDouble(i, (Double) value));
+        setterMap.put(Float.class, (ps, i, value) -> ps.setFloat(i, (Float) value));
+        setterMap.put(BigDecimal.class, (ps, i, value) -> ps.setBigDecimal(i, (BigDecimal) value));
+        setterMap.put(BigInteger.class, (ps, i, value) -> ps.setBigDecimal(i, new BigDecimal((BigInteger) value)));
+        setterMap.put(byte[].class, (ps, i, value) -> ps.setBytes(i, (byte[]) value));
+        setterMap.put(Date.class, (ps, i, value) -> ps.setDate(i, (Date) value));
+        setterMap.put(Time.class, (ps, i, value) -> ps.setTime(i, (Time) value));
+        setterMap.put(Timestamp.class, (ps, i, value) -> ps.setTimestamp(i, (Timestamp) value));
+    }
+
+    private ParameterSetters() {
+    }
+
+    /**
+     * Get the setter for values of the given class.
+     *
+     * @param valueClass The class of the value. Only exact matches are found, since a subclass may need to be set
+     *                   differently.
+     * @return the setter or null if there is no specific setter for the class.
+     */
+    @Nullable
+    static ParameterSetter forClass(@NotNull Class<?> valueClass) {
+        return setterMap.get(valueClass);
+    }
+}
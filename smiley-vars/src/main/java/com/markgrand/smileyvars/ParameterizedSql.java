@@ -0,0 +1,162 @@
+package com.markgrand.smileyvars;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.*;
+import java.time.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The expansion of a {@link SmileyVarsTemplate} with a {@code ?} parameter in place of each variable, together with
+ * the values to bind to the parameters. It is produced by {@link SmileyVarsTemplate#applyParameterized(java.util.Map)}.
+ * <pre>
+ * ParameterizedSql parameterizedSql = template.applyParameterized(values);
+ * try (PreparedStatement pstmt = parameterizedSql.prepare(conn)) {
+ *     ResultSet rs = pstmt.executeQuery();
+ *     ...
+ * </pre>
+ * <p>Objects of this class are immutable, though the values they contain may not be.</p>
+ *
+ * @author Mark Grand
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ParameterizedSql {
+    private final String sql;
+    private final List<String> parameterNames;
+    private final Object[] values;
+    private final int[] sqlTypes;
+
+    ParameterizedSql(@NotNull String sql, @NotNull List<String> parameterNames, @NotNull Object[] values) {
+        this.sql = sql;
+        this.parameterNames = Collections.unmodifiableList(parameterNames);
+        this.values = values;
+        sqlTypes = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            sqlTypes[i] = sqlTypeOf(values[i]);
+        }
+    }
+
+    /**
+     * Get the {@link Types SQL type} that a value is bound as.
+     *
+     * @param value The value.
+     * @return the type or {@link Types#OTHER} if it is not a type that JDBC has a standard mapping for.
+     */
+    static int sqlTypeOf(Object value) {
+        if (value == null) {
+            return Types.NULL;
+        } else if (value instanceof String) {
+            return Types.VARCHAR;
+        } else if (value instanceof Integer) {
+            return Types.INTEGER;
+        } else if (value instanceof Long) {
+            return Types.BIGINT;
+        } else if (value instanceof Short) {
+            return Types.SMALLINT;
+        } else if (value instanceof Byte) {
+            return Types.TINYINT;
+        } else if (value instanceof Boolean) {
+            return Types.BOOLEAN;
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            return Types.NUMERIC;
+        } else if (value instanceof Double) {
+            return Types.DOUBLE;
+        } else if (value instanceof Float) {
+            return Types.REAL;
+        } else if (value instanceof Date || value instanceof LocalDate) {
+            return Types.DATE;
+        } else if (value instanceof Time || value instanceof LocalTime) {
+            return Types.TIME;
+        } else if (value instanceof java.util.Date || value instanceof LocalDateTime) {
+            return Types.TIMESTAMP;
+        } else if (value instanceof OffsetDateTime) {
+            return Types.TIMESTAMP_WITH_TIMEZONE;
+        } else if (value instanceof byte[]) {
+            return Types.VARBINARY;
+        }
+        return Types.OTHER;
+    }
+
+    /**
+     * @return the SQL with {@code ?} parameters.
+     */
+    @NotNull
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the name of the variable whose value is bound to each parameter, in parameter order. A name appears once
+     * for each time the variable appears in the SQL.
+     */
+    @NotNull
+    public List<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    /**
+     * @return the values to bind to the parameters, in parameter order.
+     */
+    @NotNull
+    public List<Object> getValues() {
+        return Collections.unmodifiableList(Arrays.asList(values));
+    }
+
+    /**
+     * @return the {@link Types SQL type} of each value, in parameter order. Null values are {@link Types#NULL} and
+     * values whose class JDBC has no standard mapping for are {@link Types#OTHER}.
+     */
+    @NotNull
+    public int[] getSqlTypes() {
+        return sqlTypes.clone();
+    }
+
+    /**
+     * Bind the values to the parameters of a prepared statement that was prepared with this object's SQL.
+     *
+     * @param preparedStatement The prepared statement.
+     * @throws SQLException if there is a problem setting a parameter.
+     */
+    public void bind(@NotNull PreparedStatement preparedStatement) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                preparedStatement.setNull(i + 1, Types.NULL);
+            } else if (value instanceof BigInteger) {
+                preparedStatement.setBigDecimal(i + 1, new BigDecimal((BigInteger) value));
+            } else if (value.getClass() == java.util.Date.class) {
+                preparedStatement.setTimestamp(i + 1, new Timestamp(((java.util.Date) value).getTime()));
+            } else {
+                preparedStatement.setObject(i + 1, value);
+            }
+        }
+    }
+
+    /**
+     * Prepare this object's SQL with the given connection and bind the values to its parameters.
+     *
+     * @param conn The connection.
+     * @return the prepared statement. The caller is responsible for closing it.
+     * @throws SQLException if there is a problem preparing the statement or setting a parameter.
+     */
+    @NotNull
+    public PreparedStatement prepare(@NotNull Connection conn) throws SQLException {
+        PreparedStatement preparedStatement = conn.prepareStatement(sql);
+        try {
+            bind(preparedStatement);
+        } catch (SQLException | RuntimeException e) {
+            preparedStatement.close();
+            throw e;
+        }
+        return preparedStatement;
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterizedSql{sql='" + sql + "', parameterNames=" + parameterNames + '}';
+    }
+}
@@ -0,0 +1,180 @@
+package com.markgrand.smileyvars;
+
+import com.markgrand.smileyvars.util.ParameterBinderProvider;
+import com.markgrand.smileyvars.util.ValueFormatterProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Index of the {@link ValueFormatterProvider} and {@link ParameterBinderProvider} services that are found with {@link
+ * ServiceLoader}. The services are loaded once, the first time the index is used. Since providers declare the exact
+ * classes they apply to, the index maps each of those classes directly to its provider.
+ *
+ * @author Mark Grand
+ */
+class ProviderIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ProviderIndex.class);
+
+    private final List<ValueFormatterProvider> formatterProviders;
+    private final Map<Class<?>, ParameterBinderProvider> bindersByClass;
+
+    private ProviderIndex() {
+        formatterProviders = Collections.unmodifiableList(loadFormatterProviders());
+        bindersByClass = Collections.unmodifiableMap(loadBinderProviders());
+    }
+
+    /**
+     * Get the provider index, loading the providers if this is the first call.
+     *
+     * @return the provider index.
+     */
+    @NotNull
+    static ProviderIndex getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    @NotNull
+    private static List<ValueFormatterProvider> loadFormatterProviders() {
+        return indexFormatterProviders(load(ValueFormatterProvider.class));
+    }
+
+    /**
+     * Select the formatter providers to use. A provider whose name is the same as a built-in formatter or a provider
+     * that was found earlier is ignored, since registering it would replace the other formatter for all of the
+     * classes that it formats. A provider's target classes that an earlier provider already claimed are taken away
+     * from it.
+     *
+     * @param candidates The providers in the order they were found.
+     * @return the providers to use.
+     */
+    @NotNull
+    static List<ValueFormatterProvider> indexFormatterProviders(@NotNull Iterable<ValueFormatterProvider> candidates) {
+        List<ValueFormatterProvider> providers = new ArrayList<>();
+        Map<Class<?>, ValueFormatterProvider> formattersByClass = new HashMap<>();
+        Set<String> names = new HashSet<>(ValueFormatterRegistry.BUILTIN_FORMATTER_NAMES);
+        for (ValueFormatterProvider provider : candidates) {
+            if (!names.add(provider.getName())) {
+                logger.warn("Ignoring formatter provider {} because there is already a formatter named {}.",
+                        provider.getClass().getName(), provider.getName());
+                continue;
+            }
+            List<Class<?>> claimedClasses = new ArrayList<>();
+            for (Class<?> clazz : provider.getTargetClasses()) {
+                ValueFormatterProvider previous = formattersByClass.putIfAbsent(clazz, provider);
+                if (previous == null) {
+                    claimedClasses.add(clazz);
+                } else {
+                    logger.warn("Ignoring formatter provider {} for {} because {} was already found for it.",
+                            provider.getName(), clazz.getName(), previous.getName());
+                }
+            }
+            if (!claimedClasses.isEmpty()) {
+                providers.add(claimedClasses.size() == provider.getTargetClasses().size()
+                                      ? provider : new RestrictedFormatterProvider(provider, claimedClasses));
+            }
+        }
+        logger.debug("Found formatter providers: {}", providers);
+        return providers;
+    }
+
+    @NotNull
+    private static Map<Class<?>, ParameterBinderProvider> loadBinderProviders() {
+        Map<Class<?>, ParameterBinderProvider> binders = new HashMap<>();
+        for (ParameterBinderProvider provider : load(ParameterBinderProvider.class)) {
+            for (Class<?> clazz : provider.getTargetClasses()) {
+                if (binders.putIfAbsent(clazz, provider) != null) {
+                    logger.warn("Ignoring binder provider {} for {} because another binder was already found for it.",
+                            provider.getClass().getName(), clazz.getName());
+                }
+            }
+        }
+        logger.debug("Found binder providers: {}", binders);
+        return binders;
+    }
+
+    @NotNull
+    private static <T> List<T> load(@NotNull Class<T> serviceClass) {
+        List<T> services = new ArrayList<>();
+        Iterator<T> iterator = ServiceLoader.load(serviceClass).iterator();
+        while (true) {
+            try {
+                if (!iterator.hasNext()) {
+                    return services;
+                }
+                services.add(iterator.next());
+            } catch (ServiceConfigurationError e) {
+                logger.warn("Unable to load a " + serviceClass.getSimpleName(), e);
+            }
+        }
+    }
+
+    /**
+     * Get the formatter providers in the order they were found.
+     *
+     * @return the formatter providers.
+     */
+    @NotNull
+    List<ValueFormatterProvider> getFormatterProviders() {
+        return formatterProviders;
+    }
+
+    /**
+     * Get the binder provider for values of the given class.
+     *
+     * @param clazz The class of a value to be bound.
+     * @return the binder provider or null if there is no binder for the class.
+     */
+    @Nullable
+    ParameterBinderProvider getBinderProvider(@NotNull Class<?> clazz) {
+        return bindersByClass.isEmpty() ? null : bindersByClass.get(clazz);
+    }
+
+    /**
+     * Lazy holder for the singleton index.
+     */
+    private static class Holder {
+        private static final ProviderIndex INSTANCE = new ProviderIndex();
+    }
+
+    /**
+     * A formatter provider that is restricted to the subset of its target classes that are not claimed by a provider
+     * that was found earlier.
+     */
+    private static class RestrictedFormatterProvider implements ValueFormatterProvider {
+        private final ValueFormatterProvider provider;
+        private final Collection<Class<?>> targetClasses;
+
+        RestrictedFormatterProvider(@NotNull ValueFormatterProvider provider, @NotNull Collection<Class<?>> targetClasses) {
+            this.provider = provider;
+            this.targetClasses = Collections.unmodifiableCollection(targetClasses);
+        }
+
+        @NotNull
+        @Override
+        public String getName() {
+            return provider.getName();
+        }
+
+        @NotNull
+        @Override
+        public Collection<Class<?>> getTargetClasses() {
+            return targetClasses;
+        }
+
+        @NotNull
+        @Override
+        public String format(@NotNull Object value) {
+            return provider.format(value);
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return provider.toString();
+        }
+    }
+}
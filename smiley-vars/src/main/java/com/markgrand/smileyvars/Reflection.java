@@ -0,0 +1,114 @@
+package com.markgrand.smileyvars;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reflection that is shared by {@link BeanAccessors} and {@link RowMappers}: the lookup that they create method
+ * handles and generated functions with, deciding whether a class's members can be called by a generated function and
+ * finding the components of records.
+ *
+ * @author Mark Grand
+ */
+final class Reflection {
+    /**
+     * The lookup for creating method handles and the functions generated with {@link LambdaMetafactory}.
+     */
+    static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private Reflection() {
+    }
+
+    /**
+     * Return true if a class and the classes it is nested in are public and it is visible to the class loader of
+     * SmileyVars, so that a class generated by {@link LambdaMetafactory} can call its members directly.
+     *
+     * @param type The class.
+     * @return true if generated functions can use the class.
+     */
+    static boolean isVisiblePublicClass(@NotNull Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        try {
+            return Class.forName(type.getName(), false, Reflection.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the components of a record class, in the order of the parameters of its canonical constructor. Records were
+     * added in Java 16, so they are found by reflection.
+     *
+     * @param type The class.
+     * @return an unmodifiable list of the components or null if the class is not a record or this version of Java
+     * does not support records.
+     * @throws SmileyVarsException if the class is a record but its components cannot be gotten.
+     */
+    @Nullable
+    static List<RecordComponent> recordComponents(@NotNull Class<?> type) {
+        Object[] components;
+        try {
+            components = (Object[]) Class.class.getMethod("getRecordComponents").invoke(type);
+        } catch (ReflectiveOperationException e) {
+            // Records are not supported by this version of Java.
+            return null;
+        }
+        if (components == null) {
+            return null;
+        }
+        List<RecordComponent> result = new ArrayList<>(components.length);
+        try {
+            for (Object component : components) {
+                Class<?> componentClass = component.getClass();
+                result.add(new RecordComponent((String) componentClass.getMethod("getName").invoke(component),
+                        (Class<?>) componentClass.getMethod("getType").invoke(component),
+                        (Method) componentClass.getMethod("getAccessor").invoke(component)));
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new SmileyVarsException("Unable to get the record components of " + type.getName(), e);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * A component of a record class.
+     */
+    static final class RecordComponent {
+        private final String name;
+        private final Class<?> type;
+        private final Method accessor;
+
+        private RecordComponent(@NotNull String name, @NotNull Class<?> type, @NotNull Method accessor) {
+            this.name = name;
+            this.type = type;
+            this.accessor = accessor;
+        }
+
+        @NotNull
+        String getName() {
+            return name;
+        }
+
+        @NotNull
+        Class<?> getType() {
+            return type;
+        }
+
+        @NotNull
+        Method getAccessor() {
+            return accessor;
+        }
+    }
+}
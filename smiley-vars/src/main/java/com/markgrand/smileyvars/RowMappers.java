@@ -0,0 +1,474 @@
+package com.markgrand.smileyvars;
+
+import com.markgrand.smileyvars.util.SqlFunction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Compiles functions that create objects of a class from the rows of a {@link ResultSet}. The columns of a row are
+ * matched to the properties of the class by name, ignoring case and underscores, so that a column labeled {@code
+ * FIRST_NAME} sets a property named {@code firstName}. A property is a record component, a public setter such as
+ * {@code setName(String)} or a non-final field. Classes like {@code Integer} and {@code String} that a column can be
+ * read as directly are created from the first column of the row.
+ * <p>How to create and set the properties of a class is worked out once per class. Which column goes with which
+ * property is worked out from the {@link ResultSetMetaData} of the first row that a {@link CompiledRowMapper} maps, so
+ * each row after that is read by column index with the getter for the property's type, such as {@code getInt}.
+ * Constructors and setters of public classes that are visible to SmileyVars are called through functions generated
+ * with {@link LambdaMetafactory}.</p>
+ *
+ * @author Mark Grand
+ */
+final class RowMappers {
+    private static final Logger logger = LoggerFactory.getLogger(RowMappers.class);
+
+    /**
+     * Reads a column of the current row of a result set as a particular type.
+     */
+    @FunctionalInterface
+    interface ColumnReader {
+        @Nullable
+        Object read(@NotNull ResultSet resultSet, int column) throws SQLException;
+    }
+
+    private static final Map<Class<?>, ColumnReader> readerMap = new HashMap<>();
+
+    static {
+        readerMap.put(int.class, ResultSet::getInt);
+        readerMap.put(long.class, ResultSet::getLong);
+        readerMap.put(short.class, ResultSet::getShort);
+        readerMap.put(byte.class, ResultSet::getByte);
+        readerMap.put(boolean.class, ResultSet::getBoolean);
+        readerMap.put(double.class, ResultSet::getDouble);
+        readerMap.put(float.class, ResultSet::getFloat);
+        readerMap.put(Integer.class, (rs, i) -> nullIfWasNull(rs, rs.getInt(i)));
+        readerMap.put(Long.class, (rs, i) -> nullIfWasNull(rs, rs.getLong(i)));
+        readerMap.put(Short.class, (rs, i) -> nullIfWasNull(rs, rs.getShort(i)));
+        readerMap.put(Byte.class, (rs, i) -> nullIfWasNull(rs, rs.getByte(i)));
+        readerMap.put(Boolean.class, (rs, i) -> nullIfWasNull(rs, rs.getBoolean(i)));
+        readerMap.put(Double.class, (rs, i) -> nullIfWasNull(rs, rs.getDouble(i)));
+        readerMap.put(Float.class, (rs, i) -> nullIfWasNull(rs, rs.getFloat(i)));
+        readerMap.put(String.class, ResultSet::getString);
+        readerMap.put(BigDecimal.class, ResultSet::getBigDecimal);
+        readerMap.put(byte[].class, ResultSet::getBytes);
+        readerMap.put(java.sql.Date.class, ResultSet::getDate);
+        readerMap.put(Time.class, ResultSet::getTime);
+        readerMap.put(Timestamp.class, ResultSet::getTimestamp);
+        readerMap.put(java.util.Date.class, ResultSet::getTimestamp);
+    }
+
+    private static final ClassValue<Mapping> mappingsByClass = new ClassValue<Mapping>() {
+        @Override
+        protected Mapping computeValue(Class<?> type) {
+            return createMapping(type);
+        }
+    };
+
+    private RowMappers() {
+    }
+
+    /**
+     * Create a row mapper for a class. The mapper matches columns to properties the first time it is used, so a
+     * mapper should only be used for the results of one SQL statement.
+     *
+     * @param type The class of objects to create.
+     * @param <T>  The class of objects to create.
+     * @return the row mapper.
+     * @throws SmileyVarsException if SmileyVars does not know how to create objects of the class.
+     */
+    @NotNull
+    static <T> CompiledRowMapper<T> compile(@NotNull Class<T> type) {
+        return new CompiledRowMapper<>(type, mappingsByClass.get(type));
+    }
+
+    @Nullable
+    private static Object nullIfWasNull(@NotNull ResultSet resultSet, @NotNull Object value) throws SQLException {
+        return resultSet.wasNull() ? null : value;
+    }
+
+    @NotNull
+    private static Mapping createMapping(@NotNull Class<?> type) {
+        if (readerMap.containsKey(type)) {
+            return new ScalarMapping(readerMap.get(type));
+        }
+        RecordMapping recordMapping = RecordMapping.forRecordClass(type);
+        if (recordMapping != null) {
+            return recordMapping;
+        }
+        return BeanMapping.forBeanClass(type);
+    }
+
+    /**
+     * Get the reader for a property's type. Types that there is no specific getter for are read with {@code
+     * getObject}.
+     */
+    @NotNull
+    private static ColumnReader readerFor(@NotNull Class<?> type) {
+        ColumnReader reader = readerMap.get(type);
+        if (reader != null) {
+            return reader;
+        }
+        Class<?> boxedType = boxed(type);
+        return (rs, i) -> {
+            Object value = rs.getObject(i);
+            return value == null || boxedType.isInstance(value) ? value : rs.getObject(i, boxedType);
+        };
+    }
+
+    @NotNull
+    private static Class<?> boxed(@NotNull Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+
+    /**
+     * Normalize a property name or column label, so that they can be matched without regard to case or underscores.
+     */
+    @NotNull
+    private static String normalizeName(@NotNull String name) {
+        return name.replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Get the exception to throw for an exception thrown by a constructor or setter. Unchecked exceptions are thrown
+     * as they are and checked exceptions are wrapped in a {@link SmileyVarsException}.
+     */
+    @NotNull
+    private static RuntimeException wrap(@NotNull Throwable e, @NotNull String message) {
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        return new SmileyVarsException(message, (Exception) e);
+    }
+
+    /**
+     * A function that creates an object of a class from the current row of a result set, using column indexes that are
+     * resolved from the first result set that it is applied to.
+     *
+     * @param <T> The class of the objects.
+     */
+    static final class CompiledRowMapper<T> implements SqlFunction<ResultSet, T> {
+        private final Class<T> type;
+        private final Mapping mapping;
+        /**
+         * The index of the column for each of the mapping's properties, or 0 if there is no column for the property.
+         * This is null until the first row is mapped.
+         */
+        private volatile int[] columns;
+
+        private CompiledRowMapper(@NotNull Class<T> type, @NotNull Mapping mapping) {
+            this.type = type;
+            this.mapping = mapping;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T apply(@NotNull ResultSet resultSet) throws SQLException {
+            int[] resolvedColumns = columns;
+            if (resolvedColumns == null) {
+                resolvedColumns = mapping.resolveColumns(resultSet.getMetaData(), type);
+                columns = resolvedColumns;
+            }
+            return (T) mapping.map(resultSet, resolvedColumns);
+        }
+
+        /**
+         * @return true if the columns of the result set have been matched to properties.
+         */
+        boolean isResolved() {
+            return columns != null;
+        }
+    }
+
+    /**
+     * How to create an object of a class from a row.
+     */
+    private abstract static class Mapping {
+        /**
+         * The normalized names of the properties that are set from columns.
+         */
+        private final String[] propertyNames;
+        final ColumnReader[] readers;
+
+        Mapping(@NotNull String[] propertyNames, @NotNull ColumnReader[] readers) {
+            this.propertyNames = propertyNames;
+            this.readers = readers;
+        }
+
+        @NotNull
+        int[] resolveColumns(@NotNull ResultSetMetaData metaData, @NotNull Class<?> type) throws SQLException {
+            Map<String, Integer> columnMap = new HashMap<>();
+            for (int i = metaData.getColumnCount(); i >= 1; i--) {
+                // Going backwards so that the first of columns with the same name is used.
+                columnMap.put(normalizeName(metaData.getColumnLabel(i)), i);
+            }
+            int[] columns = new int[propertyNames.length];
+            boolean anyMatched = false;
+            for (int i = 0; i < propertyNames.length; i++) {
+                Integer column = columnMap.get(propertyNames[i]);
+                if (column != null) {
+                    columns[i] = column;
+                    anyMatched = true;
+                }
+            }
+            if (!anyMatched && propertyNames.length > 0) {
+                throw new SmileyVarsException("None of the columns " + columnMap.keySet() + " match a property of "
+                                                      + type.getName());
+            }
+            logger.debug("Mapping columns {} to the properties {} of {}", columns, propertyNames, type.getName());
+            return columns;
+        }
+
+        abstract Object map(@NotNull ResultSet resultSet, @NotNull int[] columns) throws SQLException;
+    }
+
+    /**
+     * Mapping for classes that are read directly from the first column.
+     */
+    private static final class ScalarMapping extends Mapping {
+        private final ColumnReader reader;
+
+        ScalarMapping(@NotNull ColumnReader reader) {
+            super(new String[0], new ColumnReader[0]);
+            this.reader = reader;
+        }
+
+        @Override
+        Object map(@NotNull ResultSet resultSet, @NotNull int[] columns) throws SQLException {
+            return reader.read(resultSet, 1);
+        }
+    }
+
+    /**
+     * Mapping for records, which are created by passing the values of all of their components to their canonical
+     * constructor. Records were added in Java 16, so they are found by reflection.
+     */
+    private static final class RecordMapping extends Mapping {
+        private final MethodHandle constructor;
+        private final Object[] defaultValues;
+
+        private RecordMapping(@NotNull String[] propertyNames, @NotNull ColumnReader[] readers,
+                              @NotNull MethodHandle constructor, @NotNull Object[] defaultValues) {
+            super(propertyNames, readers);
+            this.constructor = constructor;
+            this.defaultValues = defaultValues;
+        }
+
+        @Nullable
+        static RecordMapping forRecordClass(@NotNull Class<?> type) {
+            List<Reflection.RecordComponent> components = Reflection.recordComponents(type);
+            if (components == null) {
+                return null;
+            }
+            int count = components.size();
+            String[] names = new String[count];
+            Class<?>[] types = new Class<?>[count];
+            ColumnReader[] readers = new ColumnReader[count];
+            Object[] defaultValues = new Object[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = normalizeName(components.get(i).getName());
+                types[i] = components.get(i).getType();
+                readers[i] = readerFor(types[i]);
+                defaultValues[i] = types[i].isPrimitive() ? java.lang.reflect.Array.get(java.lang.reflect.Array.newInstance(types[i], 1), 0) : null;
+            }
+            try {
+                Constructor<?> canonicalConstructor = type.getDeclaredConstructor(types);
+                canonicalConstructor.setAccessible(true);
+                MethodHandle constructor = Reflection.lookup.unreflectConstructor(canonicalConstructor)
+                                                   .asSpreader(Object[].class, count)
+                                                   .asType(MethodType.methodType(Object.class, Object[].class));
+                return new RecordMapping(names, readers, constructor, defaultValues);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                throw new SmileyVarsException("Unable to use the canonical constructor of " + type.getName(), e);
+            }
+        }
+
+        @Override
+        Object map(@NotNull ResultSet resultSet, @NotNull int[] columns) throws SQLException {
+            Object[] args = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                args[i] = columns[i] > 0 ? readers[i].read(resultSet, columns[i]) : defaultValues[i];
+                if (args[i] == null) {
+                    args[i] = defaultValues[i];
+                }
+            }
+            try {
+                return (Object) constructor.invokeExact(args);
+            } catch (Throwable e) {
+                throw wrap(e, "Unable to create a record from a row");
+            }
+        }
+    }
+
+    /**
+     * Mapping for classes that are created with a no-argument constructor and then have their properties set.
+     */
+    private static final class BeanMapping extends Mapping {
+        private final Supplier<Object> constructor;
+        /**
+         * The writer for each property, in the same order as the property names.
+         */
+        private final List<BiConsumer<Object, Object>> writers;
+
+        private BeanMapping(@NotNull String[] propertyNames, @NotNull ColumnReader[] readers,
+                            @NotNull Supplier<Object> constructor, @NotNull List<BiConsumer<Object, Object>> writers) {
+            super(propertyNames, readers);
+            this.constructor = constructor;
+            this.writers = writers;
+        }
+
+        @NotNull
+        static BeanMapping forBeanClass(@NotNull Class<?> type) {
+            if (type.isInterface() || Modifier.isAbstract(type.getModifiers()) || type.isPrimitive() || type.isArray()) {
+                throw new SmileyVarsException("Unable to create rows as " + type.getName());
+            }
+            Supplier<Object> constructor = constructorFor(type);
+            // Properties with higher precedence are found later, so they replace those with lower precedence.
+            Map<String, BiConsumer<Object, Object>> writerMap = new LinkedHashMap<>();
+            Map<String, Class<?>> typeMap = new HashMap<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    String name = normalizeName(field.getName());
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers) && !field.isSynthetic()
+                                && !writerMap.containsKey(name)) {
+                        BiConsumer<Object, Object> writer = fieldWriter(field);
+                        if (writer != null) {
+                            writerMap.put(name, writer);
+                            typeMap.put(name, field.getType());
+                        }
+                    }
+                }
+            }
+            for (Method method : type.getMethods()) {
+                if (method.getName().length() > 3 && method.getName().startsWith("set") && method.getParameterCount() == 1
+                            && !Modifier.isStatic(method.getModifiers())) {
+                    BiConsumer<Object, Object> writer = setterWriter(method);
+                    if (writer != null) {
+                        String name = normalizeName(method.getName().substring(3));
+                        writerMap.put(name, writer);
+                        typeMap.put(name, method.getParameterTypes()[0]);
+                    }
+                }
+            }
+            String[] names = writerMap.keySet().toArray(new String[0]);
+            ColumnReader[] readers = new ColumnReader[names.length];
+            List<BiConsumer<Object, Object>> writers = new ArrayList<>(names.length);
+            for (int i = 0; i < names.length; i++) {
+                readers[i] = readerFor(typeMap.get(names[i]));
+                writers.add(writerMap.get(names[i]));
+            }
+            logger.debug("Found settable properties {} of {}", writerMap.keySet(), type.getName());
+            return new BeanMapping(names, readers, constructor, writers);
+        }
+
+        @NotNull
+        @SuppressWarnings("unchecked")
+        private static Supplier<Object> constructorFor(@NotNull Class<?> type) {
+            Constructor<?> noArgConstructor;
+            try {
+                noArgConstructor = type.getDeclaredConstructor();
+            } catch (NoSuchMethodException e) {
+                throw new SmileyVarsException(type.getName() + " does not have a constructor with no arguments", e);
+            }
+            if (Reflection.isVisiblePublicClass(type) && Modifier.isPublic(noArgConstructor.getModifiers())) {
+                try {
+                    MethodHandle handle = Reflection.lookup.unreflectConstructor(noArgConstructor);
+                    CallSite callSite = LambdaMetafactory.metafactory(Reflection.lookup,
+                            "get", MethodType.methodType(Supplier.class),
+                            MethodType.methodType(Object.class), handle, MethodType.methodType(type));
+                    return (Supplier<Object>) callSite.getTarget().invokeExact();
+                } catch (Throwable e) {
+                    logger.debug("Using a method handle to call {}", noArgConstructor, e);
+                }
+            }
+            MethodHandle handle;
+            try {
+                noArgConstructor.setAccessible(true);
+                handle = Reflection.lookup.unreflectConstructor(noArgConstructor).asType(MethodType.methodType(Object.class));
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new SmileyVarsException("Unable to use the constructor of " + type.getName(), e);
+            }
+            return () -> {
+                try {
+                    return (Object) handle.invokeExact();
+                } catch (Throwable e) {
+                    throw wrap(e, "Unable to create a " + type.getName());
+                }
+            };
+        }
+
+        @Nullable
+        @SuppressWarnings("unchecked")
+        private static BiConsumer<Object, Object> setterWriter(@NotNull Method method) {
+            Class<?> declaringClass = method.getDeclaringClass();
+            if (Reflection.isVisiblePublicClass(declaringClass)) {
+                try {
+                    MethodHandle handle = Reflection.lookup.unreflect(method);
+                    CallSite callSite = LambdaMetafactory.metafactory(Reflection.lookup,
+                            "accept", MethodType.methodType(BiConsumer.class),
+                            MethodType.methodType(void.class, Object.class, Object.class), handle,
+                            MethodType.methodType(void.class, declaringClass, boxed(method.getParameterTypes()[0])));
+                    return (BiConsumer<Object, Object>) callSite.getTarget().invokeExact();
+                } catch (Throwable e) {
+                    logger.debug("Using a method handle to call {}", method, e);
+                }
+            }
+            try {
+                method.setAccessible(true);
+                return handleWriter(Reflection.lookup.unreflect(method), method.getName());
+            } catch (IllegalAccessException | RuntimeException e) {
+                logger.debug("Ignoring inaccessible setter {}", method, e);
+                return null;
+            }
+        }
+
+        @Nullable
+        private static BiConsumer<Object, Object> fieldWriter(@NotNull Field field) {
+            try {
+                field.setAccessible(true);
+                return handleWriter(Reflection.lookup.unreflectSetter(field), field.getName());
+            } catch (IllegalAccessException | RuntimeException e) {
+                logger.debug("Ignoring inaccessible field {}", field, e);
+                return null;
+            }
+        }
+
+        @NotNull
+        private static BiConsumer<Object, Object> handleWriter(@NotNull MethodHandle handle, @NotNull String name) {
+            MethodHandle objectHandle = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+            return (bean, value) -> {
+                try {
+                    objectHandle.invokeExact(bean, value);
+                } catch (Throwable e) {
+                    throw wrap(e, "Unable to set " + name + " of " + bean);
+                }
+            };
+        }
+
+        @Override
+        Object map(@NotNull ResultSet resultSet, @NotNull int[] columns) throws SQLException {
+            Object bean = constructor.get();
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] > 0) {
+                    Object value = readers[i].read(resultSet, columns[i]);
+                    if (value != null) {
+                        writers.get(i).accept(bean, value);
+                    }
+                }
+            }
+            return bean;
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.markgrand.smileyvars;
 
 import com.markgrand.smileyvars.util.BiSqlConsumer;
-import com.markgrand.smileyvars.util.VacuousBiSqlConsumer;
+import com.markgrand.smileyvars.util.ParameterBinderProvider;
+import com.markgrand.smileyvars.util.SqlConsumer;
+import com.markgrand.smileyvars.util.SqlFunction;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,6 +16,9 @@ import java.net.URL;
 import java.sql.Date;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * SmileyVars enabled version of a prepared statement. You create objects with a SmileyVars template, specify the values
@@ -42,18 +48,204 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(SmileyVarsPreparedStatement.class);
 
     private final Connection connection;
-    private final SmileyVarsTemplate template;
+    private final SmileyVarsStatementPlan plan;
 
     /**
-     * Map SmileyVar names to BiSqlConsumer objects that set a value of a parameter in a PreparedStatement object.
+     * If not null, underlying prepared statements are obtained from this pool instead of being prepared with {@link
+     * #connection}.
      */
-    private final LinkedHashMap<String, BiSqlConsumer<PreparedStatement, Integer>> valueMap = new LinkedHashMap<>();
+    @Nullable
+    private final SmileyVarsStatementPool pool;
 
+    // Type tags for the values in slots
+    private static final byte UNSET_TYPE = 0;
+    private static final byte NULL_TYPE = 1;
+    private static final byte BOOLEAN_TYPE = 2;
+    private static final byte BYTE_TYPE = 3;
+    private static final byte SHORT_TYPE = 4;
+    private static final byte INT_TYPE = 5;
+    private static final byte LONG_TYPE = 6;
+    private static final byte FLOAT_TYPE = 7;
+    private static final byte DOUBLE_TYPE = 8;
+    private static final byte BIG_DECIMAL_TYPE = 9;
+    private static final byte STRING_TYPE = 10;
+    private static final byte BYTES_TYPE = 11;
+    private static final byte DATE_TYPE = 12;
+    private static final byte TIME_TYPE = 13;
+    private static final byte TIMESTAMP_TYPE = 14;
+    private static final byte OBJECT_TYPE = 15;
     /**
-     * PreparedStatement objects are collected in this map so they can be reused. The goal of the reuse is to use the
-     * same PreparedStatement object for operations that are done with the same SmileyVars having values.
+     * The slot's object value is a {@code BiSqlConsumer} that sets the parameter.
      */
-    private final Map<BitSet, PreparedStatementTag> taggedPstmtMap = new HashMap<>();
+    private static final byte CUSTOM_TYPE = 16;
+
+    /**
+     * Returned by {@link #getLiteralValue(int)} for values that are not formatted as literals.
+     */
+    private static final Object NOT_LITERAL = new Object();
+
+    /**
+     * The type of the value in each slot, indexed by slot number.
+     */
+    private final byte[] slotTypes;
+
+    /**
+     * The values of slots whose type is primitive, indexed by slot number. {@code float} and {@code double} values are
+     * stored as their bits. For {@code NULL_TYPE} this is the SQL type.
+     */
+    private final long[] primitiveValues;
+
+    /**
+     * The values of slots whose type is not primitive, indexed by slot number.
+     */
+    private final Object[] objectValues;
+
+    /**
+     * The most slots a template can have for its signatures to be kept as a {@code long} bit mask.
+     */
+    private static final int MAX_NARROW_SLOTS = Long.SIZE;
+
+    /**
+     * If the template has no more than {@link #MAX_NARROW_SLOTS} slots, this is a bit mask that has the bit for each
+     * slot that has a value set. It is kept up to date as values are set and cleared.
+     */
+    private long narrowSignature = 0;
+
+    /**
+     * PreparedStatement objects are collected in these maps so they can be reused. The goal of the reuse is to use the
+     * same PreparedStatement object for operations that produce the same expansion of the template. If the template
+     * has no more than {@link #MAX_NARROW_SLOTS} slots, the statements are keyed by {@link #narrowSignature}.
+     * Otherwise they are keyed by a {@code BitSet}. Every signature that produces the same expansion maps to the same
+     * tag, the one for the expansion's canonical signature. The slots of the variables whose values are bound to each
+     * of the prepared statement's parameters are recorded in the tag, so that parameters can be bound without
+     * expanding the template again.
+     * <p>A tag stays in its map after its prepared statement is evicted or expires, so that how often it has been used
+     * is remembered if it is prepared again.</p>
+     */
+    private final LongKeyedMap<PreparedStatementTag> narrowTaggedPstmtMap = new LongKeyedMap<>();
+    private final Map<BitSet, PreparedStatementTag> wideTaggedPstmtMap = new HashMap<>();
+
+    /**
+     * For each inline variable, the literal for its value and the plan's id for the literal, indexed by slot number.
+     * The id is -1 if the value is bound as a parameter. They are computed when they are needed and are current if
+     * the slot's entry in {@link #inlineLiteralVersions} is the slot's version.
+     */
+    private final String[] inlineLiterals;
+    private final int[] inlineLiteralIds;
+    private final long[] inlineLiteralVersions;
+
+    /**
+     * The tags whose prepared statement is open.
+     */
+    private final List<PreparedStatementTag> openTags = new ArrayList<>();
+
+    /**
+     * If positive, the most underlying prepared statements that may be open at the same time.
+     */
+    private int maxOpenStatements = 0;
+
+    /**
+     * If positive, underlying prepared statements that have not been used for this many nanoseconds are closed.
+     */
+    private long statementIdleTimeoutNanos = 0;
+
+    /**
+     * The value of {@code System.nanoTime()} after which open prepared statements should next be checked for being
+     * idle.
+     */
+    private long nextIdleCheckNanos = 0;
+
+    private long statementEvictionCount = 0;
+    private long statementExpirationCount = 0;
+    private long statementReprepareCount = 0;
+
+    /**
+     * If positive, an expansion is executed with its values as literals in a plain {@code Statement} until the plan has
+     * seen it used this many times. After that it is prepared.
+     */
+    private int prepareThreshold = 0;
+
+    /**
+     * The statement that expansions that have not been prepared are executed with, or null if none have been.
+     */
+    @Nullable
+    private Statement literalStatement;
+
+    /**
+     * The value of {@link #changeCount} when the configuration values were last set in {@link #literalStatement}.
+     */
+    private long literalBoundChangeCount = -1;
+
+    /**
+     * True if the last execution used {@link #literalStatement}, so its results should be gotten from there.
+     */
+    private boolean lastExecutionLiteral = false;
+    private long literalExecutionCount = 0;
+
+    /**
+     * The value of {@link #changeCount} when the value in each slot was last set, indexed by slot number.
+     */
+    private final long[] slotVersions;
+
+    /**
+     * True for each slot whose value is a stream or reader. Since these are consumed when a statement executes, they
+     * are set in the prepared statement each time it is used, even if they have not changed.
+     */
+    private final boolean[] streamSlots;
+
+    // Indexes into configVersions
+    private static final int MAX_FIELD_SIZE_OPTION = 0;
+    private static final int MAX_ROWS_OPTION = 1;
+    private static final int QUERY_TIMEOUT_OPTION = 2;
+    private static final int CURSOR_NAME_OPTION = 3;
+    private static final int FETCH_DIRECTION_OPTION = 4;
+    private static final int FETCH_SIZE_OPTION = 5;
+    private static final int POOLABLE_OPTION = 6;
+    private static final int CONFIG_OPTION_COUNT = 7;
+
+    /**
+     * The value of {@link #changeCount} when each configuration value was last set.
+     */
+    private final long[] configVersions = new long[CONFIG_OPTION_COUNT];
+
+    /**
+     * The tagged prepared statements that have rows in the current batch, in the order that their first row was
+     * added.
+     */
+    private final List<PreparedStatementTag> batchTags = new ArrayList<>();
+
+    /**
+     * The number of rows that have been added to the current batch.
+     */
+    private int batchRowCount = 0;
+
+    /**
+     * The update counts of the rows in the current batch, indexed by row number. A row's update count is set when the
+     * batch of its prepared statement is executed.
+     */
+    private int[] batchUpdateCounts = new int[16];
+
+    /**
+     * If positive, the batch of a prepared statement is executed when it has this many rows.
+     */
+    private int batchFlushSize = 0;
+
+    /**
+     * The fetch size used for streaming results if no fetch size has been set.
+     */
+    private static final int DEFAULT_STREAM_FETCH_SIZE = 1000;
+
+    private int streamFetchSize = DEFAULT_STREAM_FETCH_SIZE;
+
+    /**
+     * Information about the connection's database, or null if it has not been needed yet.
+     */
+    private DatabaseInfo databaseInfo;
+
+    /**
+     * If true, this object is closed when a {@link SmileyVarsRowIterator} that it created is closed.
+     */
+    private boolean closeOnCompletion = false;
 
     private boolean closed = false;
     private long changeCount = 0;
@@ -77,10 +269,77 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException if there is a problem with the connection.
      */
     public SmileyVarsPreparedStatement(@NotNull Connection conn, @NotNull String sql) throws SQLException {
-        logger.trace("Constructing SmileyVars prepared statement for {}", sql);
+        this(conn, SmileyVarsStatementPlan.plan(conn, sql));
+    }
+
+    /**
+     * Construct a SmileyVars prepared statement that expands its template in the given way.
+     *
+     * @param conn          the connection to use for interacting with the database. This is used to determine the type
+     *                      of the database engine on the other end fo the connection.
+     * @param sql           the SQL of the template.
+     * @param expansionMode How the template is expanded. {@link ExpansionMode#NULL_TOLERANT} uses just one underlying
+     *                      prepared statement.
+     * @throws SQLException                if there is a problem with the connection.
+     * @throws UnsupportedFeatureException if the template cannot be expanded in the given way.
+     */
+    public SmileyVarsPreparedStatement(@NotNull Connection conn, @NotNull String sql, @NotNull ExpansionMode expansionMode)
+            throws SQLException {
+        this(conn, SmileyVarsStatementPlan.plan(conn, sql, expansionMode));
+    }
+
+    /**
+     * Construct a SmileyVars prepared statement from a plan. The plan may be shared by any number of {@code
+     * SmileyVarsPreparedStatement} objects, so this is much less work than creating one from SQL.
+     *
+     * @param conn the connection to use for interacting with the database. It should be a connection to the type of
+     *             database that the plan was created for.
+     * @param plan the plan.
+     */
+    public SmileyVarsPreparedStatement(@NotNull Connection conn, @NotNull SmileyVarsStatementPlan plan) {
+        this(conn, plan, null);
+    }
+
+    /**
+     * Construct a SmileyVars prepared statement that gets its underlying {@code PreparedStatement} objects from a
+     * statement pool, so that they can be reused by the other SmileyVars prepared statements that use the pool.
+     *
+     * @param pool the pool. Its connection is used for interacting with the database.
+     * @param sql  the SQL of the template.
+     * @throws SQLException if there is a problem with the connection.
+     */
+    public SmileyVarsPreparedStatement(@NotNull SmileyVarsStatementPool pool, @NotNull String sql) throws SQLException {
+        this(pool, SmileyVarsStatementPlan.plan(pool.getConnection(), sql));
+    }
+
+    /**
+     * Construct a SmileyVars prepared statement from a plan that gets its underlying {@code PreparedStatement} objects
+     * from a statement pool, so that they can be reused by the other SmileyVars prepared statements that use the pool.
+     *
+     * @param pool the pool. Its connection is used for interacting with the database. It should be a connection to the
+     *             type of database that the plan was created for.
+     * @param plan the plan.
+     */
+    public SmileyVarsPreparedStatement(@NotNull SmileyVarsStatementPool pool, @NotNull SmileyVarsStatementPlan plan) {
+        this(pool.getConnection(), plan, pool);
+    }
+
+    private SmileyVarsPreparedStatement(@NotNull Connection conn, @NotNull SmileyVarsStatementPlan plan,
+                                        @Nullable SmileyVarsStatementPool pool) {
+        logger.trace("Constructing SmileyVars prepared statement for {}", plan.getTemplateString());
         connection = conn;
-        template = SmileyVarsTemplate.template(conn, sql, ValueFormatterRegistry.preparedStatementInstance());
-        template.getVarNames().forEach(name -> valueMap.put(name, VacuousBiSqlConsumer.getInstance()));
+        this.plan = plan;
+        this.pool = pool;
+        int slotCount = plan.getSlotCount();
+        slotTypes = new byte[slotCount];
+        primitiveValues = new long[slotCount];
+        objectValues = new Object[slotCount];
+        slotVersions = new long[slotCount];
+        streamSlots = new boolean[slotCount];
+        inlineLiterals = new String[slotCount];
+        inlineLiteralIds = new int[slotCount];
+        inlineLiteralVersions = new long[slotCount];
+        Arrays.fill(inlineLiteralVersions, -1);
     }
 
     /**
@@ -95,6 +354,10 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                             the currently running {@code Statement}
      */
     public ResultSet executeQuery() throws SQLException {
+        String literalSql = getLiteralSql();
+        if (literalSql != null) {
+            return getLiteralStatement().executeQuery(literalSql);
+        }
         return getPreparedStatement().executeQuery();
     }
 
@@ -112,9 +375,226 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                             the currently running {@code Statement}
      */
     public int executeUpdate() throws SQLException {
+        String literalSql = getLiteralSql();
+        if (literalSql != null) {
+            return getLiteralStatement().executeUpdate(literalSql);
+        }
         return getPreparedStatement().executeUpdate();
     }
 
+    /**
+     * Execute this object's query and return an iterator that maps each row of the result to an object as it is read.
+     * The result set is read a block of rows at a time using the fetch size set by {@link #setFetchSize(int)} or, if
+     * none has been set, by {@link #setStreamFetchSize(int)}. For databases whose drivers only do this inside of a
+     * transaction, such as PostgreSQL, auto-commit is turned off until the iterator is closed.
+     * <p>The iterator closes the result set when its last row has been read or when it is closed. If {@link
+     * #closeOnCompletion()} has been called, this object is closed too. Executing this object again before the
+     * iterator is finished closes the iterator's result set.</p>
+     *
+     * @param rowMapper A function that creates an object from the current row of a result set.
+     * @param <T>       The type of object that rows are mapped to.
+     * @return the iterator.
+     * @throws SQLException if there is a problem executing the query or this object is closed.
+     */
+    @NotNull
+    public <T> SmileyVarsRowIterator<T> iterator(@NotNull SqlFunction<? super ResultSet, ? extends T> rowMapper) throws SQLException {
+        ensureNotClosed();
+        DatabaseInfo databaseInfo = getDatabaseInfo();
+        boolean restoreAutoCommit = databaseInfo.isStreamingTransactional() && connection.getAutoCommit();
+        if (restoreAutoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try {
+            String literalSql = getLiteralSql();
+            Statement statement = literalSql != null ? getLiteralStatement() : getPreparedStatement();
+            int previousFetchSize = statement.getFetchSize();
+            int rows = fetchSize.isPresent() && fetchSize.get() > 0 ? fetchSize.get() : streamFetchSize;
+            statement.setFetchSize(databaseInfo.getStreamingFetchSize(rows));
+            ResultSet resultSet = literalSql != null ? statement.executeQuery(literalSql)
+                                          : ((PreparedStatement) statement).executeQuery();
+            return new SmileyVarsRowIterator<>(resultSet, rowMapper, rs -> {
+                try {
+                    if (!statement.isClosed()) {
+                        statement.setFetchSize(previousFetchSize);
+                    }
+                    if (restoreAutoCommit) {
+                        connection.setAutoCommit(true);
+                    }
+                } finally {
+                    if (closeOnCompletion) {
+                        close();
+                    }
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            if (restoreAutoCommit) {
+                connection.setAutoCommit(true);
+            }
+            throw e;
+        }
+    }
+
+    @NotNull
+    private DatabaseInfo getDatabaseInfo() throws SQLException {
+        if (databaseInfo == null) {
+            databaseInfo = DatabaseInfo.forConnection(connection);
+        }
+        return databaseInfo;
+    }
+
+    /**
+     * Execute this object's query and return a sequential {@link Stream} of objects mapped from the rows of the
+     * result as they are read. The stream should be used in a try-with-resources statement so that its result set is
+     * closed even if not all of its rows are read. See {@link #iterator(SqlFunction)} for details.
+     *
+     * @param rowMapper A function that creates an object from the current row of a result set.
+     * @param <T>       The type of object that rows are mapped to.
+     * @return the stream.
+     * @throws SQLException if there is a problem executing the query or this object is closed.
+     */
+    @NotNull
+    public <T> Stream<T> stream(@NotNull SqlFunction<? super ResultSet, ? extends T> rowMapper) throws SQLException {
+        SmileyVarsRowIterator<T> iterator = iterator(rowMapper);
+        return iterator.stream();
+    }
+
+    /**
+     * Execute this object's query and return an iterator that creates an object of the given class from each row of
+     * the result as it is read. See {@link #rowMapper(Class)} for how rows are mapped to objects and {@link
+     * #iterator(SqlFunction)} for how the result is read.
+     *
+     * @param type The class of objects to create.
+     * @param <T>  The class of objects to create.
+     * @return the iterator.
+     * @throws SQLException        if there is a problem executing the query or this object is closed.
+     * @throws SmileyVarsException if SmileyVars does not know how to create objects of the class.
+     */
+    @NotNull
+    public <T> SmileyVarsRowIterator<T> iterator(@NotNull Class<T> type) throws SQLException {
+        return iterator(rowMapper(type));
+    }
+
+    /**
+     * Execute this object's query and return a sequential {@link Stream} of objects of the given class created from
+     * the rows of the result as they are read. See {@link #rowMapper(Class)} for how rows are mapped to objects and
+     * {@link #iterator(SqlFunction)} for how the result is read.
+     *
+     * @param type The class of objects to create.
+     * @param <T>  The class of objects to create.
+     * @return the stream.
+     * @throws SQLException        if there is a problem executing the query or this object is closed.
+     * @throws SmileyVarsException if SmileyVars does not know how to create objects of the class.
+     */
+    @NotNull
+    public <T> Stream<T> stream(@NotNull Class<T> type) throws SQLException {
+        return iterator(type).stream();
+    }
+
+    /**
+     * Get a function that creates an object of the given class from the current row of a result set of this object's
+     * query with the variables that currently have values. Columns are matched to the properties of the class by
+     * name, ignoring case and underscores. A property is a record component, a public setter or a non-final field.
+     * Classes such as {@code Integer} and {@code String} are read from the first column.
+     * <p>The columns are matched to properties the first time the function is used and then read by index with the
+     * getter for each property's type. The functions are kept with the plan for each combination of variables that
+     * has different SQL, so the matching is only done once for each of them.</p>
+     *
+     * @param type The class of objects to create.
+     * @param <T>  The class of objects to create.
+     * @return the row mapper.
+     * @throws SQLException        if this object is closed.
+     * @throws SmileyVarsException if SmileyVars does not know how to create objects of the class.
+     */
+    @NotNull
+    public <T> SqlFunction<ResultSet, T> rowMapper(@NotNull Class<T> type) throws SQLException {
+        ensureNotClosed();
+        return getCurrentTag(System.nanoTime()).getExpansion().getRowMapper(type);
+    }
+
+    /**
+     * Execute this object's query and pass its result to a consumer in batches of rows that are stored a column at a
+     * time in primitive arrays. This avoids creating objects for each row, so large results can be aggregated with
+     * little garbage. See {@link ColumnBatch} for how columns are stored and {@link #iterator(SqlFunction)} for how the
+     * result is read.
+     * <p>The same {@link ColumnBatch} object and arrays are reused for each batch, so the consumer must copy anything
+     * that it needs to keep after it returns. The last batch may have fewer rows than the batch size. If the result has
+     * no rows, the consumer is not called.</p>
+     *
+     * @param batchSize The most rows in a batch.
+     * @param consumer  Called with each batch.
+     * @return the number of rows in the result.
+     * @throws SQLException             if there is a problem executing the query or reading its result, the consumer
+     *                                  throws an {@code SQLException} or this object is closed.
+     * @throws IllegalArgumentException if {@code batchSize} is not greater than zero.
+     */
+    public long forEachBatch(int batchSize, @NotNull SqlConsumer<? super ColumnBatch> consumer) throws SQLException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than zero: " + batchSize);
+        }
+        try (SmileyVarsRowIterator<ResultSet> rows = iterator(rs -> rs)) {
+            ColumnBatch batch = null;
+            while (rows.hasNext()) {
+                ResultSet resultSet = rows.next();
+                if (batch == null) {
+                    batch = new ColumnBatch(resultSet.getMetaData(), batchSize);
+                }
+                batch.addRow(resultSet);
+                if (batch.isFull()) {
+                    consumer.accept(batch);
+                    batch.clear();
+                }
+            }
+            if (batch != null && batch.getRowCount() > 0) {
+                consumer.accept(batch);
+            }
+            return rows.getRowCount();
+        }
+    }
+
+    /**
+     * Set the number of rows to fetch at a time when results are streamed by {@link #iterator(SqlFunction)} or {@link
+     * #stream(SqlFunction)} and no fetch size has been set by {@link #setFetchSize(int)}. The default is 1000.
+     *
+     * @param streamFetchSize the number of rows. It must be greater than zero.
+     * @return this object
+     * @throws IllegalArgumentException if {@code streamFetchSize} is not greater than zero.
+     */
+    public SmileyVarsPreparedStatement setStreamFetchSize(int streamFetchSize) {
+        if (streamFetchSize <= 0) {
+            throw new IllegalArgumentException("streamFetchSize must be greater than zero: " + streamFetchSize);
+        }
+        this.streamFetchSize = streamFetchSize;
+        return this;
+    }
+
+    /**
+     * @return the number of rows to fetch at a time when results are streamed and no fetch size has been set.
+     */
+    public int getStreamFetchSize() {
+        return streamFetchSize;
+    }
+
+    /**
+     * Specifies that this object will be closed when a {@link SmileyVarsRowIterator} or stream that it created is
+     * closed.
+     *
+     * @return this object
+     * @throws SQLException if this object is closed.
+     */
+    public SmileyVarsPreparedStatement closeOnCompletion() throws SQLException {
+        ensureNotClosed();
+        closeOnCompletion = true;
+        return this;
+    }
+
+    /**
+     * @return true if this object will be closed when a {@link SmileyVarsRowIterator} or stream that it created is
+     * closed.
+     */
+    public boolean isCloseOnCompletion() {
+        return closeOnCompletion;
+    }
+
     /**
      * Sets the designated parameter to SQL <code>NULL</code>.
      *
@@ -127,7 +607,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setNull(String parameterName, int sqlType) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setNull(i, sqlType));
+        return setNull(checkedSlot(parameterName), sqlType);
+    }
+
+    /**
+     * Sets the parameter in the given slot to SQL <code>NULL</code>. This is like {@link #setNull(String, int)}, but
+     * does not need to look up the parameter by name.
+     *
+     * @param slot    The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param sqlType The SQL type code defined in <code>java.sql.Types</code>
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setNull(int slot, int sqlType) throws SQLException {
+        setPrimitiveValue(slot, NULL_TYPE, sqlType);
         return this;
     }
 
@@ -141,7 +635,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setBoolean(String parameterName, boolean value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setBoolean(i, value));
+        return setBoolean(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the parameter in the given slot to the given Java <code>boolean</code> value. This is like {@link
+     * #setBoolean(String, boolean)}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setBoolean(int slot, boolean value) throws SQLException {
+        setPrimitiveValue(slot, BOOLEAN_TYPE, value ? 1 : 0);
         return this;
     }
 
@@ -156,7 +664,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setByte(String parameterName, byte value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setByte(i, value));
+        return setByte(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the parameter in the given slot to the given Java <code>byte</code> value. This is like {@link
+     * #setByte(String, byte)}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setByte(int slot, byte value) throws SQLException {
+        setPrimitiveValue(slot, BYTE_TYPE, value);
         return this;
     }
 
@@ -171,7 +693,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setShort(String parameterName, short value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setShort(i, value));
+        return setShort(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the parameter in the given slot to the given Java <code>short</code> value. This is like {@link
+     * #setShort(String, short)}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setShort(int slot, short value) throws SQLException {
+        setPrimitiveValue(slot, SHORT_TYPE, value);
         return this;
     }
 
@@ -186,7 +722,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setInt(String parameterName, int value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setInt(i, value));
+        return setInt(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the parameter in the given slot to the given Java <code>int</code> value. This is like {@link
+     * #setInt(String, int)}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setInt(int slot, int value) throws SQLException {
+        setPrimitiveValue(slot, INT_TYPE, value);
         return this;
     }
 
@@ -201,7 +751,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setLong(String parameterName, long value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setLong(i, value));
+        return setLong(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the parameter in the given slot to the given Java <code>long</code> value. This is like {@link
+     * #setLong(String, long)}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setLong(int slot, long value) throws SQLException {
+        setPrimitiveValue(slot, LONG_TYPE, value);
         return this;
     }
 
@@ -216,7 +780,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setFloat(String parameterName, float value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setFloat(i, value));
+        return setFloat(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the parameter in the given slot to the given Java <code>float</code> value. This is like {@link
+     * #setFloat(String, float)}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setFloat(int slot, float value) throws SQLException {
+        setPrimitiveValue(slot, FLOAT_TYPE, Float.floatToRawIntBits(value));
         return this;
     }
 
@@ -231,7 +809,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setDouble(String parameterName, double value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setDouble(i, value));
+        return setDouble(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the parameter in the given slot to the given Java <code>double</code> value. This is like {@link
+     * #setDouble(String, double)}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setDouble(int slot, double value) throws SQLException {
+        setPrimitiveValue(slot, DOUBLE_TYPE, Double.doubleToRawLongBits(value));
         return this;
     }
 
@@ -246,7 +838,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setBigDecimal(String parameterName, BigDecimal value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setBigDecimal(i, value));
+        return setBigDecimal(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the parameter in the given slot to the given <code>java.math.BigDecimal</code> value. This is like {@link
+     * #setBigDecimal(String, BigDecimal)}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setBigDecimal(int slot, BigDecimal value) throws SQLException {
+        setObjectValue(slot, BIG_DECIMAL_TYPE, value);
         return this;
     }
 
@@ -262,7 +868,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setString(String parameterName, String value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setString(i, value));
+        return setString(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the parameter in the given slot to the given Java <code>String</code> value. This is like {@link
+     * #setString(String, String)}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setString(int slot, String value) throws SQLException {
+        setObjectValue(slot, STRING_TYPE, value);
         return this;
     }
 
@@ -278,7 +898,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setBytes(String parameterName, byte[] value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setBytes(i, value));
+        return setBytes(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the parameter in the given slot to the given Java array of bytes. This is like {@link #setBytes(String,
+     * byte[])}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setBytes(int slot, byte[] value) throws SQLException {
+        setObjectValue(slot, BYTES_TYPE, value);
         return this;
     }
 
@@ -294,7 +928,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setDate(String parameterName, Date value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setDate(i, value));
+        return setDate(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the parameter in the given slot to the given <code>java.sql.Date</code> value. This is like {@link
+     * #setDate(String, Date)}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setDate(int slot, Date value) throws SQLException {
+        setObjectValue(slot, DATE_TYPE, value);
         return this;
     }
 
@@ -309,7 +957,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setTime(String parameterName, Time value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setTime(i, value));
+        return setTime(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the parameter in the given slot to the given <code>java.sql.Time</code> value. This is like {@link
+     * #setTime(String, Time)}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setTime(int slot, Time value) throws SQLException {
+        setObjectValue(slot, TIME_TYPE, value);
         return this;
     }
 
@@ -324,7 +986,21 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setTimestamp(String parameterName, Timestamp value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setTimestamp(i, value));
+        return setTimestamp(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the parameter in the given slot to the given <code>java.sql.Timestamp</code> value. This is like {@link
+     * #setTimestamp(String, Timestamp)}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setTimestamp(int slot, Timestamp value) throws SQLException {
+        setObjectValue(slot, TIMESTAMP_TYPE, value);
         return this;
     }
 
@@ -345,7 +1021,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setAsciiStream(String parameterName, InputStream inputStream, int length) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setAsciiStream(i, inputStream, length));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setAsciiStream(i, inputStream, length));
         return this;
     }
 
@@ -366,7 +1042,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setBinaryStream(String parameterName, InputStream inputStream, int length) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setBinaryStream(i, inputStream, length));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setBinaryStream(i, inputStream, length));
         return this;
     }
 
@@ -406,6 +1082,12 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * the backend. For maximum portability, the <code>setNull</code> or the
      * <code>setObject(int parameterIndex, Object x, int sqlType)</code>
      * method should be used instead of <code>setObject(int parameterIndex, Object x)</code>.
+     * <p>
+     * If a {@link ParameterBinderProvider} service has been provided for the class of the value, it is used to set the
+     * parameter. Values of the classes that have a specific setter, such as {@code String} and {@code Integer}, are
+     * set with that setter. A null value is set with {@code setNull} using the type of the parameter from the
+     * underlying prepared statement's {@link ParameterMetaData}, which is read once for each underlying prepared
+     * statement.
      *
      * @param parameterName The name of the parameter.
      * @param value         the object containing the Object parameter value
@@ -414,35 +1096,454 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      object has been closed.
      */
     public SmileyVarsPreparedStatement setObject(String parameterName, Object value) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setObject(i, value));
+        return setObject(checkedSlot(parameterName), value);
+    }
+
+    /**
+     * Sets the value of the parameter in the given slot using the given object. This is like {@link
+     * #setObject(String, Object)}, but does not need to look up the parameter by name.
+     *
+     * @param slot  The slot number of the parameter, as returned by {@link #getParameterSlot(String)}.
+     * @param value the object containing the Object parameter value
+     * @return this object
+     * @throws SQLException If slot is not the slot number of a variable in the SmileyVars template or this object
+     *                      has been closed.
+     */
+    public SmileyVarsPreparedStatement setObject(int slot, Object value) throws SQLException {
+        ParameterBinderProvider binder = value == null ? null : ProviderIndex.getInstance().getBinderProvider(value.getClass());
+        if (binder != null) {
+            BiSqlConsumer<PreparedStatement, Integer> setter = (pstmt, i) -> binder.bind(pstmt, i, value);
+            setObjectValue(slot, CUSTOM_TYPE, setter);
+        } else {
+            setObjectValue(slot, OBJECT_TYPE, value);
+        }
         return this;
     }
 
     /**
-     * Executes the SQL statement in this <code>PreparedStatement</code> object, which may be any kind of SQL statement.
-     * Some prepared statements return multiple results; the <code>execute</code> method handles these complex
-     * statements as well as the simpler form of statements handled by the methods <code>executeQuery</code> and
-     * <code>executeUpdate</code>.
-     * <p>
-     * The <code>execute</code> method returns a <code>boolean</code> to indicate the form of the first result.  You
-     * must call either the method
-     * <code>getResultSet</code> or <code>getUpdateCount</code>
-     * to retrieve the result; you must call <code>getMoreResults</code> to move to any subsequent result(s).
+     * Executes the SQL statement in this <code>PreparedStatement</code> object, which may be any kind of SQL statement.
+     * Some prepared statements return multiple results; the <code>execute</code> method handles these complex
+     * statements as well as the simpler form of statements handled by the methods <code>executeQuery</code> and
+     * <code>executeUpdate</code>.
+     * <p>
+     * The <code>execute</code> method returns a <code>boolean</code> to indicate the form of the first result.  You
+     * must call either the method
+     * <code>getResultSet</code> or <code>getUpdateCount</code>
+     * to retrieve the result; you must call <code>getMoreResults</code> to move to any subsequent result(s).
+     *
+     * @return <code>true</code> if the first result is a <code>ResultSet</code>
+     * object; <code>false</code> if the first result is an update count or there is no result
+     * @throws SQLException        if a database access error occurs; this method is called on a closed
+     *                             <code>PreparedStatement</code> or an argument is supplied to this method
+     * @throws SQLTimeoutException when the driver has determined that the timeout value that was specified by the
+     *                             {@code setQueryTimeout} method has been exceeded and has at least attempted to cancel
+     *                             the currently running {@code Statement}
+     * @see Statement#execute
+     * @see Statement#getResultSet
+     * @see Statement#getUpdateCount
+     * @see Statement#getMoreResults
+     */
+    public boolean execute() throws SQLException {
+        String literalSql = getLiteralSql();
+        if (literalSql != null) {
+            return getLiteralStatement().execute(literalSql);
+        }
+        return getPreparedStatement().execute();
+    }
+
+    /**
+     * Adds the current parameter values to this object's batch of commands. Rows are added to the batch of the
+     * underlying {@code PreparedStatement} object for the variables that currently have values, so a batch may
+     * include rows for different expansions of the template.
+     *
+     * @return this object
+     * @throws SQLException if a database access error occurs or this object has been closed.
+     * @see #executeBatch()
+     * @see #setBatchFlushSize(int)
+     */
+    public SmileyVarsPreparedStatement addBatch() throws SQLException {
+        ensureNotClosed();
+        PreparedStatementTag ptag = getUpdatedPreparedStatementTag();
+        ptag.getPreparedStatement().addBatch();
+        if (!ptag.isInBatch()) {
+            ptag.setInBatch(true);
+            batchTags.add(ptag);
+        }
+        if (batchRowCount == batchUpdateCounts.length) {
+            batchUpdateCounts = Arrays.copyOf(batchUpdateCounts, batchRowCount * 2);
+        }
+        ptag.addBatchRow(batchRowCount++);
+        if (batchFlushSize > 0 && ptag.getBatchRowCount() >= batchFlushSize) {
+            executeBatch(ptag);
+        }
+        return this;
+    }
+
+    /**
+     * Submits the batch of commands to the database for execution. The batch of each underlying {@code
+     * PreparedStatement} object is executed in the order that its first row was added.
+     *
+     * @return an array of update counts containing one element for each row in the batch, in the order that the rows
+     * were added.
+     * @throws BatchUpdateException if one of the commands sent to the database fails to execute properly. Its update
+     *                              counts are in the order that the rows were added, with {@link
+     *                              Statement#EXECUTE_FAILED} for the rows that were not executed.
+     * @throws SQLException         if a database access error occurs or this object has been closed.
+     * @see #addBatch()
+     */
+    public int[] executeBatch() throws SQLException {
+        ensureNotClosed();
+        for (PreparedStatementTag ptag : batchTags) {
+            if (ptag.getBatchRowCount() > 0) {
+                executeBatch(ptag);
+            }
+        }
+        int[] updateCounts = Arrays.copyOf(batchUpdateCounts, batchRowCount);
+        resetBatch();
+        return updateCounts;
+    }
+
+    /**
+     * Empties this object's current batch of commands.
+     *
+     * @return this object
+     * @throws SQLException if a database access error occurs or this object has been closed.
+     */
+    public SmileyVarsPreparedStatement clearBatch() throws SQLException {
+        ensureNotClosed();
+        try {
+            for (PreparedStatementTag ptag : batchTags) {
+                if (ptag.getBatchRowCount() > 0) {
+                    ptag.getPreparedStatement().clearBatch();
+                }
+            }
+        } finally {
+            resetBatch();
+        }
+        return this;
+    }
+
+    /**
+     * Set the number of rows that the batch of an underlying {@code PreparedStatement} object may accumulate before
+     * it is executed. When a row added by {@link #addBatch()} brings a batch to this size, the batch is executed. The
+     * update counts of its rows are returned by the next call to {@link #executeBatch()}.
+     *
+     * @param batchFlushSize the number of rows. Zero, the default, means that batches are executed only by {@link
+     *                       #executeBatch()}.
+     * @return this object
+     */
+    public SmileyVarsPreparedStatement setBatchFlushSize(int batchFlushSize) {
+        if (batchFlushSize < 0) {
+            throw new IllegalArgumentException("Batch flush size must not be negative: " + batchFlushSize);
+        }
+        this.batchFlushSize = batchFlushSize;
+        return this;
+    }
+
+    /**
+     * Get the number of rows that the batch of an underlying {@code PreparedStatement} object may accumulate before
+     * it is executed.
+     *
+     * @return the batch flush size. Zero means that batches are executed only by {@link #executeBatch()}.
+     */
+    public int getBatchFlushSize() {
+        return batchFlushSize;
+    }
+
+    /**
+     * Set the most underlying {@code PreparedStatement} objects that this object may have open at the same time. Each
+     * combination of variables that have values uses a different prepared statement. When another one is needed and
+     * this many are open, the one that has been used least often recently is closed. Prepared statements that have
+     * rows in the current batch are not closed.
+     *
+     * @param maxOpenStatements the most prepared statements that may be open. Zero, the default, means there is no
+     *                          limit.
+     * @return this object
+     * @throws SQLException if there is a problem closing prepared statements that are over the new limit.
+     * @see #getStatementEvictionCount()
+     */
+    public SmileyVarsPreparedStatement setMaxOpenStatements(int maxOpenStatements) throws SQLException {
+        if (maxOpenStatements < 0) {
+            throw new IllegalArgumentException("Maximum open statements must not be negative: " + maxOpenStatements);
+        }
+        this.maxOpenStatements = maxOpenStatements;
+        while (maxOpenStatements > 0 && openTags.size() > maxOpenStatements && evictLeastFrequentlyUsed()) {
+            logger.trace("Closed a prepared statement to get under the new limit of {}", maxOpenStatements);
+        }
+        return this;
+    }
+
+    /**
+     * Get the most underlying {@code PreparedStatement} objects that this object may have open at the same time.
+     *
+     * @return the most prepared statements that may be open. Zero means there is no limit.
+     */
+    public int getMaxOpenStatements() {
+        return maxOpenStatements;
+    }
+
+    /**
+     * Set how long an underlying {@code PreparedStatement} object may go unused before it is closed. Idle prepared
+     * statements are found and closed when this object is used, so an object that is not being used does not close
+     * them.
+     *
+     * @param timeout the idle time. Zero, the default, means that prepared statements are not closed for being idle.
+     * @param unit    the unit of the timeout.
+     * @return this object
+     * @see #getStatementExpirationCount()
+     */
+    public SmileyVarsPreparedStatement setStatementIdleTimeout(long timeout, @NotNull TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Statement idle timeout must not be negative: " + timeout);
+        }
+        statementIdleTimeoutNanos = unit.toNanos(timeout);
+        nextIdleCheckNanos = System.nanoTime();
+        return this;
+    }
+
+    /**
+     * Get how long an underlying {@code PreparedStatement} object may go unused before it is closed.
+     *
+     * @param unit the unit to return the timeout in.
+     * @return the idle time. Zero means that prepared statements are not closed for being idle.
+     */
+    public long getStatementIdleTimeout(@NotNull TimeUnit unit) {
+        return unit.convert(statementIdleTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of underlying prepared statements that are open.
+     */
+    public int getOpenStatementCount() {
+        return openTags.size();
+    }
+
+    /**
+     * @return the number of underlying prepared statements that have been closed to stay within the limit set by
+     * {@link #setMaxOpenStatements(int)}.
+     */
+    public long getStatementEvictionCount() {
+        return statementEvictionCount;
+    }
+
+    /**
+     * @return the number of underlying prepared statements that have been closed for being idle longer than the
+     * timeout set by {@link #setStatementIdleTimeout(long, TimeUnit)}.
+     */
+    public long getStatementExpirationCount() {
+        return statementExpirationCount;
+    }
+
+    /**
+     * @return the number of times that an underlying prepared statement has been prepared again after it was evicted
+     * or expired. If this is a large fraction of the evictions, the limit on open statements may be too small.
+     */
+    public long getStatementReprepareCount() {
+        return statementReprepareCount;
+    }
+
+    /**
+     * Set how many times a combination of variables having values must be used before an underlying {@code
+     * PreparedStatement} is prepared for it. Until then, {@link #execute()}, {@link #executeQuery()} and {@link
+     * #executeUpdate()} expand the template with the values as SQL literals and run the result as a plain {@code
+     * Statement}. This keeps combinations that are rarely used from taking up prepared statements on the server.
+     * <p>Uses are counted by the plan, so all of the SmileyVars prepared statements that share a plan share the
+     * counts. Values that cannot be written as literals reliably, such as byte arrays, times, timestamps, nulls and
+     * values set with {@link #setObject(String, Object)}, are always bound to a prepared statement. So are strings,
+     * except for {@link DatabaseType#ORACLE} and {@link DatabaseType#SQL_SERVER}, because other databases such as MySQL
+     * may treat a backslash in a literal as an escape character. Batches always use
+     * prepared statements. This has no effect on {@link ExpansionMode#NULL_TOLERANT} templates, which have only one
+     * expansion.</p>
+     *
+     * @param prepareThreshold The number of uses after which a combination is prepared. Zero, the default, means that
+     *                         every combination is prepared the first time it is used.
+     * @return this object
+     * @see #getLiteralExecutionCount()
+     */
+    public SmileyVarsPreparedStatement setPrepareThreshold(int prepareThreshold) {
+        if (prepareThreshold < 0) {
+            throw new IllegalArgumentException("Prepare threshold must not be negative: " + prepareThreshold);
+        }
+        this.prepareThreshold = prepareThreshold;
+        return this;
+    }
+
+    /**
+     * @return the number of times a combination of variables having values must be used before an underlying {@code
+     * PreparedStatement} is prepared for it. Zero means that every combination is prepared the first time.
+     */
+    public int getPrepareThreshold() {
+        return prepareThreshold;
+    }
+
+    /**
+     * @return the number of times that this object executed its template with literal values because the combination
+     * of variables having values had not been used often enough to be prepared.
+     */
+    public long getLiteralExecutionCount() {
+        return literalExecutionCount;
+    }
+
+    /**
+     * Prepare the underlying {@code PreparedStatement} objects for combinations of variables having values before
+     * they are needed, so that the first use of each combination does not pay the cost of preparing it. Combinations
+     * with fewer variables are prepared first. Variables that are not inside brackets are in every combination.
+     * <p>Prewarming stops when the limit set by {@link #setMaxOpenStatements(int)} is reached, so that prewarmed
+     * statements do not evict each other.</p>
+     *
+     * @param limit The most combinations to prepare.
+     * @return the number of prepared statements that were created.
+     * @throws SQLException if there is a problem preparing a statement or this object has been closed.
+     */
+    public int prewarm(int limit) throws SQLException {
+        ensureNotClosed();
+        return prewarmSignatures(plan.signatures(limit));
+    }
+
+    /**
+     * Prepare the underlying {@code PreparedStatement} objects for the given combinations of variables having values
+     * before they are needed.
+     * <p>Prewarming stops when the limit set by {@link #setMaxOpenStatements(int)} is reached.</p>
+     *
+     * @param signatures Each element of this collection is the set of names of variables that have values.
+     * @return the number of prepared statements that were created.
+     * @throws SQLException             if a name is not the name of a variable in the template, there is a problem
+     *                                  preparing a statement or this object has been closed.
+     * @throws UnboundVariableException if a set does not contain the name of a variable that is not inside brackets.
+     */
+    public int prewarm(@NotNull Collection<? extends Collection<String>> signatures) throws SQLException {
+        ensureNotClosed();
+        List<BitSet> bitSets = new ArrayList<>();
+        for (Collection<String> names : signatures) {
+            BitSet signature = new BitSet(slotTypes.length);
+            for (String name : names) {
+                signature.set(getParameterSlot(name));
+            }
+            bitSets.add(signature);
+        }
+        return prewarmSignatures(bitSets);
+    }
+
+    /**
+     * Prepare the underlying {@code PreparedStatement} objects for the combinations of variables having values that
+     * have been used most often with this object's {@link SmileyVarsStatementPlan}. This is useful when the plan is
+     * shared by the statements created for each use of a pooled connection.
+     * <p>Prewarming stops when the limit set by {@link #setMaxOpenStatements(int)} is reached.</p>
+     *
+     * @param k The most combinations to prepare.
+     * @return the number of prepared statements that were created.
+     * @throws SQLException if there is a problem preparing a statement or this object has been closed.
+     * @see SmileyVarsStatementPlan#getMostUsedSignatures(int)
+     */
+    public int prewarmMostUsed(int k) throws SQLException {
+        ensureNotClosed();
+        return prewarmSignatures(plan.mostUsedSignatures(k));
+    }
+
+    private int prewarmSignatures(List<BitSet> signatures) throws SQLException {
+        int preparedCount = 0;
+        long now = System.nanoTime();
+        for (BitSet signature : signatures) {
+            if (maxOpenStatements > 0 && openTags.size() >= maxOpenStatements) {
+                break;
+            }
+            PreparedStatementTag ptag = getTag(signature);
+            if (ptag.getPreparedStatement() == null) {
+                prepare(ptag);
+                ptag.setLastUsedNanos(now);
+                preparedCount++;
+            }
+        }
+        logger.debug("Prewarmed {} prepared statements for {}", preparedCount, plan.getTemplateString());
+        return preparedCount;
+    }
+
+    /**
+     * Get the tag for the given signature, creating it if necessary. Signatures that produce the same SQL share the tag
+     * for their canonical signature, so they share a prepared statement.
+     */
+    private PreparedStatementTag getTag(BitSet signature) {
+        PreparedStatementTag ptag = lookupTag(signature);
+        if (ptag == null) {
+            SmileyVarsStatementPlan.Expansion expansion = plan.getExpansion(signature);
+            BitSet canonicalSignature = expansion.getSignature();
+            ptag = lookupTag(canonicalSignature);
+            if (ptag == null) {
+                ptag = new PreparedStatementTag(canonicalSignature, expansion);
+                putTag(canonicalSignature, ptag);
+            }
+            putTag(signature, ptag);
+        }
+        return ptag;
+    }
+
+    private PreparedStatementTag lookupTag(BitSet signature) {
+        if (slotTypes.length <= MAX_NARROW_SLOTS) {
+            return narrowTaggedPstmtMap.get(narrowKey(signature));
+        }
+        return wideTaggedPstmtMap.get(signature);
+    }
+
+    private void putTag(BitSet signature, PreparedStatementTag ptag) {
+        if (slotTypes.length <= MAX_NARROW_SLOTS) {
+            narrowTaggedPstmtMap.put(narrowKey(signature), ptag);
+        } else {
+            wideTaggedPstmtMap.put(signature, ptag);
+        }
+    }
+
+    private static long narrowKey(BitSet signature) {
+        long[] words = signature.toLongArray();
+        return words.length == 0 ? 0 : words[0];
+    }
+
+    private void executeBatch(PreparedStatementTag ptag) throws SQLException {
+        int[] updateCounts;
+        try {
+            updateCounts = ptag.getPreparedStatement().executeBatch();
+        } catch (BatchUpdateException e) {
+            recordBatchUpdateCounts(ptag, e.getUpdateCounts());
+            throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), failBatch(), e);
+        } catch (SQLException e) {
+            failBatch();
+            throw e;
+        }
+        recordBatchUpdateCounts(ptag, updateCounts);
+    }
+
+    private void recordBatchUpdateCounts(PreparedStatementTag ptag, int[] updateCounts) {
+        int[] rows = ptag.getBatchRows();
+        for (int i = 0; i < ptag.getBatchRowCount(); i++) {
+            batchUpdateCounts[rows[i]] = i < updateCounts.length ? updateCounts[i] : Statement.EXECUTE_FAILED;
+        }
+        ptag.clearBatchRows();
+    }
+
+    /**
+     * Abandon the current batch after a failure.
      *
-     * @return <code>true</code> if the first result is a <code>ResultSet</code>
-     * object; <code>false</code> if the first result is an update count or there is no result
-     * @throws SQLException        if a database access error occurs; this method is called on a closed
-     *                             <code>PreparedStatement</code> or an argument is supplied to this method
-     * @throws SQLTimeoutException when the driver has determined that the timeout value that was specified by the
-     *                             {@code setQueryTimeout} method has been exceeded and has at least attempted to cancel
-     *                             the currently running {@code Statement}
-     * @see Statement#execute
-     * @see Statement#getResultSet
-     * @see Statement#getUpdateCount
-     * @see Statement#getMoreResults
+     * @return the update counts of the rows in the batch, with {@link Statement#EXECUTE_FAILED} for the rows that
+     * were not executed.
      */
-    public boolean execute() throws SQLException {
-        return getPreparedStatement().execute();
+    private int[] failBatch() throws SQLException {
+        for (PreparedStatementTag ptag : batchTags) {
+            if (ptag.getBatchRowCount() > 0) {
+                recordBatchUpdateCounts(ptag, new int[0]);
+                ptag.getPreparedStatement().clearBatch();
+            }
+        }
+        int[] updateCounts = Arrays.copyOf(batchUpdateCounts, batchRowCount);
+        resetBatch();
+        return updateCounts;
+    }
+
+    private void resetBatch() {
+        for (PreparedStatementTag ptag : batchTags) {
+            ptag.clearBatchRows();
+            ptag.setInBatch(false);
+        }
+        batchTags.clear();
+        batchRowCount = 0;
     }
 
     /**
@@ -463,7 +1564,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setCharacterStream(@NotNull String parameterName, @NotNull Reader reader, int length) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setCharacterStream(i, reader, length));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setCharacterStream(i, reader, length));
         return this;
     }
 
@@ -704,7 +1805,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setNCharacterStream(String parameterName, Reader reader, long length) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setNCharacterStream(i, reader, length));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setNCharacterStream(i, reader, length));
         return this;
     }
 
@@ -738,7 +1839,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setClob(String parameterName, Reader reader, long length) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setClob(i, reader, length));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setClob(i, reader, length));
         return this;
     }
 
@@ -759,7 +1860,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setBlob(String parameterName, InputStream inputStream, long length) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setBlob(i, inputStream, length));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setBlob(i, inputStream, length));
         return this;
     }
 
@@ -779,7 +1880,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setNClob(String parameterName, Reader reader, long length) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setNClob(i, reader, length));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setNClob(i, reader, length));
         return this;
     }
 
@@ -855,7 +1956,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setAsciiStream(String parameterName, InputStream inputStream, long length) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setAsciiStream(i, inputStream, length));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setAsciiStream(i, inputStream, length));
         return this;
     }
 
@@ -876,7 +1977,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setBinaryStream(@NotNull String parameterName, @NotNull InputStream inputStream, long length) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setBinaryStream(i, inputStream, length));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setBinaryStream(i, inputStream, length));
         return this;
     }
 
@@ -897,7 +1998,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setCharacterStream(String parameterName, Reader reader, long length) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setCharacterStream(i, reader, length));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setCharacterStream(i, reader, length));
         return this;
     }
 
@@ -918,7 +2019,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setAsciiStream(String parameterName, InputStream inputStream) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setAsciiStream(i, inputStream));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setAsciiStream(i, inputStream));
         return this;
     }
 
@@ -940,7 +2041,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setBinaryStream(String parameterName, InputStream inputStream) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setBinaryStream(i, inputStream));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setBinaryStream(i, inputStream));
         return this;
     }
 
@@ -963,7 +2064,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setCharacterStream(@NotNull String parameterName, @NotNull Reader reader) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setCharacterStream(i, reader));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setCharacterStream(i, reader));
         return this;
     }
 
@@ -984,7 +2085,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setNCharacterStream(@NotNull String parameterName, @NotNull Reader reader) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setNCharacterStream(i, reader));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setNCharacterStream(i, reader));
         return this;
     }
 
@@ -1005,7 +2106,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setClob(@NotNull String parameterName, @NotNull Reader reader) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setClob(i, reader));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setClob(i, reader));
         return this;
     }
 
@@ -1026,7 +2127,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setBlob(@NotNull String parameterName, @NotNull InputStream inputStream) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setBlob(i, inputStream));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setBlob(i, inputStream));
         return this;
     }
 
@@ -1046,7 +2147,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
      */
     public SmileyVarsPreparedStatement setNClob(String parameterName, Reader reader) throws SQLException {
-        changeWithCheckedName(parameterName, (pstmt, i) -> pstmt.setNClob(i, reader));
+        changeStreamWithCheckedName(parameterName, (pstmt, i) -> pstmt.setNClob(i, reader));
         return this;
     }
 
@@ -1060,15 +2161,75 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      */
     @Override
     public void close() throws SQLException {
-        Iterator<Map.Entry<BitSet, PreparedStatementTag>> iterator = taggedPstmtMap.entrySet().iterator();
-        while (iterator.hasNext()) {
-            iterator.next().getValue().getPreparedStatement().close();
-            iterator.remove();
-        }
+        closePreparedStatements();
+        resetBatch();
+        closeLiteralStatement();
         clearParameters();
         closed = true;
     }
 
+    /**
+     * Set the values of the variables from the properties of an object that have the same names. A property is a
+     * record component, a public getter such as {@code getAisle()} or a field. A property whose value is null clears
+     * the value of its variable, so that bracketed segments for properties that are not set are left out. Variables
+     * that the object has no property for are not changed.
+     * <p>The properties of each class are found the first time an object of the class is bound and the accessors are
+     * kept with the plan, so binding an object costs about the same as calling the setters for its values.</p>
+     *
+     * @param bean The object.
+     * @return this object
+     * @throws SQLException        if this object has been closed.
+     * @throws SmileyVarsException if a getter throws an exception.
+     */
+    public SmileyVarsPreparedStatement bind(@NotNull Object bean) throws SQLException {
+        ensureNotClosed();
+        List<Function<Object, Object>> accessors = plan.getBeanAccessors(bean.getClass());
+        for (int slot = 0; slot < accessors.size(); slot++) {
+            Function<Object, Object> accessor = accessors.get(slot);
+            if (accessor != null) {
+                setValue(slot, accessor.apply(bean));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Set the value in a slot with the setter for the type of the value.
+     */
+    private void setValue(int slot, @Nullable Object value) throws SQLException {
+        if (value == null) {
+            clearSlot(slot);
+        } else if (value instanceof String) {
+            setString(slot, (String) value);
+        } else if (value instanceof Integer) {
+            setInt(slot, (Integer) value);
+        } else if (value instanceof Long) {
+            setLong(slot, (Long) value);
+        } else if (value instanceof Boolean) {
+            setBoolean(slot, (Boolean) value);
+        } else if (value instanceof BigDecimal) {
+            setBigDecimal(slot, (BigDecimal) value);
+        } else if (value instanceof Double) {
+            setDouble(slot, (Double) value);
+        } else if (value instanceof Float) {
+            setFloat(slot, (Float) value);
+        } else if (value instanceof Short) {
+            setShort(slot, (Short) value);
+        } else if (value instanceof Byte) {
+            setByte(slot, (Byte) value);
+        } else if (value instanceof Date) {
+            setDate(slot, (Date) value);
+        } else if (value instanceof Timestamp) {
+            setTimestamp(slot, (Timestamp) value);
+        } else if (value instanceof Time) {
+            setTime(slot, (Time) value);
+        } else if (value instanceof byte[]) {
+            setBytes(slot, (byte[]) value);
+        } else {
+            setObject(slot, value);
+        }
+    }
+
     /**
      * Clear the value for the named SmileyVar.
      *
@@ -1077,7 +2238,19 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      */
     @SuppressWarnings("UnusedReturnValue")
     public boolean clearParameter(String name) {
-        return null != valueMap.replace(name, VacuousBiSqlConsumer.getInstance());
+        Integer slot = plan.getSlot(name);
+        if (slot == null) {
+            return false;
+        }
+        clearSlot(slot);
+        return true;
+    }
+
+    private void clearSlot(int slot) {
+        slotTypes[slot] = UNSET_TYPE;
+        objectValues[slot] = null;
+        narrowSignature &= ~slotBit(slot);
+        slotVersions[slot] = ++changeCount;
     }
 
     /**
@@ -1090,8 +2263,10 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      */
     @SuppressWarnings("UnusedReturnValue")
     public SmileyVarsPreparedStatement clearParameters() {
-        valueMap.entrySet().forEach(entry -> entry.setValue(VacuousBiSqlConsumer.getInstance()));
-        changeCount++;
+        Arrays.fill(slotTypes, UNSET_TYPE);
+        Arrays.fill(objectValues, null);
+        narrowSignature = 0;
+        Arrays.fill(slotVersions, ++changeCount);
         return this;
     }
 
@@ -1109,14 +2284,33 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      */
     public SmileyVarsPreparedStatement deepClearParameters() throws SQLException {
         clearParameters();
-        Iterator<PreparedStatementTag> iterator = taggedPstmtMap.values().iterator();
-        while (iterator.hasNext()) {
-            iterator.next().getPreparedStatement().close();
-            iterator.remove();
-        }
+        resetBatch();
+        closePreparedStatements();
+        closeLiteralStatement();
         return this;
     }
 
+    private void closeLiteralStatement() throws SQLException {
+        Statement statement = literalStatement;
+        literalStatement = null;
+        lastExecutionLiteral = false;
+        if (statement != null) {
+            statement.close();
+        }
+    }
+
+    private void closePreparedStatements() throws SQLException {
+        narrowTaggedPstmtMap.clear();
+        wideTaggedPstmtMap.clear();
+        try {
+            for (PreparedStatementTag ptag : openTags) {
+                closePreparedStatement(ptag);
+            }
+        } finally {
+            openTags.clear();
+        }
+    }
+
     /**
      * Retrieves the maximum number of bytes that can be returned for character and binary column values in a
      * <code>ResultSet</code> object produced by this <code>Statement</code> object. This limit applies only to
@@ -1151,7 +2345,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      */
     public SmileyVarsPreparedStatement setMaxFieldSize(int max) {
         maxFieldSize = Optional.of(max);
-        changeCount++;
+        configVersions[MAX_FIELD_SIZE_OPTION] = ++changeCount;
         return this;
     }
 
@@ -1183,7 +2377,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
     public SmileyVarsPreparedStatement setMaxRows(int max) {
         maxRows = Optional.of(max);
         largeMaxRows = Optional.empty();
-        changeCount++;
+        configVersions[MAX_ROWS_OPTION] = ++changeCount;
         return this;
     }
 
@@ -1220,7 +2414,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      */
     public SmileyVarsPreparedStatement setQueryTimeout(int seconds) {
         queryTimeout = Optional.of(seconds);
-        changeCount++;
+        configVersions[QUERY_TIMEOUT_OPTION] = ++changeCount;
         return this;
     }
 
@@ -1243,7 +2437,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      */
 
     public SQLWarning getWarnings() throws SQLException {
-        return getPreparedStatement().getWarnings();
+        return getExecutedStatement().getWarnings();
     }
 
     /**
@@ -1256,7 +2450,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      *                      <code>Statement</code>
      */
     public SmileyVarsPreparedStatement clearWarnings() throws SQLException {
-        getPreparedStatement().clearWarnings();
+        getExecutedStatement().clearWarnings();
         return this;
     }
 
@@ -1278,7 +2472,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      */
     public SmileyVarsPreparedStatement setCursorName(String name) {
         cursorName = Optional.of(name);
-        changeCount++;
+        configVersions[CURSOR_NAME_OPTION] = ++changeCount;
         return this;
     }
 
@@ -1293,7 +2487,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @see #execute
      */
     public ResultSet getResultSet() throws SQLException {
-        return getPreparedStatement().getResultSet();
+        return getExecutedStatement().getResultSet();
     }
 
     /**
@@ -1307,7 +2501,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @see #execute
      */
     public int getUpdateCount() throws SQLException {
-        return getPreparedStatement().getUpdateCount();
+        return getExecutedStatement().getUpdateCount();
     }
 
     /**
@@ -1327,7 +2521,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @see #execute
      */
     public boolean getMoreResults() throws SQLException {
-        return getPreparedStatement().getMoreResults();
+        return getExecutedStatement().getMoreResults();
     }
 
     /**
@@ -1359,7 +2553,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      */
     public SmileyVarsPreparedStatement setFetchDirection(int direction) {
         fetchDirection = Optional.of(direction);
-        changeCount++;
+        configVersions[FETCH_DIRECTION_OPTION] = ++changeCount;
         return this;
     }
 
@@ -1396,7 +2590,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
             throw new SQLException("fetchSize as specified as " + rows + ". It may not be negative");
         }
         fetchSize = Optional.of(rows);
-        changeCount++;
+        configVersions[FETCH_SIZE_OPTION] = ++changeCount;
         return this;
     }
 
@@ -1469,7 +2663,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @see #execute
      */
     public boolean getMoreResults(int current) throws SQLException {
-        return getPreparedStatement().getMoreResults(current);
+        return getExecutedStatement().getMoreResults(current);
     }
 
     /**
@@ -1488,7 +2682,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @since 1.4
      */
     public ResultSet getGeneratedKeys() throws SQLException {
-        return getPreparedStatement().getGeneratedKeys();
+        return getExecutedStatement().getGeneratedKeys();
     }
 
     /**
@@ -1541,7 +2735,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      */
     public SmileyVarsPreparedStatement setPoolable(boolean poolable) {
         this.poolable = Optional.of(poolable);
-        changeCount++;
+        configVersions[POOLABLE_OPTION] = ++changeCount;
         return this;
     }
 
@@ -1559,7 +2753,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @see #execute
      */
     long getLargeUpdateCount() throws SQLException {
-        return getPreparedStatement().getLargeUpdateCount();
+        return getExecutedStatement().getLargeUpdateCount();
     }
 
     /**
@@ -1596,30 +2790,90 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
     public SmileyVarsPreparedStatement setLargeMaxRows(long max) {
         largeMaxRows = Optional.of(max);
         maxRows = Optional.empty();
-        changeCount++;
+        configVersions[MAX_ROWS_OPTION] = ++changeCount;
         return this;
     }
 
+    /**
+     * Return the bit for the given slot in {@link #narrowSignature}. If the template has more than {@link
+     * #MAX_NARROW_SLOTS} slots, the narrow signature is not used and this returns 0.
+     */
+    private long slotBit(int slot) {
+        return slotTypes.length <= MAX_NARROW_SLOTS ? 1L << slot : 0;
+    }
+
     private BitSet computeParametersSignature() {
-        BitSet bitSet = new BitSet(valueMap.size());
-        int i = 0;
-        for (Map.Entry<String, BiSqlConsumer<PreparedStatement, Integer>> entry : valueMap.entrySet()) {
-            if (!entry.getValue().isVacuous()) {
-                bitSet.set(i);
+        BitSet bitSet = new BitSet(slotTypes.length);
+        for (int slot = 0; slot < slotTypes.length; slot++) {
+            if (slotTypes[slot] != UNSET_TYPE) {
+                bitSet.set(slot);
             }
-            i += 1;
         }
         return bitSet;
     }
 
     private void changeWithCheckedName(String parameterName, BiSqlConsumer<PreparedStatement, Integer> setter) throws SQLException {
-        ensureNotClosed();
-        if (valueMap.containsKey(parameterName)) {
-            valueMap.put(parameterName, setter);
-            changeCount++;
-        } else {
+        change(parameterName, setter, false);
+    }
+
+    private void changeStreamWithCheckedName(String parameterName, BiSqlConsumer<PreparedStatement, Integer> setter) throws SQLException {
+        change(parameterName, setter, true);
+    }
+
+    private void change(String parameterName, BiSqlConsumer<PreparedStatement, Integer> setter, boolean isStream) throws SQLException {
+        int slot = checkedSlot(parameterName);
+        slotTypes[slot] = CUSTOM_TYPE;
+        objectValues[slot] = setter;
+        changed(slot, isStream);
+    }
+
+    private void setPrimitiveValue(int slot, byte type, long value) throws SQLException {
+        checkSlot(slot);
+        slotTypes[slot] = type;
+        primitiveValues[slot] = value;
+        objectValues[slot] = null;
+        changed(slot, false);
+    }
+
+    private void setObjectValue(int slot, byte type, Object value) throws SQLException {
+        checkSlot(slot);
+        slotTypes[slot] = type;
+        objectValues[slot] = value;
+        changed(slot, false);
+    }
+
+    private void changed(int slot, boolean isStream) {
+        streamSlots[slot] = isStream;
+        narrowSignature |= slotBit(slot);
+        slotVersions[slot] = ++changeCount;
+    }
+
+    /**
+     * Get the slot number of the named parameter. Parameters can be set by slot number to avoid looking up the name
+     * each time they are set.
+     *
+     * @param parameterName The name of the parameter.
+     * @return the slot number.
+     * @throws SQLException If parameterName does not correspond to a variable in the SmilelyVars template.
+     */
+    public int getParameterSlot(String parameterName) throws SQLException {
+        Integer slot = plan.getSlot(parameterName);
+        if (slot == null) {
             throwForUnknownParameter(parameterName);
         }
+        return slot;
+    }
+
+    private int checkedSlot(String parameterName) throws SQLException {
+        ensureNotClosed();
+        return getParameterSlot(parameterName);
+    }
+
+    private void checkSlot(int slot) throws SQLException {
+        ensureNotClosed();
+        if (slot < 0 || slot >= slotTypes.length) {
+            throw new SQLException(slot + " is not the slot number of a variable in " + plan.getTemplateString());
+        }
     }
 
     private void ensureNotClosed() throws SQLException {
@@ -1629,7 +2883,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
     }
 
     private void throwForUnknownParameter(String parameterName) throws SQLException {
-        throw new SQLException("\"" + parameterName + "\" is not the name of a variable in " + template.getTemplateString());
+        throw new SQLException("\"" + parameterName + "\" is not the name of a variable in " + plan.getTemplateString());
     }
 
     /**
@@ -1648,43 +2902,424 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @throws SQLException if there is a problem creating a {@link PreparedStatement} object.
      */
     public PreparedStatement getPreparedStatement() throws SQLException {
-        BitSet signature = computeParametersSignature();
-        PreparedStatementTag ptag = taggedPstmtMap.get(signature);
-        if (ptag == null) {
-            ptag = new PreparedStatementTag(signature, connection.prepareStatement(template.apply(filterVacuousEntries(valueMap))), changeCount);
-            taggedPstmtMap.put(signature, ptag);
-        } else if (ptag.getChangeCount() != changeCount) {
-            ptag.setChangeCount(changeCount);
+        return getUpdatedPreparedStatementTag().getPreparedStatement();
+    }
+
+    /**
+     * Get the tagged prepared statement for the variables that currently have values, creating it if necessary, and
+     * update it with the current parameter and configuration values.
+     */
+    private PreparedStatementTag getUpdatedPreparedStatementTag() throws SQLException {
+        lastExecutionLiteral = false;
+        long now = System.nanoTime();
+        PreparedStatementTag ptag = getCurrentTag(now);
+        if (ptag.getPreparedStatement() == null) {
+            prepare(ptag);
         }
+        ptag.used(now);
         updatePreparedStatement(ptag);
-        return ptag.getPreparedStatement();
+        return ptag;
+    }
+
+    /**
+     * Get the tag for the variables that currently have values, creating it if necessary, after closing prepared
+     * statements that have been idle too long.
+     */
+    private PreparedStatementTag getCurrentTag(long now) throws SQLException {
+        if (statementIdleTimeoutNanos > 0 && now - nextIdleCheckNanos >= 0) {
+            closeIdlePreparedStatements(now);
+        }
+        PreparedStatementTag ptag;
+        if (slotTypes.length <= MAX_NARROW_SLOTS) {
+            ptag = narrowTaggedPstmtMap.get(narrowSignature);
+            if (ptag == null) {
+                ptag = getTag(BitSet.valueOf(new long[]{narrowSignature}));
+            }
+        } else {
+            ptag = getTag(computeParametersSignature());
+        }
+        return plan.getInlineSlots().isEmpty() ? ptag : getInlineTag(ptag);
+    }
+
+    /**
+     * If the values of any inline variables in a tag's expansion are to be put into the SQL as literals, get the tag
+     * for the expansion with those literals, creating it if necessary. The tags for the expansions with literals are
+     * kept with the given tag, keyed by the plan's ids for the literals, so finding one does not create objects.
+     *
+     * @param ptag The tag for the variables that currently have values.
+     * @return the tag for the expansion with literals or the given tag if there are no literals.
+     */
+    private PreparedStatementTag getInlineTag(PreparedStatementTag ptag) {
+        BitSet signature = ptag.getSignature();
+        BitSet inlineSlots = plan.getInlineSlots();
+        long key = 0;
+        for (int slot = inlineSlots.nextSetBit(0); slot >= 0; slot = inlineSlots.nextSetBit(slot + 1)) {
+            if (signature.get(slot)) {
+                int id = getInlineLiteralId(slot);
+                if (plan.isInlineLiteralIdAllowed(id)) {
+                    key |= plan.inlineKeyBits(slot, id);
+                }
+            }
+        }
+        if (key == 0) {
+            return ptag;
+        }
+        PreparedStatementTag inlineTag = ptag.getInlineTag(key);
+        if (inlineTag == null) {
+            Map<Integer, String> literals = new HashMap<>();
+            for (int slot = inlineSlots.nextSetBit(0); slot >= 0; slot = inlineSlots.nextSetBit(slot + 1)) {
+                if (signature.get(slot) && plan.isInlineLiteralIdAllowed(inlineLiteralIds[slot])) {
+                    literals.put(slot, inlineLiterals[slot]);
+                }
+            }
+            inlineTag = new PreparedStatementTag(signature, plan.getInlineExpansion(signature, key, literals));
+            ptag.putInlineTag(key, inlineTag);
+        }
+        return inlineTag;
+    }
+
+    /**
+     * Get the plan's id for the literal to put into the SQL for the value of an inline variable.
+     *
+     * @return the id or -1 if the value is to be bound as a parameter.
+     */
+    private int getInlineLiteralId(int slot) {
+        if (inlineLiteralVersions[slot] != slotVersions[slot]) {
+            String literal = formatInlineLiteral(slot);
+            inlineLiterals[slot] = literal;
+            inlineLiteralIds[slot] = literal == null ? -1 : plan.getInlineLiteralId(slot, literal);
+            inlineLiteralVersions[slot] = slotVersions[slot];
+        }
+        return inlineLiteralIds[slot];
+    }
+
+    @Nullable
+    private String formatInlineLiteral(int slot) {
+        Object value = getLiteralValue(slot);
+        if (value == NOT_LITERAL) {
+            return null;
+        }
+        try {
+            return plan.getDatabaseType().getValueFormatterRegistry().format(value);
+        } catch (SmileyVarsException e) {
+            logger.debug("Binding the value of an inline variable that cannot be formatted as a literal", e);
+            return null;
+        }
+    }
+
+    /**
+     * If the expansion for the variables that currently have values has not been used often enough to be prepared,
+     * get the expansion with the values as literals and count it as a use.
+     *
+     * @return the SQL with literal values or null if a prepared statement should be used.
+     */
+    @Nullable
+    private String getLiteralSql() throws SQLException {
+        lastExecutionLiteral = false;
+        if (prepareThreshold <= 0 || plan.getExpansionMode() != ExpansionMode.VARIANTS) {
+            return null;
+        }
+        long now = System.nanoTime();
+        PreparedStatementTag ptag = getCurrentTag(now);
+        if (ptag.getPreparedStatement() != null || ptag.getExpansion().getUseCount() >= prepareThreshold) {
+            return null;
+        }
+        Map<String, Object> values = getLiteralValues();
+        if (values == null) {
+            return null;
+        }
+        String sql;
+        try {
+            sql = plan.getLiteralTemplate().apply(values);
+        } catch (SmileyVarsException e) {
+            logger.debug("Using a prepared statement because the values cannot be formatted as literals", e);
+            return null;
+        }
+        ptag.used(now);
+        literalExecutionCount++;
+        lastExecutionLiteral = true;
+        return sql;
+    }
+
+    /**
+     * Get the values of the variables that have values, keyed by name.
+     *
+     * @return the values or null if a value cannot be written reliably as a literal.
+     */
+    @Nullable
+    private Map<String, Object> getLiteralValues() {
+        Map<String, Object> values = new HashMap<>();
+        for (String name : plan.getVarNames()) {
+            int slot = plan.getSlot(name);
+            if (slotTypes[slot] != UNSET_TYPE) {
+                Object value = getLiteralValue(slot);
+                if (value == NOT_LITERAL) {
+                    return null;
+                }
+                values.put(name, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Get the value in a slot as an object that can be formatted reliably as a literal. Strings are only written as
+     * literals for types of database whose string literals cannot be escaped with a backslash, since the caller
+     * expects them to be bound as parameters and a literal that can be ended early would allow SQL injection.
+     *
+     * @return the value or {@link #NOT_LITERAL} if it is not a type of value that can be.
+     */
+    private Object getLiteralValue(int slot) {
+        long primitiveValue = primitiveValues[slot];
+        switch (slotTypes[slot]) {
+            case BOOLEAN_TYPE:
+                return primitiveValue != 0;
+            case BYTE_TYPE:
+            case SHORT_TYPE:
+            case INT_TYPE:
+            case LONG_TYPE:
+                return primitiveValue;
+            case FLOAT_TYPE:
+                return Float.intBitsToFloat((int) primitiveValue);
+            case DOUBLE_TYPE:
+                return Double.longBitsToDouble(primitiveValue);
+            case STRING_TYPE:
+                return plan.getDatabaseType().hasSafeStringLiterals() ? objectValues[slot] : NOT_LITERAL;
+            case BIG_DECIMAL_TYPE:
+            case DATE_TYPE:
+                return objectValues[slot];
+            default:
+                return NOT_LITERAL;
+        }
+    }
+
+    /**
+     * Get the statement that expansions with literal values are executed with, creating it if necessary, and update
+     * its configuration values.
+     */
+    private Statement getLiteralStatement() throws SQLException {
+        if (literalStatement == null) {
+            literalStatement = connection.createStatement();
+            literalBoundChangeCount = -1;
+        }
+        updateStatementConfig(literalStatement, literalBoundChangeCount);
+        literalBoundChangeCount = changeCount;
+        return literalStatement;
+    }
+
+    /**
+     * Get the statement that was last executed, so that its results can be gotten.
+     */
+    private Statement getExecutedStatement() throws SQLException {
+        return lastExecutionLiteral && literalStatement != null ? literalStatement : getPreparedStatement();
+    }
+
+    /**
+     * Create the prepared statement for a tag, first closing another prepared statement if the limit on open
+     * statements has been reached.
+     */
+    private void prepare(PreparedStatementTag ptag) throws SQLException {
+        while (maxOpenStatements > 0 && openTags.size() >= maxOpenStatements && evictLeastFrequentlyUsed()) {
+            logger.trace("Closed a prepared statement to make room for {}", ptag.getSql());
+        }
+        if (ptag.isPrepared()) {
+            statementReprepareCount++;
+        }
+        if (pool == null) {
+            ptag.setPreparedStatement(connection.prepareStatement(ptag.getSql()), null);
+        } else {
+            SmileyVarsStatementPool.PooledStatement pooledStatement = pool.acquire(ptag.getSql());
+            ptag.setPreparedStatement(pooledStatement.getPreparedStatement(), pooledStatement);
+        }
+        openTags.add(ptag);
+    }
+
+    /**
+     * Close a tag's prepared statement or, if it came from the statement pool, give it back to the pool.
+     */
+    private void closePreparedStatement(PreparedStatementTag ptag) throws SQLException {
+        SmileyVarsStatementPool.PooledStatement pooledStatement = ptag.getPooledStatement();
+        if (pooledStatement != null && pool != null) {
+            if (ptag.isInBatch()) {
+                // Rows that were never executed must not be left for the next user of the pooled statement.
+                pooledStatement.getPreparedStatement().clearBatch();
+            }
+            ptag.clearPreparedStatement();
+            pool.release(pooledStatement, !cursorName.isPresent());
+        } else {
+            ptag.closePreparedStatement();
+        }
+    }
+
+    /**
+     * Close the open prepared statement that has been used least often. Use counts are halved each time a statement is
+     * evicted, so that statements that were used heavily long ago do not stay open forever. Ties go to the statement
+     * that was used least recently.
+     *
+     * @return true if a prepared statement was closed or false if all of the open prepared statements have rows in
+     * the current batch.
+     */
+    private boolean evictLeastFrequentlyUsed() throws SQLException {
+        PreparedStatementTag victim = null;
+        for (PreparedStatementTag ptag : openTags) {
+            if (!ptag.isInBatch() && (victim == null || ptag.getUseCount() < victim.getUseCount()
+                                              || (ptag.getUseCount() == victim.getUseCount()
+                                                          && ptag.getLastUsedNanos() - victim.getLastUsedNanos() < 0))) {
+                victim = ptag;
+            }
+        }
+        if (victim == null) {
+            return false;
+        }
+        for (PreparedStatementTag ptag : openTags) {
+            ptag.ageUseCount();
+        }
+        openTags.remove(victim);
+        statementEvictionCount++;
+        closePreparedStatement(victim);
+        return true;
     }
 
-    private Map<String, BiSqlConsumer<PreparedStatement, Integer>> filterVacuousEntries(Map<String, BiSqlConsumer<PreparedStatement, Integer>> map) {
-        Map<String, BiSqlConsumer<PreparedStatement, Integer>> filteredMap = new HashMap<>();
-        map.forEach((key, value) -> {
-            if (!value.isVacuous()) filteredMap.put(key, value);
-        });
-        return filteredMap;
+    private void closeIdlePreparedStatements(long now) throws SQLException {
+        nextIdleCheckNanos = now + statementIdleTimeoutNanos / 2;
+        Iterator<PreparedStatementTag> iterator = openTags.iterator();
+        while (iterator.hasNext()) {
+            PreparedStatementTag ptag = iterator.next();
+            if (!ptag.isInBatch() && now - ptag.getLastUsedNanos() >= statementIdleTimeoutNanos) {
+                iterator.remove();
+                statementExpirationCount++;
+                closePreparedStatement(ptag);
+            }
+        }
     }
 
+    /**
+     * Set the parameter and configuration values that have changed since the tagged prepared statement was last
+     * updated.
+     */
     private void updatePreparedStatement(PreparedStatementTag ptag) throws SQLException {
         PreparedStatement preparedStatement = ptag.getPreparedStatement();
-        updatePreparedStatementConfig(preparedStatement);
-        BitSet signature = ptag.getSignature();
-        updatePreparedStatementParams(preparedStatement, signature);
+        long boundChangeCount = ptag.getBoundChangeCount();
+        updateStatementConfig(preparedStatement, boundChangeCount);
+        updatePreparedStatementParams(preparedStatement, ptag, boundChangeCount);
+        ptag.setBoundChangeCount(changeCount);
+    }
+
+    private void updatePreparedStatementParams(PreparedStatement preparedStatement, PreparedStatementTag ptag,
+                                               long boundChangeCount) throws SQLException {
+        int[] parameterSlots = ptag.getParameterSlots();
+        for (int i = 0; i < parameterSlots.length; i++) {
+            int slot = parameterSlots[i];
+            if (slot < 0) {
+                updatePresenceFlag(preparedStatement, i + 1, ptag.getFlagSlots()[-slot - 1], boundChangeCount);
+            } else if (slotVersions[slot] > boundChangeCount || streamSlots[slot]) {
+                bindSlot(preparedStatement, ptag, i + 1, slot);
+            }
+        }
+    }
+
+    /**
+     * Set a parameter of a {@link ExpansionMode#NULL_TOLERANT} expansion to 1 if all of the given slots have values
+     * or 0 if they do not.
+     */
+    private void updatePresenceFlag(PreparedStatement preparedStatement, int parameterIndex, int[] slots,
+                                    long boundChangeCount) throws SQLException {
+        boolean stale = boundChangeCount < 0;
+        boolean present = true;
+        for (int slot : slots) {
+            stale |= slotVersions[slot] > boundChangeCount;
+            present &= slotTypes[slot] != UNSET_TYPE;
+        }
+        if (stale) {
+            preparedStatement.setInt(parameterIndex, present ? 1 : 0);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void bindSlot(PreparedStatement preparedStatement, PreparedStatementTag ptag, int parameterIndex, int slot)
+            throws SQLException {
+        long primitiveValue = primitiveValues[slot];
+        Object objectValue = objectValues[slot];
+        switch (slotTypes[slot]) {
+            case NULL_TYPE:
+                preparedStatement.setNull(parameterIndex, (int) primitiveValue);
+                break;
+            case BOOLEAN_TYPE:
+                preparedStatement.setBoolean(parameterIndex, primitiveValue != 0);
+                break;
+            case BYTE_TYPE:
+                preparedStatement.setByte(parameterIndex, (byte) primitiveValue);
+                break;
+            case SHORT_TYPE:
+                preparedStatement.setShort(parameterIndex, (short) primitiveValue);
+                break;
+            case INT_TYPE:
+                preparedStatement.setInt(parameterIndex, (int) primitiveValue);
+                break;
+            case LONG_TYPE:
+                preparedStatement.setLong(parameterIndex, primitiveValue);
+                break;
+            case FLOAT_TYPE:
+                preparedStatement.setFloat(parameterIndex, Float.intBitsToFloat((int) primitiveValue));
+                break;
+            case DOUBLE_TYPE:
+                preparedStatement.setDouble(parameterIndex, Double.longBitsToDouble(primitiveValue));
+                break;
+            case BIG_DECIMAL_TYPE:
+                preparedStatement.setBigDecimal(parameterIndex, (BigDecimal) objectValue);
+                break;
+            case STRING_TYPE:
+                preparedStatement.setString(parameterIndex, (String) objectValue);
+                break;
+            case BYTES_TYPE:
+                preparedStatement.setBytes(parameterIndex, (byte[]) objectValue);
+                break;
+            case DATE_TYPE:
+                preparedStatement.setDate(parameterIndex, (Date) objectValue);
+                break;
+            case TIME_TYPE:
+                preparedStatement.setTime(parameterIndex, (Time) objectValue);
+                break;
+            case TIMESTAMP_TYPE:
+                preparedStatement.setTimestamp(parameterIndex, (Timestamp) objectValue);
+                break;
+            case OBJECT_TYPE:
+                bindObject(preparedStatement, ptag, parameterIndex, objectValue);
+                break;
+            case CUSTOM_TYPE:
+                ((BiSqlConsumer<PreparedStatement, Integer>) objectValue).accept(preparedStatement, parameterIndex);
+                break;
+            default:
+                // The slot has no value. Only NULL tolerant expansions have parameters for such slots.
+                int sqlType = ptag.getParameterType(parameterIndex);
+                preparedStatement.setNull(parameterIndex, sqlType == Types.OTHER ? Types.NULL : sqlType);
+                break;
+        }
     }
 
-    private void updatePreparedStatementParams(PreparedStatement preparedStatement, BitSet signature) throws SQLException {
-        int[] sigIndex = {0};
-        int[] paramIndex = {1};
-        template.forEachVariableInstance(name -> {
-            if (signature.get(sigIndex[0])) {
-                valueMap.get(name).accept(preparedStatement, paramIndex[0]);
-                paramIndex[0] += 1;
+    /**
+     * Set a parameter to a value that was given to {@code setObject}. If the class of the value has a specific setter,
+     * it is used. A null value is set with the type of the parameter from the prepared statement's {@link
+     * ParameterMetaData}, so that the driver does not need to guess it. Other values are passed to {@code setObject},
+     * since the driver may know how to convert them to a type other than the parameter's.
+     */
+    private void bindObject(PreparedStatement preparedStatement, PreparedStatementTag ptag, int parameterIndex,
+                            @Nullable Object value) throws SQLException {
+        if (value == null) {
+            int sqlType = ptag.getParameterType(parameterIndex);
+            if (sqlType == Types.OTHER) {
+                preparedStatement.setObject(parameterIndex, null);
+            } else {
+                preparedStatement.setNull(parameterIndex, sqlType);
             }
-            sigIndex[0] += 1;
-        });
+            return;
+        }
+        ParameterSetters.ParameterSetter setter = ParameterSetters.forClass(value.getClass());
+        if (setter == null) {
+            preparedStatement.setObject(parameterIndex, value);
+        } else {
+            setter.set(preparedStatement, parameterIndex, value);
+        }
     }
 
     /**
@@ -1693,7 +3328,7 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * @return A set containing the unique variable names in this object's template in no particular order.
      */
     public Set<String> getVarNames() {
-        return template.getVarNames();
+        return plan.getVarNames();
     }
 
     /**
@@ -1703,35 +3338,37 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      * to a parameter value.
      */
     public Set<String> getBoundVarNames() {
-        Set<String> varNames = template.getVarNames();
-        varNames.removeIf(name -> valueMap.get(name).isVacuous());
+        Set<String> varNames = plan.getVarNames();
+        varNames.removeIf(name -> slotTypes[plan.getSlot(name)] == UNSET_TYPE);
         return varNames;
     }
 
-    private void updatePreparedStatementConfig(PreparedStatement preparedStatement) throws SQLException {
-        if (maxFieldSize.isPresent()) {
-            preparedStatement.setMaxFieldSize(maxFieldSize.get());
+    private void updateStatementConfig(Statement statement, long boundChangeCount) throws SQLException {
+        if (maxFieldSize.isPresent() && configVersions[MAX_FIELD_SIZE_OPTION] > boundChangeCount) {
+            statement.setMaxFieldSize(maxFieldSize.get());
         }
-        if (maxRows.isPresent()) {
-            preparedStatement.setMaxRows(maxRows.get());
-        } else if (largeMaxRows.isPresent()) {
-            preparedStatement.setLargeMaxRows(largeMaxRows.get());
+        if (configVersions[MAX_ROWS_OPTION] > boundChangeCount) {
+            if (maxRows.isPresent()) {
+                statement.setMaxRows(maxRows.get());
+            } else if (largeMaxRows.isPresent()) {
+                statement.setLargeMaxRows(largeMaxRows.get());
+            }
         }
-        if (queryTimeout.isPresent()) {
-            preparedStatement.setQueryTimeout(queryTimeout.get());
+        if (queryTimeout.isPresent() && configVersions[QUERY_TIMEOUT_OPTION] > boundChangeCount) {
+            statement.setQueryTimeout(queryTimeout.get());
         }
-        if (cursorName.isPresent()) {
-            preparedStatement.setCursorName(cursorName.get());
+        if (cursorName.isPresent() && configVersions[CURSOR_NAME_OPTION] > boundChangeCount) {
+            statement.setCursorName(cursorName.get());
         }
-        if (fetchDirection.isPresent()) {
+        if (fetchDirection.isPresent() && configVersions[FETCH_DIRECTION_OPTION] > boundChangeCount) {
             //noinspection MagicConstant
-            preparedStatement.setFetchDirection(fetchDirection.get());
+            statement.setFetchDirection(fetchDirection.get());
         }
-        if (fetchSize.isPresent()) {
-            preparedStatement.setFetchSize(fetchSize.get());
+        if (fetchSize.isPresent() && configVersions[FETCH_SIZE_OPTION] > boundChangeCount) {
+            statement.setFetchSize(fetchSize.get());
         }
-        if (poolable.isPresent()) {
-            preparedStatement.setPoolable(poolable.get());
+        if (poolable.isPresent() && configVersions[POOLABLE_OPTION] > boundChangeCount) {
+            statement.setPoolable(poolable.get());
         }
     }
 
@@ -1741,29 +3378,210 @@ public class SmileyVarsPreparedStatement implements AutoCloseable {
      */
     private static class PreparedStatementTag {
         private final BitSet signature;
-        private final PreparedStatement preparedStatement;
-        private long changeCount;
-
-        PreparedStatementTag(BitSet signature, PreparedStatement preparedStatement, long changeCount) {
+        private final SmileyVarsStatementPlan.Expansion expansion;
+        /**
+         * The prepared statement or null if it has not been prepared or has been closed to free its resources.
+         */
+        private PreparedStatement preparedStatement;
+        /**
+         * If the prepared statement came from a statement pool, the pool's entry for it.
+         */
+        private SmileyVarsStatementPool.PooledStatement pooledStatement;
+        private boolean prepared = false;
+        /**
+         * The slot number of the variable whose value is bound to each parameter of the prepared statement. The slot
+         * for parameter index <i>i</i> is at position <i>i</i>-1.
+         */
+        private final int[] parameterSlots;
+        /**
+         * The change count of the SmileyVars prepared statement when the values in this prepared statement were last
+         * set. Values and configuration that have changed since then need to be set again.
+         */
+        private long boundChangeCount = -1;
+        /**
+         * The row numbers of the rows in this prepared statement's batch.
+         */
+        private int[] batchRows = new int[0];
+        private int batchRowCount = 0;
+        private boolean inBatch = false;
+        private long useCount = 0;
+        private long lastUsedNanos;
+        /**
+         * The SQL type of each parameter, from the prepared statement's {@link ParameterMetaData}, or null if it has
+         * not been needed yet. Types that are not known are {@link Types#OTHER}. The types do not change when the
+         * statement is prepared again, since the SQL is the same.
+         */
+        private int[] parameterTypes;
+        /**
+         * The tags for this tag's expansion with the values of some inline variables as literals, keyed by the plan's
+         * inline key for the literals, or null if there have not been any.
+         */
+        private LongKeyedMap<PreparedStatementTag> inlineTags;
+
+        PreparedStatementTag(BitSet signature, SmileyVarsStatementPlan.Expansion expansion) {
             this.signature = signature;
-            this.preparedStatement = preparedStatement;
-            this.changeCount = changeCount;
+            this.expansion = expansion;
+            this.parameterSlots = expansion.getParameterSlots();
         }
 
         BitSet getSignature() {
             return signature;
         }
 
+        String getSql() {
+            return expansion.getSql();
+        }
+
+        SmileyVarsStatementPlan.Expansion getExpansion() {
+            return expansion;
+        }
+
         PreparedStatement getPreparedStatement() {
             return preparedStatement;
         }
 
-        long getChangeCount() {
-            return changeCount;
+        void setPreparedStatement(PreparedStatement preparedStatement, SmileyVarsStatementPool.PooledStatement pooledStatement) {
+            this.preparedStatement = preparedStatement;
+            this.pooledStatement = pooledStatement;
+            prepared = true;
+            boundChangeCount = -1;
+        }
+
+        SmileyVarsStatementPool.PooledStatement getPooledStatement() {
+            return pooledStatement;
+        }
+
+        @Nullable
+        PreparedStatementTag getInlineTag(long key) {
+            return inlineTags == null ? null : inlineTags.get(key);
+        }
+
+        void putInlineTag(long key, PreparedStatementTag inlineTag) {
+            if (inlineTags == null) {
+                inlineTags = new LongKeyedMap<>();
+            }
+            inlineTags.put(key, inlineTag);
+        }
+
+        /**
+         * Forget the prepared statement without closing it.
+         */
+        void clearPreparedStatement() {
+            preparedStatement = null;
+            pooledStatement = null;
+        }
+
+        /**
+         * @return true if this tag's statement has ever been prepared.
+         */
+        boolean isPrepared() {
+            return prepared;
+        }
+
+        void closePreparedStatement() throws SQLException {
+            PreparedStatement ps = preparedStatement;
+            preparedStatement = null;
+            if (ps != null) {
+                ps.close();
+            }
+        }
+
+        void used(long now) {
+            useCount++;
+            lastUsedNanos = now;
+            expansion.recordUse();
+        }
+
+        void setLastUsedNanos(long lastUsedNanos) {
+            this.lastUsedNanos = lastUsedNanos;
+        }
+
+        long getUseCount() {
+            return useCount;
+        }
+
+        void ageUseCount() {
+            useCount >>>= 1;
+        }
+
+        long getLastUsedNanos() {
+            return lastUsedNanos;
+        }
+
+        int[] getParameterSlots() {
+            return parameterSlots;
+        }
+
+        int[][] getFlagSlots() {
+            return expansion.getFlagSlots();
+        }
+
+        /**
+         * Get the SQL type of a parameter of the prepared statement, reading the prepared statement's parameter
+         * metadata the first time this is called.
+         *
+         * @param parameterIndex The index of the parameter.
+         * @return the type or {@link Types#OTHER} if it is not known.
+         */
+        int getParameterType(int parameterIndex) {
+            if (parameterTypes == null) {
+                parameterTypes = readParameterTypes();
+            }
+            return parameterTypes[parameterIndex - 1];
+        }
+
+        private int[] readParameterTypes() {
+            int[] types = new int[parameterSlots.length];
+            Arrays.fill(types, Types.OTHER);
+            try {
+                ParameterMetaData metaData = preparedStatement.getParameterMetaData();
+                if (metaData != null) {
+                    for (int i = 0; i < types.length; i++) {
+                        int type = metaData.getParameterType(i + 1);
+                        if (type != Types.NULL) {
+                            types[i] = type;
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                logger.debug("Unable to get parameter types for {}", getSql(), e);
+            }
+            return types;
+        }
+
+        long getBoundChangeCount() {
+            return boundChangeCount;
+        }
+
+        void setBoundChangeCount(long boundChangeCount) {
+            this.boundChangeCount = boundChangeCount;
+        }
+
+        void addBatchRow(int row) {
+            if (batchRowCount == batchRows.length) {
+                batchRows = Arrays.copyOf(batchRows, Math.max(8, batchRowCount * 2));
+            }
+            batchRows[batchRowCount++] = row;
+        }
+
+        int[] getBatchRows() {
+            return batchRows;
+        }
+
+        int getBatchRowCount() {
+            return batchRowCount;
+        }
+
+        void clearBatchRows() {
+            batchRowCount = 0;
+        }
+
+        boolean isInBatch() {
+            return inBatch;
         }
 
-        void setChangeCount(long changeCount) {
-            this.changeCount = changeCount;
+        void setInBatch(boolean inBatch) {
+            this.inBatch = inBatch;
         }
     }
 }
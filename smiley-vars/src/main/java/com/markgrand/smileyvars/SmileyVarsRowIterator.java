@@ -0,0 +1,150 @@
+package com.markgrand.smileyvars;
+
+import com.markgrand.smileyvars.util.SqlConsumer;
+import com.markgrand.smileyvars.util.SqlFunction;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An iterator over the rows of a query's {@link ResultSet} that maps each row to an object as it is read. Rows are not
+ * read until they are needed, so only the rows in the block that the driver has fetched are in memory at the same
+ * time.
+ * <p>The result set is closed when the last row has been read, when mapping a row throws an exception or when this
+ * iterator is closed. Iterators should be used in a try-with-resources statement so that they are closed even if not
+ * all of the rows are read.</p>
+ * <p>Instances of this class are created by {@link SmileyVarsPreparedStatement#iterator(SqlFunction)}.</p>
+ *
+ * @param <T> the type of object that rows are mapped to.
+ * @author Mark Grand
+ */
+public final class SmileyVarsRowIterator<T> implements Iterator<T>, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SmileyVarsRowIterator.class);
+
+    private final ResultSet resultSet;
+    private final SqlFunction<? super ResultSet, ? extends T> rowMapper;
+    private final SqlConsumer<ResultSet> onClose;
+    private boolean rowReady = false;
+    private boolean closed = false;
+    private long rowCount = 0;
+
+    /**
+     * Constructor
+     *
+     * @param resultSet The result set to iterate over.
+     * @param rowMapper The function to map the current row of the result set to an object.
+     * @param onClose   Called after the result set is closed to restore whatever was changed to read it.
+     */
+    SmileyVarsRowIterator(@NotNull ResultSet resultSet, @NotNull SqlFunction<? super ResultSet, ? extends T> rowMapper,
+                          @NotNull SqlConsumer<ResultSet> onClose) {
+        this.resultSet = resultSet;
+        this.rowMapper = rowMapper;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (rowReady) {
+            return true;
+        }
+        if (closed) {
+            return false;
+        }
+        try {
+            rowReady = resultSet.next();
+        } catch (SQLException e) {
+            closeAfterFailure(e);
+            throw new SmileyVarsSqlException("Unable to read the next row", e);
+        }
+        if (!rowReady) {
+            close();
+        }
+        return rowReady;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        rowReady = false;
+        try {
+            T row = rowMapper.apply(resultSet);
+            rowCount++;
+            return row;
+        } catch (SQLException e) {
+            closeAfterFailure(e);
+            throw new SmileyVarsSqlException("Unable to map row " + (rowCount + 1), e);
+        } catch (RuntimeException e) {
+            closeAfterFailure(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Return a sequential {@link Stream} of the rows that have not yet been read. Closing the stream closes this
+     * iterator.
+     *
+     * @return the stream.
+     */
+    @NotNull
+    public Stream<T> stream() {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    /**
+     * @return the number of rows that have been mapped so far.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return true if this iterator has been closed, either explicitly or by reading its last row.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Close the result set and release whatever was used to read it. Calling this more than once has no effect.
+     *
+     * @throws SmileyVarsSqlException if there is a problem closing the result set.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        rowReady = false;
+        logger.debug("Closing result set after {} rows", rowCount);
+        try {
+            try {
+                resultSet.close();
+            } finally {
+                onClose.accept(resultSet);
+            }
+        } catch (SQLException e) {
+            throw new SmileyVarsSqlException("Unable to close result set", e);
+        }
+    }
+
+    private void closeAfterFailure(Exception failure) {
+        try {
+            close();
+        } catch (RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+}
@@ -0,0 +1,796 @@
+package com.markgrand.smileyvars;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The connection-independent part of a {@link SmileyVarsPreparedStatement}. A plan holds a SmileyVars template that
+ * has been parsed once, the slot number of each of its variables and the expansion of the template for each
+ * combination of variables that have had values.
+ * <p>Plans are thread safe. An application that creates a {@code SmileyVarsPreparedStatement} for the same SQL many
+ * times, such as once per request on pooled connections, can create the plan once and share it:</p>
+ * <pre>
+ * static final SmileyVarsStatementPlan PLAN
+ *         = SmileyVarsStatementPlan.plan(DatabaseType.POSTGRESQL, "SELECT * FROM square WHERE 1=1 (: AND x=:x :)");
+ * ...
+ * try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(conn, PLAN)) {
+ * ...
+ * </pre>
+ * <p>Creating a {@code SmileyVarsPreparedStatement} from a plan does not use the connection's metadata or parse the
+ * template.</p>
+ * <p>A plan counts how often each combination of variables that have values is used, so that the most used
+ * combinations can be prepared ahead of time with {@link SmileyVarsPreparedStatement#prewarmMostUsed(int)}.</p>
+ *
+ * @author Mark Grand
+ */
+@SuppressWarnings("WeakerAccess")
+public class SmileyVarsStatementPlan {
+    private static final Logger logger = LoggerFactory.getLogger(SmileyVarsStatementPlan.class);
+
+    private final DatabaseType databaseType;
+    private final SmileyVarsTemplate template;
+    private final ExpansionMode expansionMode;
+
+    /**
+     * A template that formats values as literals, for executing expansions that have not been prepared. It is created
+     * when it is first needed.
+     */
+    @Nullable
+    private volatile SmileyVarsTemplate literalTemplate;
+
+    /**
+     * If the expansion mode is {@link ExpansionMode#NULL_TOLERANT}, the one expansion of the template.
+     */
+    @Nullable
+    private final Expansion nullTolerantExpansion;
+
+    /**
+     * The names of the SmileyVars in the template. The position of a name in this array is its slot number.
+     */
+    private final String[] slotNames;
+
+    /**
+     * Map SmileyVar names to their slot number.
+     */
+    private final Map<String, Integer> slotIndexMap;
+
+    /**
+     * The slots of the variables that are not inside brackets. Every signature includes these slots.
+     */
+    private final BitSet requiredSlots = new BitSet();
+
+    /**
+     * The slots of the variables in each bracketed segment of the template, without duplicates.
+     */
+    private final List<BitSet> bracketSlots = new ArrayList<>();
+
+    /**
+     * The slots of the variables that are followed by {@code :inline} somewhere in the template.
+     */
+    private final BitSet inlineSlots = new BitSet();
+
+    private static final int DEFAULT_MAX_INLINE_VALUES = 10;
+
+    /**
+     * The most distinct values of each inline variable that are put into the SQL as literals.
+     */
+    private volatile int maxInlineValues = DEFAULT_MAX_INLINE_VALUES;
+
+    /**
+     * For each inline variable, the distinct literals that have been put into the SQL, indexed by slot number. The
+     * entries for other slots are null.
+     */
+    private final InlineLiterals[] inlineLiterals;
+
+    /**
+     * For each inline variable, how far its literal's id is shifted in an {@link #inlineKeyBits(int, int) inline
+     * key}, indexed by slot number.
+     */
+    private final int[] inlineKeyShifts;
+
+    /**
+     * The most distinct literals that fit in an inline key for each inline variable.
+     */
+    private final int inlineKeyLimit;
+
+    /**
+     * The expansions of the template, keyed by the signature of slots that have values. Signatures that produce the
+     * same SQL share the expansion whose canonical signature is the slots of the variables that appear in the SQL.
+     */
+    private final ConcurrentHashMap<BitSet, Expansion> expansions = new ConcurrentHashMap<>();
+
+    /**
+     * For each class of object whose properties have been bound to the variables, the accessor of the property for
+     * each slot or null for slots that the class has no property for. A {@code ClassValue} does not keep classes from
+     * being unloaded.
+     */
+    private final ClassValue<List<Function<Object, Object>>> beanAccessors
+            = new ClassValue<List<Function<Object, Object>>>() {
+        @Override
+        protected List<Function<Object, Object>> computeValue(Class<?> type) {
+            Map<String, Function<Object, Object>> accessors = BeanAccessors.forClass(type);
+            List<Function<Object, Object>> slotAccessors = new ArrayList<>(slotNames.length);
+            for (String name : slotNames) {
+                slotAccessors.add(accessors.get(name));
+            }
+            return Collections.unmodifiableList(slotAccessors);
+        }
+    };
+
+    private SmileyVarsStatementPlan(@NotNull DatabaseType databaseType, @NotNull SmileyVarsTemplate template,
+                                    @NotNull ExpansionMode expansionMode) {
+        this.databaseType = databaseType;
+        this.template = template;
+        this.expansionMode = expansionMode;
+        Set<String> varNames = new LinkedHashSet<>();
+        try {
+            template.forEachVariableInstance(varNames::add);
+        } catch (SQLException e) {
+            throw new SmileyVarsSqlException("Unexpected SQLException from adding a variable name to a set.", e);
+        }
+        slotNames = varNames.toArray(new String[0]);
+        Map<String, Integer> slots = new HashMap<>();
+        for (int i = 0; i < slotNames.length; i++) {
+            slots.put(slotNames[i], i);
+        }
+        slotIndexMap = Collections.unmodifiableMap(slots);
+        for (String name : template.getUnbracketedVarNames()) {
+            requiredSlots.set(slots.get(name));
+        }
+        for (Set<String> names : template.getBracketVarNames()) {
+            BitSet bracket = new BitSet();
+            for (String name : names) {
+                bracket.set(slots.get(name));
+            }
+            if (!bracket.isEmpty() && !bracketSlots.contains(bracket)) {
+                bracketSlots.add(bracket);
+            }
+        }
+        if (expansionMode == ExpansionMode.NULL_TOLERANT) {
+            // Every variable is a parameter of the one expansion, so none are inline.
+            nullTolerantExpansion = expandNullTolerant();
+            expansions.put(nullTolerantExpansion.getSignature(), nullTolerantExpansion);
+        } else {
+            nullTolerantExpansion = null;
+            for (String name : template.getInlineVarNames()) {
+                inlineSlots.set(slots.get(name));
+            }
+        }
+        inlineLiterals = new InlineLiterals[slotNames.length];
+        inlineKeyShifts = new int[slotNames.length];
+        // Each inline variable gets an equal share of the 64 bits of a key. Its literals are numbered from 1 within
+        // its share, so zero means that it has no literal.
+        int keyBits = inlineSlots.isEmpty() ? 64 : 64 / inlineSlots.cardinality();
+        inlineKeyLimit = keyBits >= 32 ? Integer.MAX_VALUE : (1 << keyBits) - 1;
+        warnIfOverInlineKeyLimit();
+        int shift = 0;
+        for (int slot = inlineSlots.nextSetBit(0); slot >= 0; slot = inlineSlots.nextSetBit(slot + 1)) {
+            inlineLiterals[slot] = new InlineLiterals();
+            inlineKeyShifts[slot] = shift;
+            shift += keyBits;
+        }
+    }
+
+    /**
+     * Create a plan for the given type of database.
+     *
+     * @param databaseType The type of database that the plan is for.
+     * @param sql          The SmileyVars template.
+     * @return the plan.
+     */
+    @NotNull
+    public static SmileyVarsStatementPlan plan(@NotNull DatabaseType databaseType, @NotNull String sql) {
+        return plan(databaseType, sql, ExpansionMode.VARIANTS);
+    }
+
+    /**
+     * Create a plan for the given type of database that expands its template in the given way.
+     *
+     * @param databaseType  The type of database that the plan is for.
+     * @param sql           The SmileyVars template.
+     * @param expansionMode How the template is expanded.
+     * @return the plan.
+     * @throws UnsupportedFeatureException if the template cannot be expanded in the given way.
+     */
+    @NotNull
+    public static SmileyVarsStatementPlan plan(@NotNull DatabaseType databaseType, @NotNull String sql,
+                                               @NotNull ExpansionMode expansionMode) {
+        logger.trace("Creating SmileyVars statement plan for {}", sql);
+        return new SmileyVarsStatementPlan(databaseType,
+                SmileyVarsTemplate.template(databaseType, sql, ValueFormatterRegistry.preparedStatementInstance()), expansionMode);
+    }
+
+    /**
+     * Create a plan for the type of database that the given connection is to.
+     *
+     * @param conn a connection to the type of database that the plan will be used with.
+     * @param sql  The SmileyVars template.
+     * @return the plan.
+     * @throws SQLException if there is a problem using the connection to determine the type of database.
+     */
+    @NotNull
+    public static SmileyVarsStatementPlan plan(@NotNull Connection conn, @NotNull String sql) throws SQLException {
+        return plan(conn, sql, ExpansionMode.VARIANTS);
+    }
+
+    /**
+     * Create a plan for the type of database that the given connection is to that expands its template in the given
+     * way.
+     *
+     * @param conn          a connection to the type of database that the plan will be used with.
+     * @param sql           The SmileyVars template.
+     * @param expansionMode How the template is expanded.
+     * @return the plan.
+     * @throws SQLException                if there is a problem using the connection to determine the type of
+     *                                     database.
+     * @throws UnsupportedFeatureException if the template cannot be expanded in the given way.
+     */
+    @NotNull
+    public static SmileyVarsStatementPlan plan(@NotNull Connection conn, @NotNull String sql,
+                                               @NotNull ExpansionMode expansionMode) throws SQLException {
+        return plan(DatabaseInfo.forConnection(conn).getDatabaseType(), sql, expansionMode);
+    }
+
+    /**
+     * @return the type of database that this plan is for.
+     */
+    @NotNull
+    public DatabaseType getDatabaseType() {
+        return databaseType;
+    }
+
+    /**
+     * Get a template like this plan's template that formats values as SQL literals for this plan's type of database.
+     *
+     * @return the template.
+     */
+    @NotNull
+    SmileyVarsTemplate getLiteralTemplate() {
+        SmileyVarsTemplate result = literalTemplate;
+        if (result == null) {
+            result = SmileyVarsTemplate.template(databaseType, template.getTemplateString());
+            literalTemplate = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return how this plan expands its template.
+     */
+    @NotNull
+    public ExpansionMode getExpansionMode() {
+        return expansionMode;
+    }
+
+    /**
+     * Get the String that this plan's template is based on.
+     *
+     * @return the String that this plan's template is based on.
+     */
+    @NotNull
+    public String getTemplateString() {
+        return template.getTemplateString();
+    }
+
+    /**
+     * Return the names of the variables in this plan's template.
+     *
+     * @return A new set containing the unique variable names in this plan's template.
+     */
+    @NotNull
+    public Set<String> getVarNames() {
+        return new HashSet<>(slotIndexMap.keySet());
+    }
+
+    /**
+     * @return the number of slots, which is the number of unique variable names in this plan's template.
+     */
+    int getSlotCount() {
+        return slotNames.length;
+    }
+
+    /**
+     * Get the slot number of the named variable.
+     *
+     * @param name The name of the variable.
+     * @return the slot number or null if the template has no variable with the given name.
+     */
+    @Nullable
+    Integer getSlot(@NotNull String name) {
+        return slotIndexMap.get(name);
+    }
+
+    /**
+     * Get the accessors for the properties of a class that have the same names as variables.
+     *
+     * @param beanClass The class.
+     * @return an unmodifiable list of the accessor for each slot, indexed by slot number, with null for slots that
+     * the class has no property for.
+     */
+    @NotNull
+    List<Function<Object, Object>> getBeanAccessors(@NotNull Class<?> beanClass) {
+        return beanAccessors.get(beanClass);
+    }
+
+    /**
+     * @param slot A slot number.
+     * @return the name of the variable in the slot.
+     */
+    @NotNull
+    String getSlotName(int slot) {
+        return slotNames[slot];
+    }
+
+    /**
+     * Get the expansion of the template when the variables whose slots are in the given signature have values.
+     * Variables that have values but are only in bracketed segments that are left out of the expansion do not change
+     * the SQL, so all of the signatures that differ only by such variables get the same expansion. Its {@link
+     * Expansion#getSignature() canonical signature} is the slots of the variables that are in the SQL.
+     *
+     * @param signature The slot numbers of the variables that have values. This must not be modified after it is
+     *                  passed to this method.
+     * @return the expansion.
+     * @throws UnboundVariableException if a variable that is not bracketed does not have a value.
+     */
+    @NotNull
+    Expansion getExpansion(@NotNull BitSet signature) {
+        if (nullTolerantExpansion != null) {
+            int missingSlot = requiredSlots.nextSetBit(0);
+            while (missingSlot >= 0 && signature.get(missingSlot)) {
+                missingSlot = requiredSlots.nextSetBit(missingSlot + 1);
+            }
+            if (missingSlot >= 0) {
+                throw new UnboundVariableException("No value is provided for :" + slotNames[missingSlot]);
+            }
+            return nullTolerantExpansion;
+        }
+        Expansion expansion = expansions.get(signature);
+        if (expansion == null) {
+            expansion = expand(signature);
+            BitSet canonicalSignature = expansion.getSignature();
+            if (!canonicalSignature.equals(signature)) {
+                // The canonical signature has fewer slots, so this recursion ends.
+                Expansion canonicalExpansion = getExpansion(canonicalSignature);
+                if (canonicalExpansion.getSql().equals(expansion.getSql())) {
+                    expansion = canonicalExpansion;
+                } else {
+                    // Only possible with unusual nesting of brackets. Don't share the expansion.
+                    expansion = new Expansion(signature, expansion.getSql(), expansion.getParameterSlots());
+                }
+            }
+            Expansion previous = expansions.putIfAbsent(signature, expansion);
+            if (previous != null) {
+                expansion = previous;
+            }
+        }
+        return expansion;
+    }
+
+    /**
+     * Get the signatures of the combinations of variables that have been used most often with this plan.
+     *
+     * @param k The most signatures to return.
+     * @return a list of up to {@code k} sets of the names of variables that have values, most used first.
+     */
+    @NotNull
+    public List<Set<String>> getMostUsedSignatures(int k) {
+        List<Set<String>> signatures = new ArrayList<>();
+        for (BitSet signature : mostUsedSignatures(k)) {
+            Set<String> names = new HashSet<>();
+            for (int slot = signature.nextSetBit(0); slot >= 0; slot = signature.nextSetBit(slot + 1)) {
+                names.add(slotNames[slot]);
+            }
+            signatures.add(names);
+        }
+        return signatures;
+    }
+
+    /**
+     * Get the signatures whose expansions have been used most often.
+     *
+     * @param k The most signatures to return.
+     * @return up to {@code k} signatures, most used first. Signatures whose expansions have not been used are not
+     * included.
+     */
+    @NotNull
+    List<BitSet> mostUsedSignatures(int k) {
+        List<Expansion> used = new ArrayList<>();
+        for (Expansion expansion : canonicalExpansions()) {
+            if (expansion.getUseCount() > 0) {
+                used.add(expansion);
+            }
+        }
+        used.sort((e1, e2) -> Long.compare(e2.getUseCount(), e1.getUseCount()));
+        List<BitSet> signatures = new ArrayList<>();
+        for (int i = 0; i < used.size() && i < k; i++) {
+            signatures.add(used.get(i).getSignature());
+        }
+        return signatures;
+    }
+
+    /**
+     * @return each distinct expansion once.
+     */
+    @NotNull
+    private List<Expansion> canonicalExpansions() {
+        List<Expansion> canonical = new ArrayList<>();
+        for (Map.Entry<BitSet, Expansion> entry : expansions.entrySet()) {
+            if (entry.getKey().equals(entry.getValue().getSignature())) {
+                canonical.add(entry.getValue());
+            }
+        }
+        return canonical;
+    }
+
+    /**
+     * Get the canonical signatures of the distinct expansions of the template, fewest bracketed segments first.
+     * Combinations of bracketed segments are enumerated rather than combinations of variables, so variables that are
+     * in the same segment do not multiply the number of signatures that are tried.
+     *
+     * @param limit The most signatures to return.
+     * @return up to {@code limit} signatures.
+     */
+    @NotNull
+    List<BitSet> signatures(int limit) {
+        if (nullTolerantExpansion != null) {
+            return limit > 0 ? Collections.singletonList(nullTolerantExpansion.getSignature()) : Collections.emptyList();
+        }
+        Set<BitSet> signatures = new LinkedHashSet<>();
+        int bracketCount = bracketSlots.size();
+        for (int size = 0; size <= bracketCount && signatures.size() < limit; size++) {
+            // Generate each combination of size brackets, as indexes into bracketSlots, in lexicographic order.
+            int[] combination = new int[size];
+            for (int i = 0; i < size; i++) {
+                combination[i] = i;
+            }
+            while (signatures.size() < limit) {
+                BitSet signature = (BitSet) requiredSlots.clone();
+                for (int index : combination) {
+                    signature.or(bracketSlots.get(index));
+                }
+                signatures.add(getExpansion(signature).getSignature());
+                int i = size - 1;
+                while (i >= 0 && combination[i] == bracketCount - size + i) {
+                    i--;
+                }
+                if (i < 0) {
+                    break;
+                }
+                combination[i]++;
+                for (int j = i + 1; j < size; j++) {
+                    combination[j] = combination[j - 1] + 1;
+                }
+            }
+        }
+        return new ArrayList<>(signatures);
+    }
+
+    /**
+     * Get the number of times that the expansion for each signature has been used.
+     *
+     * @return a new map from signatures to use counts. Signatures whose expansions have not been used are not
+     * included.
+     */
+    @NotNull
+    Map<BitSet, Long> getUseCounts() {
+        Map<BitSet, Long> useCounts = new HashMap<>();
+        for (Expansion expansion : canonicalExpansions()) {
+            long useCount = expansion.getUseCount();
+            if (useCount > 0) {
+                useCounts.put(expansion.getSignature(), useCount);
+            }
+        }
+        return useCounts;
+    }
+
+    /**
+     * Add to the use count of a signature's expansion, expanding the template for the signature if it has not already
+     * been expanded. This is used to restore use counts that were recorded by a previous run.
+     *
+     * @param signature The signature. This must not be modified after it is passed to this method.
+     * @param useCount  The number of uses to add.
+     * @throws UnboundVariableException if a variable that is not bracketed is not in the signature.
+     */
+    void addUseCount(@NotNull BitSet signature, long useCount) {
+        getExpansion(signature).recordUses(useCount);
+    }
+
+    /**
+     * Get the slots of the variables that are followed by {@code :inline} somewhere in the template. Their values may
+     * be put into the SQL as literals. The result must not be modified.
+     *
+     * @return the slots. This is empty for {@link ExpansionMode#NULL_TOLERANT} plans.
+     */
+    @NotNull
+    BitSet getInlineSlots() {
+        return inlineSlots;
+    }
+
+    /**
+     * Set the most distinct values of each inline variable that are put into the SQL as literals. Each distinct
+     * literal gets its own expansion, so this bounds the number of statements that the {@code
+     * SmileyVarsPreparedStatement} objects that share this plan prepare for it. Once a variable has had this many
+     * distinct values, its other values are bound as parameters.
+     * <p>The ids of the literals of all of the inline variables are packed into 64 bits, so that a combination of them
+     * can be looked up without creating objects. Each of the <i>n</i> inline variables of the template gets 64/<i>n</i>
+     * bits, so the actual limit is the smaller of this value and 2<sup>64/<i>n</i></sup>-1, as returned by {@link
+     * #getInlineKeyLimit()}. For example, it is 15 for a template with 16 inline variables and 63 for one with 10. A
+     * warning is logged when this value is more than that.</p>
+     *
+     * @param maxInlineValues the most distinct literals for each variable. Zero means that values are always bound.
+     *                        The default is 10.
+     * @return this object
+     */
+    public SmileyVarsStatementPlan setMaxInlineValues(int maxInlineValues) {
+        if (maxInlineValues < 0) {
+            throw new IllegalArgumentException("Maximum inline values must not be negative: " + maxInlineValues);
+        }
+        this.maxInlineValues = maxInlineValues;
+        warnIfOverInlineKeyLimit();
+        return this;
+    }
+
+    /**
+     * @return the most distinct literals for each inline variable that the 64 bit keys for combinations of inline
+     * literals allow, whatever the {@link #setMaxInlineValues(int) maximum inline values} is.
+     */
+    public int getInlineKeyLimit() {
+        return inlineKeyLimit;
+    }
+
+    private void warnIfOverInlineKeyLimit() {
+        if (maxInlineValues > inlineKeyLimit) {
+            logger.warn("Only {} distinct values of each of the {} inline variables of {} are inlined, not {}",
+                    inlineKeyLimit, inlineSlots.cardinality(), template.getTemplateString(), maxInlineValues);
+        }
+    }
+
+    /**
+     * @return the most distinct values of each inline variable that are put into the SQL as literals.
+     */
+    public int getMaxInlineValues() {
+        return maxInlineValues;
+    }
+
+    /**
+     * Get the id of a literal for the value of an inline variable, recording it as one of the variable's distinct
+     * literals if it is new and the variable has not already had as many as allowed. Ids are numbered from zero in
+     * the order that literals are first seen.
+     *
+     * @param slot    The slot of an inline variable.
+     * @param literal The literal.
+     * @return the literal's id or -1 if the value is to be bound as a parameter.
+     */
+    int getInlineLiteralId(int slot, @NotNull String literal) {
+        int limit = Math.min(maxInlineValues, inlineKeyLimit);
+        int id = inlineLiterals[slot].getId(literal, limit);
+        if (id < 0) {
+            logger.debug("Binding {} because it has had {} distinct inline values", slotNames[slot], limit);
+        }
+        return id;
+    }
+
+    /**
+     * Check that the id of an inline literal is still allowed. It may not be if the limit on inline values has been
+     * lowered since the id was gotten.
+     *
+     * @param id The id from {@link #getInlineLiteralId(int, String)}.
+     * @return true if the literal may be put into the SQL.
+     */
+    boolean isInlineLiteralIdAllowed(int id) {
+        return id >= 0 && id < maxInlineValues;
+    }
+
+    /**
+     * Get the part of an inline key for a variable's literal. The key for a combination of literals is the bitwise or
+     * of the parts for each of them, so it is different for each combination and zero when there are no literals.
+     *
+     * @param slot The slot of an inline variable.
+     * @param id   The literal's id from {@link #getInlineLiteralId(int, String)}.
+     * @return the part of the key.
+     */
+    long inlineKeyBits(int slot, int id) {
+        return (id + 1L) << inlineKeyShifts[slot];
+    }
+
+    /**
+     * Get the expansion of the template with the given literals in place of the inline occurrences of some variables,
+     * creating it if necessary. Inline expansions are kept with the expansion that they are a variation of, keyed by
+     * their inline key, so that all of the {@code SmileyVarsPreparedStatement} objects that share this plan share
+     * their use counts and row mappers. The number of them is bounded by the {@link #setMaxInlineValues(int) limit on
+     * inline values}.
+     *
+     * @param signature      The canonical signature of the expansion that the inline expansion is a variation of.
+     * @param inlineKey      The bitwise or of the {@link #inlineKeyBits(int, int) inline key parts} of the literals.
+     * @param inlineLiterals The literals, keyed by slot number. They are only used if the expansion is created.
+     * @return the expansion. Its signature is the given signature.
+     */
+    @NotNull
+    Expansion getInlineExpansion(@NotNull BitSet signature, long inlineKey, @NotNull Map<Integer, String> inlineLiterals) {
+        return getExpansion(signature).inlineExpansions.computeIfAbsent(inlineKey, key -> {
+            Map<String, String> literalsByName = new HashMap<>();
+            inlineLiterals.forEach((slot, literal) -> literalsByName.put(slotNames[slot], literal));
+            Expansion expansion = expand(signature, literalsByName);
+            return new Expansion(signature, expansion.getSql(), expansion.getParameterSlots());
+        });
+    }
+
+    @NotNull
+    private Expansion expand(@NotNull BitSet signature) {
+        return expand(signature, Collections.emptyMap());
+    }
+
+    @NotNull
+    private Expansion expand(@NotNull BitSet signature, @NotNull Map<String, String> inlineLiterals) {
+        // The values are all expanded as "?", so any non-null value will do.
+        Map<String, Object> boundValues = new HashMap<>();
+        for (int slot = signature.nextSetBit(0); slot >= 0; slot = signature.nextSetBit(slot + 1)) {
+            boundValues.put(slotNames[slot], Boolean.TRUE);
+        }
+        List<String> expandedVarNames = new ArrayList<>();
+        String sql = template.apply(boundValues, expandedVarNames, inlineLiterals);
+        int[] parameterSlots = new int[expandedVarNames.size()];
+        BitSet canonicalSignature = new BitSet(slotNames.length);
+        for (int i = 0; i < parameterSlots.length; i++) {
+            parameterSlots[i] = slotIndexMap.get(expandedVarNames.get(i));
+            canonicalSignature.set(parameterSlots[i]);
+        }
+        return new Expansion(canonicalSignature, sql, parameterSlots);
+    }
+
+    /**
+     * Expand the template in the {@link ExpansionMode#NULL_TOLERANT} way. The parameters that are the presence flags
+     * of bracketed segments are given negative slot numbers: -1 for the first segment, -2 for the second and so on.
+     */
+    @NotNull
+    private Expansion expandNullTolerant() {
+        List<String> parameterVarNames = new ArrayList<>();
+        List<Set<String>> flagVarNames = new ArrayList<>();
+        String sql = template.expandNullTolerant(parameterVarNames, flagVarNames);
+        int[] parameterSlots = new int[parameterVarNames.size()];
+        int flagCount = 0;
+        for (int i = 0; i < parameterSlots.length; i++) {
+            String name = parameterVarNames.get(i);
+            parameterSlots[i] = name == null ? -++flagCount : slotIndexMap.get(name);
+        }
+        int[][] flagSlots = new int[flagVarNames.size()][];
+        for (int i = 0; i < flagSlots.length; i++) {
+            flagSlots[i] = flagVarNames.get(i).stream().mapToInt(slotIndexMap::get).toArray();
+        }
+        BitSet allSlots = new BitSet(slotNames.length);
+        allSlots.set(0, slotNames.length);
+        return new Expansion(allSlots, sql, parameterSlots, flagSlots);
+    }
+
+    /**
+     * The distinct literals that have been put into the SQL for one inline variable and their ids. Lookups do not
+     * lock.
+     */
+    private static final class InlineLiterals {
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+        /**
+         * @param literal The literal.
+         * @param limit   The most literals allowed.
+         * @return the literal's id or -1 if it is not one of the first {@code limit} distinct literals.
+         */
+        int getId(@NotNull String literal, int limit) {
+            Integer id = ids.get(literal);
+            if (id == null) {
+                synchronized (this) {
+                    id = ids.get(literal);
+                    if (id == null) {
+                        if (ids.size() >= limit) {
+                            return -1;
+                        }
+                        id = ids.size();
+                        ids.put(literal, id);
+                    }
+                }
+            }
+            return id < limit ? id : -1;
+        }
+    }
+
+    /**
+     * The expansion of the template for one signature.
+     */
+    static class Expansion {
+        private final BitSet signature;
+        private final String sql;
+        /**
+         * The slot number of the variable whose value is bound to each parameter of the expansion. The slot for
+         * parameter index <i>i</i> is at position <i>i</i>-1. A negative number -<i>f</i> means that the parameter is
+         * the presence flag whose slots are at position <i>f</i>-1 of {@link #flagSlots}.
+         */
+        private final int[] parameterSlots;
+        /**
+         * For each presence flag parameter, the slots of the variables that must all have values for the flag to be
+         * set. Only {@link ExpansionMode#NULL_TOLERANT} expansions have presence flags.
+         */
+        private final int[][] flagSlots;
+        /**
+         * The number of times that a statement for this expansion has been used.
+         */
+        private final LongAdder useCount = new LongAdder();
+        /**
+         * Row mappers for the results of this expansion, keyed by the class that they create.
+         */
+        private final ConcurrentHashMap<Class<?>, RowMappers.CompiledRowMapper<?>> rowMappers = new ConcurrentHashMap<>();
+        /**
+         * The variations of this expansion with the values of some inline variables as literals, keyed by their inline
+         * key.
+         */
+        private final ConcurrentHashMap<Long, Expansion> inlineExpansions = new ConcurrentHashMap<>();
+
+        Expansion(@NotNull BitSet signature, @NotNull String sql, @NotNull int[] parameterSlots) {
+            this(signature, sql, parameterSlots, new int[0][]);
+        }
+
+        Expansion(@NotNull BitSet signature, @NotNull String sql, @NotNull int[] parameterSlots, @NotNull int[][] flagSlots) {
+            this.signature = signature;
+            this.sql = sql;
+            this.parameterSlots = parameterSlots;
+            this.flagSlots = flagSlots;
+        }
+
+        /**
+         * @return the canonical signature of this expansion. This must not be modified.
+         */
+        @NotNull
+        BitSet getSignature() {
+            return signature;
+        }
+
+        @NotNull
+        String getSql() {
+            return sql;
+        }
+
+        @NotNull
+        int[] getParameterSlots() {
+            return parameterSlots;
+        }
+
+        @NotNull
+        int[][] getFlagSlots() {
+            return flagSlots;
+        }
+
+        void recordUse() {
+            useCount.increment();
+        }
+
+        void recordUses(long uses) {
+            useCount.add(uses);
+        }
+
+        long getUseCount() {
+            return useCount.sum();
+        }
+
+        /**
+         * Get the row mapper that creates objects of the given class from the results of this expansion. The columns
+         * of the results are matched to properties of the class once for each expansion, since every result set of
+         * the expansion's SQL has the same columns.
+         *
+         * @param type The class of objects to create.
+         * @param <T>  The class of objects to create.
+         * @return the row mapper.
+         */
+        @NotNull
+        @SuppressWarnings("unchecked")
+        <T> RowMappers.CompiledRowMapper<T> getRowMapper(@NotNull Class<T> type) {
+            return (RowMappers.CompiledRowMapper<T>) rowMappers.computeIfAbsent(type, RowMappers::compile);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.markgrand.smileyvars;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * A pool of {@link PreparedStatement} objects for one connection that is shared by the {@link
+ * SmileyVarsPreparedStatement} objects created with it. Statements are pooled by their SQL, so when a SmileyVars
+ * prepared statement is closed, its prepared statements can be reused by the next SmileyVars prepared statement for
+ * the same template instead of being prepared again. This is useful when a SmileyVars prepared statement is created
+ * for each request.
+ * <pre>
+ * try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(pool, PLAN)) {
+ * ...
+ * </pre>
+ * <p>A prepared statement is only used by one SmileyVars prepared statement at a time, so their batches and result
+ * sets are never mixed up. If a SmileyVars prepared statement needs a statement while another is using the pooled
+ * statement for the same SQL, another statement is prepared for it. When a SmileyVars prepared statement stops using
+ * a statement, it is kept open so that it can be reused, up to the {@link #setMaxIdleStatements(int) limit on idle
+ * statements}. A reused statement gets all of its values set again. The configuration values of a statement, such as
+ * its maximum rows and fetch size, are put back to the driver's defaults when it is given back to the pool, so one
+ * user's settings never affect the next user. A statement that was given a cursor name is closed instead of being
+ * kept, since a cursor name cannot be reliably removed.</p>
+ * <p>The pool does not keep track of its connection being closed. The code that owns the connection should close the
+ * pool before closing the connection.</p>
+ * <p>This class is thread safe.</p>
+ *
+ * @author Mark Grand
+ */
+@SuppressWarnings("WeakerAccess")
+public class SmileyVarsStatementPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SmileyVarsStatementPool.class);
+
+    private static final int DEFAULT_MAX_IDLE_STATEMENTS = 32;
+
+    private final Connection connection;
+
+    /**
+     * All of the pooled statements, including those that are being used.
+     */
+    private final Set<PooledStatement> statements = new HashSet<>();
+
+    /**
+     * The pooled statements that are not being used, keyed by SQL. The most recently used statement for each SQL is
+     * last.
+     */
+    private final Map<String, ArrayDeque<PooledStatement>> idleStatementsBySql = new HashMap<>();
+
+    /**
+     * The pooled statements that are not being used, least recently used first.
+     */
+    private final LinkedHashSet<PooledStatement> idleStatements = new LinkedHashSet<>();
+
+    private int maxIdleStatements = DEFAULT_MAX_IDLE_STATEMENTS;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Create a statement pool for the given connection.
+     *
+     * @param connection The connection that the pool's statements will be prepared with.
+     */
+    public SmileyVarsStatementPool(@NotNull Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * @return the connection that this pool's statements are prepared with.
+     */
+    @NotNull
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Get a statement for the given SQL that no one else is using, preparing one if the pool does not have one.
+     *
+     * @param sql The SQL of the statement.
+     * @return the pooled statement. It must be passed to {@link #release(PooledStatement)} when it is no longer
+     * needed.
+     * @throws SQLException if there is a problem preparing the statement or this pool has been closed.
+     */
+    @NotNull
+    synchronized PooledStatement acquire(@NotNull String sql) throws SQLException {
+        if (closed) {
+            throw new SQLException("Unable to get a statement from a " + getClass().getSimpleName() + " after it is closed.");
+        }
+        ArrayDeque<PooledStatement> idle = idleStatementsBySql.get(sql);
+        PooledStatement pooledStatement;
+        if (idle == null) {
+            missCount++;
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            try {
+                pooledStatement = new PooledStatement(sql, preparedStatement);
+            } catch (SQLException | RuntimeException e) {
+                preparedStatement.close();
+                throw e;
+            }
+            statements.add(pooledStatement);
+        } else {
+            hitCount++;
+            pooledStatement = idle.pollLast();
+            if (idle.isEmpty()) {
+                idleStatementsBySql.remove(sql);
+            }
+            idleStatements.remove(pooledStatement);
+        }
+        pooledStatement.inUse = true;
+        return pooledStatement;
+    }
+
+    /**
+     * Stop using a pooled statement. Its configuration values are put back to the driver's defaults and it is kept for
+     * reuse unless there are already as many idle statements as allowed, in which case the statement that has been
+     * idle longest is closed.
+     *
+     * @param pooledStatement The pooled statement.
+     * @param reusable        False if the statement has been changed in a way that cannot be undone, so it must be
+     *                        closed instead of being kept.
+     * @throws SQLException if there is a problem restoring the statement's configuration or closing a statement. The
+     *                      statement is closed if its configuration cannot be restored.
+     */
+    synchronized void release(@NotNull PooledStatement pooledStatement, boolean reusable) throws SQLException {
+        if (!pooledStatement.inUse || !statements.contains(pooledStatement)) {
+            // Already released or closed with the pool.
+            return;
+        }
+        pooledStatement.inUse = false;
+        if (reusable) {
+            try {
+                pooledStatement.restoreDefaults();
+            } catch (SQLException | RuntimeException e) {
+                statements.remove(pooledStatement);
+                pooledStatement.preparedStatement.close();
+                throw e;
+            }
+        }
+        if (!reusable) {
+            statements.remove(pooledStatement);
+            logger.trace("Closing pooled statement that cannot be reused {}", pooledStatement.sql);
+            pooledStatement.preparedStatement.close();
+            return;
+        }
+        idleStatementsBySql.computeIfAbsent(pooledStatement.sql, sql -> new ArrayDeque<>()).addLast(pooledStatement);
+        idleStatements.add(pooledStatement);
+        trimIdleStatements();
+    }
+
+    private void trimIdleStatements() throws SQLException {
+        Iterator<PooledStatement> iterator = idleStatements.iterator();
+        while (idleStatements.size() > maxIdleStatements) {
+            PooledStatement eldest = iterator.next();
+            iterator.remove();
+            ArrayDeque<PooledStatement> idle = idleStatementsBySql.get(eldest.sql);
+            idle.remove(eldest);
+            if (idle.isEmpty()) {
+                idleStatementsBySql.remove(eldest.sql);
+            }
+            statements.remove(eldest);
+            logger.trace("Closing idle pooled statement {}", eldest.sql);
+            eldest.preparedStatement.close();
+        }
+    }
+
+    /**
+     * Set the most statements that are not being used that this pool keeps open.
+     *
+     * @param maxIdleStatements the most idle statements.
+     * @return this object
+     * @throws SQLException if there is a problem closing idle statements that are over the new limit.
+     */
+    public synchronized SmileyVarsStatementPool setMaxIdleStatements(int maxIdleStatements) throws SQLException {
+        if (maxIdleStatements < 0) {
+            throw new IllegalArgumentException("Maximum idle statements must not be negative: " + maxIdleStatements);
+        }
+        this.maxIdleStatements = maxIdleStatements;
+        trimIdleStatements();
+        return this;
+    }
+
+    /**
+     * @return the most statements that are not being used that this pool keeps open.
+     */
+    public synchronized int getMaxIdleStatements() {
+        return maxIdleStatements;
+    }
+
+    /**
+     * @return the number of statements in this pool, including those that are being used.
+     */
+    public synchronized int getStatementCount() {
+        return statements.size();
+    }
+
+    /**
+     * @return the number of statements in this pool that are not being used.
+     */
+    public synchronized int getIdleStatementCount() {
+        return idleStatements.size();
+    }
+
+    /**
+     * @return the number of times that a statement was found in this pool.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of times that a statement was prepared because it was not in this pool.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Close all of the statements in this pool, including those that are being used.
+     *
+     * @throws SQLException if there is a problem closing a statement.
+     */
+    @Override
+    public synchronized void close() throws SQLException {
+        closed = true;
+        try {
+            for (PooledStatement pooledStatement : statements) {
+                pooledStatement.preparedStatement.close();
+            }
+        } finally {
+            statements.clear();
+            idleStatementsBySql.clear();
+            idleStatements.clear();
+        }
+    }
+
+    /**
+     * A prepared statement in the pool.
+     */
+    static class PooledStatement {
+        private final String sql;
+        private final PreparedStatement preparedStatement;
+        private boolean inUse = false;
+
+        /**
+         * The driver's defaults for the configuration values that SmileyVars prepared statements can change.
+         */
+        private final int defaultMaxFieldSize;
+        private final int defaultMaxRows;
+        private final int defaultQueryTimeout;
+        private final int defaultFetchDirection;
+        private final int defaultFetchSize;
+        private final boolean defaultPoolable;
+
+        PooledStatement(@NotNull String sql, @NotNull PreparedStatement preparedStatement) throws SQLException {
+            this.sql = sql;
+            this.preparedStatement = preparedStatement;
+            defaultMaxFieldSize = preparedStatement.getMaxFieldSize();
+            defaultMaxRows = preparedStatement.getMaxRows();
+            defaultQueryTimeout = preparedStatement.getQueryTimeout();
+            defaultFetchDirection = preparedStatement.getFetchDirection();
+            defaultFetchSize = preparedStatement.getFetchSize();
+            defaultPoolable = preparedStatement.isPoolable();
+        }
+
+        /**
+         * Put the configuration values of the prepared statement back to the driver's defaults.
+         */
+        private void restoreDefaults() throws SQLException {
+            preparedStatement.setMaxFieldSize(defaultMaxFieldSize);
+            // This also clears a limit set with setLargeMaxRows.
+            preparedStatement.setMaxRows(defaultMaxRows);
+            preparedStatement.setQueryTimeout(defaultQueryTimeout);
+            //noinspection MagicConstant
+            preparedStatement.setFetchDirection(defaultFetchDirection);
+            preparedStatement.setFetchSize(defaultFetchSize);
+            preparedStatement.setPoolable(defaultPoolable);
+        }
+
+        @NotNull
+        PreparedStatement getPreparedStatement() {
+            return preparedStatement;
+        }
+    }
+}
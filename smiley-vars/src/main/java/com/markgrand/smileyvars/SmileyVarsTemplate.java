@@ -10,6 +10,9 @@ import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * <p>SmileyVars is a lightweight template engine for SQL. It helps you avoid having to write similar SQL many times
@@ -79,10 +82,35 @@ import java.util.*;
 public class SmileyVarsTemplate {
     private static final Logger logger = LoggerFactory.getLogger(SmileyVarsTemplate.class);
 
+    /**
+     * Matches a bracketed segment that begins with AND or OR.
+     */
+    private static final Pattern CONNECTIVE_PATTERN = Pattern.compile("(\\s*)(AND|OR)\\b(.*)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * The formatter name that marks a variable whose value is always formatted as a literal, even in a parameterized
+     * expansion. The value is formatted by the formatter that would be used if no formatter name were given.
+     */
+    static final String INLINE_FORMATTER_NAME = "inline";
+
     private final Tokenizer.TokenizerBuilder builder;
     private final String sql;
     private final ValueFormatterRegistry formatterRegistry;
 
+    /**
+     * For each class of object that has been applied to this template, the accessors of its properties that have the
+     * same names as variables. A {@code ClassValue} does not keep classes from being unloaded.
+     */
+    private final ClassValue<Map<String, Function<Object, Object>>> beanAccessors
+            = new ClassValue<Map<String, Function<Object, Object>>>() {
+        @Override
+        protected Map<String, Function<Object, Object>> computeValue(Class<?> type) {
+            Map<String, Function<Object, Object>> accessors = new HashMap<>(BeanAccessors.forClass(type));
+            accessors.keySet().retainAll(getVarNames());
+            return accessors;
+        }
+    };
+
     /**
      * Constructor for internal use.
      *
@@ -105,7 +133,7 @@ public class SmileyVarsTemplate {
      * @return the template.
      */
     @NotNull
-    private static SmileyVarsTemplate template(@NotNull DatabaseType databaseType, @NotNull String sql,
+    static SmileyVarsTemplate template(@NotNull DatabaseType databaseType, @NotNull String sql,
                                                @NotNull ValueFormatterRegistry formatterRegistry) {
         return new SmileyVarsTemplate(sql, databaseType.getTokenizerBuilder(), formatterRegistry);
     }
@@ -133,7 +161,7 @@ public class SmileyVarsTemplate {
     @NotNull
     static SmileyVarsTemplate template(@NotNull Connection conn, @NotNull String sql,
                                        @NotNull ValueFormatterRegistry formatterRegistry) throws SQLException {
-        return template(DatabaseType.inferDatabaseType(conn.getMetaData()), sql, formatterRegistry);
+        return template(DatabaseInfo.forConnection(conn).getDatabaseType(), sql, formatterRegistry);
     }
 
     /**
@@ -147,11 +175,13 @@ public class SmileyVarsTemplate {
     @SuppressWarnings("WeakerAccess")
     @NotNull
     public static SmileyVarsTemplate template(@NotNull Connection conn, @NotNull String sql) throws SQLException {
-        return template(DatabaseType.inferDatabaseType(conn.getMetaData()), sql);
+        return template(DatabaseInfo.forConnection(conn).getDatabaseType(), sql);
     }
 
     /**
-     * Create a template for the type of database associated with the given data source.
+     * Create a template for the type of database associated with the given data source. The type of database is
+     * cached for the data source, so a connection is only obtained from the data source the first time it is used to
+     * create a template.
      *
      * @param ds  the data source that the template will be used with.
      * @param sql The template body.
@@ -162,9 +192,7 @@ public class SmileyVarsTemplate {
     @org.jetbrains.annotations.NotNull
     @SuppressWarnings({"unused", "WeakerAccess"})
     public static SmileyVarsTemplate template(@NotNull DataSource ds, @NotNull String sql) throws SQLException {
-        try (Connection conn = ds.getConnection()) {
-            return template(conn, sql);
-        }
+        return template(DatabaseInfo.forDataSource(ds).getDatabaseType(), sql);
     }
 
     /**
@@ -243,12 +271,116 @@ public class SmileyVarsTemplate {
     @org.jetbrains.annotations.NotNull
     @SuppressWarnings("unused")
     public String apply(@NotNull Map<String, ?> values) {
+        return expand(values, null, false, Collections.emptyMap());
+    }
+
+    /**
+     * Apply the values of the properties of an object to this template. A property is a record component, a public
+     * getter such as {@code getAisle()} or a field. Variables get the values of the properties with the same names. A
+     * property whose value is null is treated as not having a value, so that bracketed segments for properties that
+     * are not set are left out. The properties of each class are found the first time an object of the class is
+     * applied.
+     *
+     * @param bean The object.
+     * @return the expansion of the template.
+     * @throws NoFormatterException        if there is no applicable formatter registered to format a variable's value.
+     * @throws UnsupportedFeatureException if the template uses a smileyVars feature that is not yet supported.
+     * @throws SmileyVarsException         if a getter throws an exception.
+     */
+    @NotNull
+    public String applyBean(@NotNull Object bean) {
+        Map<String, Object> values = new HashMap<>();
+        beanAccessors.get(bean.getClass()).forEach((name, accessor) -> {
+            Object value = accessor.apply(bean);
+            if (value != null) {
+                values.put(name, value);
+            }
+        });
+        return apply(values);
+    }
+
+    /**
+     * Apply the values in the given Map to this template, producing SQL with a {@code ?} parameter in place of each
+     * variable that has a value and a list of the values to bind to the parameters. This lets a {@code
+     * PreparedStatement} be reused for any values of the same variables, so the database does not need to parse the SQL
+     * again for each set of values. A variable that is followed by {@code :inline}, as in <code>status=:status:inline</code>,
+     * has its value formatted as a literal in the SQL instead. Other formatter names are ignored.
+     *
+     * @param values Apply the given values to this template
+     * @return the parameterized SQL and the values to bind to its parameters.
+     * @throws NoFormatterException        if there is no applicable formatter registered to format the value of an
+     *                                     inline variable.
+     * @throws UnsupportedFeatureException if the template uses a smileyVars feature that is not yet supported.
+     */
+    @NotNull
+    public ParameterizedSql applyParameterized(@NotNull Map<String, ?> values) {
+        List<String> parameterNames = new ArrayList<>();
+        String expansion = expand(values, parameterNames, true, Collections.emptyMap());
+        Object[] parameterValues = new Object[parameterNames.size()];
+        for (int i = 0; i < parameterValues.length; i++) {
+            parameterValues[i] = values.get(parameterNames.get(i));
+        }
+        return new ParameterizedSql(expansion, parameterNames, parameterValues);
+    }
+
+    /**
+     * Apply the values in the given Map to this template and collect the names of the variables whose values are in
+     * the expansion.
+     *
+     * @param values           Apply the given values to this template
+     * @param expandedVarNames The names of the variables whose values are in the expansion are added to this list in
+     *                         the order that they appear in the expansion. A name is added once for each time its
+     *                         value appears.
+     * @return the template
+     * @throws NoFormatterException        if there is no applicable formatter registered to format a variable's value.
+     * @throws UnsupportedFeatureException if the template uses a smileyVars feature that is not yet supported.
+     */
+    @NotNull
+    String apply(@NotNull Map<String, ?> values, @NotNull List<String> expandedVarNames) {
+        return expand(values, expandedVarNames, false, Collections.emptyMap());
+    }
+
+    /**
+     * Apply the values in the given Map to this template, with given literals for the occurrences of variables that
+     * are followed by {@code :inline}, and collect the names of the other variables whose values are in the expansion.
+     *
+     * @param values           Apply the given values to this template
+     * @param expandedVarNames The names of the variables whose values are in the expansion, other than inline
+     *                         occurrences that are replaced by a literal, are added to this list in the order that they
+     *                         appear in the expansion.
+     * @param inlineLiterals   The literals to replace inline occurrences of variables with, keyed by variable name.
+     *                         Inline occurrences of variables that are not in this map are formatted as usual.
+     * @return the template
+     * @throws NoFormatterException        if there is no applicable formatter registered to format a variable's value.
+     * @throws UnsupportedFeatureException if the template uses a smileyVars feature that is not yet supported.
+     */
+    @NotNull
+    String apply(@NotNull Map<String, ?> values, @NotNull List<String> expandedVarNames,
+                 @NotNull Map<String, String> inlineLiterals) {
+        return expand(values, expandedVarNames, false, inlineLiterals);
+    }
+
+    /**
+     * Expand this template.
+     *
+     * @param values           The values of the variables.
+     * @param expandedVarNames If not null, the names of the variables whose values are in the expansion are added to
+     *                         this list. If parameterized, only the names of the variables that are expanded as
+     *                         parameters are added.
+     * @param parameterized    If true, variables that are not inline are expanded as {@code ?} parameters.
+     * @param inlineLiterals   If not parameterized, literals to replace inline occurrences of variables with.
+     */
+    @NotNull
+    private String expand(@NotNull Map<String, ?> values, @Nullable List<String> expandedVarNames, boolean parameterized,
+                          @NotNull Map<String, String> inlineLiterals) {
         if (logger.isDebugEnabled()) {
             logger.debug("Expanding \"{}\" with mappings: {}" , sql, values);
         }
         @NotNull Tokenizer tokenizer = builder.build(sql);
         @Nullable StringBuilder segment = new StringBuilder(sql.length() * 2);
         @NotNull Deque<StringBuilder> stack = new ArrayDeque<>();
+        // The number of expanded variable names there were when each open bracket was processed.
+        @NotNull Deque<Integer> expandedVarCounts = new ArrayDeque<>();
         while (tokenizer.hasNext()) {
             Token token = tokenizer.next();
             switch (token.getTokenType()) {
@@ -256,12 +388,22 @@ public class SmileyVarsTemplate {
                     processText(segment, token);
                     break;
                 case VAR:
-                    segment = processVar(values, tokenizer, segment, token, stack);
+                    if (parameterized) {
+                        segment = processParameterizedVar(values, tokenizer, segment, token, stack, expandedVarNames);
+                    } else {
+                        segment = processVar(values, tokenizer, segment, token, stack, expandedVarNames, inlineLiterals);
+                    }
                     break;
                 case SMILEY_OPEN:
                     segment = processBracketOpen(segment, stack);
+                    if (expandedVarNames != null) {
+                        expandedVarCounts.push(expandedVarNames.size());
+                    }
                     break;
                 case SMILEY_CLOSE:
+                    if (expandedVarNames != null && !stack.isEmpty()) {
+                        discardExpandedVarNames(segment, expandedVarNames, expandedVarCounts.pop());
+                    }
                     segment = processBracketClose(segment, stack);
                     break;
                 case EOF:
@@ -269,9 +411,102 @@ public class SmileyVarsTemplate {
                     break;
             }
         }
+        if (expandedVarNames != null && !expandedVarCounts.isEmpty()) {
+            // A bracket that is not closed.
+            discardExpandedVarNames(segment, expandedVarNames, expandedVarCounts.peek());
+        }
         return finalizeExpansion(segment, stack);
     }
 
+    /**
+     * Expand this template for a prepared statement in the {@link ExpansionMode#NULL_TOLERANT} way. Every variable is
+     * expanded as a {@code ?} parameter and every bracketed segment is rewritten to begin with a {@code ?} parameter
+     * that tells whether the segment's variables all have values.
+     *
+     * @param parameterVarNames A list that receives, for each parameter of the expansion in order, the name of the
+     *                          variable whose value it is or null if it is the presence flag of a bracketed segment.
+     * @param flagVarNames      A list that receives, for each presence flag parameter in order, the names of the
+     *                          variables in its segment.
+     * @return the expansion.
+     * @throws UnsupportedFeatureException if brackets are nested or a bracketed segment does not begin with {@code
+     *                                     AND} or {@code OR}.
+     */
+    @NotNull
+    String expandNullTolerant(@NotNull List<String> parameterVarNames, @NotNull List<Set<String>> flagVarNames) {
+        @NotNull Tokenizer tokenizer = builder.build(sql);
+        StringBuilder expansion = new StringBuilder(sql.length() * 2);
+        StringBuilder segment = null;
+        List<String> segmentVarNames = new ArrayList<>();
+        while (tokenizer.hasNext()) {
+            Token token = tokenizer.next();
+            switch (token.getTokenType()) {
+                case TEXT:
+                    (segment == null ? expansion : segment).append(token.getTokenchars());
+                    break;
+                case VAR:
+                    if (tokenizer.peek() == TokenType.VAR) {
+                        // Skip the formatter name. Values are set as parameters, so it is not used.
+                        tokenizer.next();
+                    }
+                    (segment == null ? expansion : segment).append('?');
+                    (segment == null ? parameterVarNames : segmentVarNames).add(token.getTokenchars());
+                    break;
+                case SMILEY_OPEN:
+                    if (segment != null) {
+                        throw new UnsupportedFeatureException("Nested brackets are not supported by NULL tolerant expansion: " + sql);
+                    }
+                    segment = new StringBuilder();
+                    break;
+                case SMILEY_CLOSE:
+                    if (segment == null) {
+                        logger.warn("SmileyVars template has an extra close bracket: {}", sql);
+                    } else {
+                        appendNullTolerantSegment(expansion, segment, segmentVarNames, parameterVarNames, flagVarNames);
+                        segment = null;
+                        segmentVarNames.clear();
+                    }
+                    break;
+                case EOF:
+                    // Ignore EOF
+                    break;
+            }
+        }
+        if (segment != null) {
+            // A bracket that is not closed.
+            appendNullTolerantSegment(expansion, segment, segmentVarNames, parameterVarNames, flagVarNames);
+        }
+        return expansion.toString();
+    }
+
+    private void appendNullTolerantSegment(@NotNull StringBuilder expansion, @NotNull StringBuilder segment,
+                                           @NotNull List<String> segmentVarNames, @NotNull List<String> parameterVarNames,
+                                           @NotNull List<Set<String>> flagVarNames) {
+        Matcher matcher = CONNECTIVE_PATTERN.matcher(segment);
+        if (!matcher.matches()) {
+            throw new UnsupportedFeatureException("NULL tolerant expansion requires bracketed segments to begin with AND or OR: " + segment);
+        }
+        expansion.append(matcher.group(1));
+        if ("AND".equalsIgnoreCase(matcher.group(2))) {
+            expansion.append("AND (? = 0 OR (").append(matcher.group(3)).append("))");
+        } else {
+            expansion.append("OR (? = 1 AND (").append(matcher.group(3)).append("))");
+        }
+        parameterVarNames.add(null);
+        parameterVarNames.addAll(segmentVarNames);
+        flagVarNames.add(new HashSet<>(segmentVarNames));
+    }
+
+    /**
+     * If a bracketed segment is not included in the expansion, then discard the names of the variables that were
+     * expanded in it.
+     */
+    private static void discardExpandedVarNames(@Nullable StringBuilder segment, @NotNull List<String> expandedVarNames,
+                                                int countAtOpen) {
+        if (segment == null) {
+            expandedVarNames.subList(countAtOpen, expandedVarNames.size()).clear();
+        }
+    }
+
     private void processText(@Nullable StringBuilder segment, @org.jetbrains.annotations.NotNull Token token) {
         if (segment != null) {
             segment.append(token.getTokenchars());
@@ -280,9 +515,10 @@ public class SmileyVarsTemplate {
 
     @Nullable
     private StringBuilder processVar(@NotNull Map<String, ?> values, @NotNull Tokenizer tokenizer,
-                                     @Nullable StringBuilder segment, @NotNull Token token, @NotNull Deque<StringBuilder> stack) {
+                                     @Nullable StringBuilder segment, @NotNull Token token, @NotNull Deque<StringBuilder> stack,
+                                     @Nullable List<String> expandedVarNames, @NotNull Map<String, String> inlineLiterals) {
         if (segment != null) {
-            segment = doVarExpansion(values, tokenizer, segment, token);
+            segment = doVarExpansion(values, tokenizer, segment, token, expandedVarNames, inlineLiterals);
             if (segment == null && stack.isEmpty()) {
                 throw new UnboundVariableException("No value is provided for :" + token.getTokenchars());
             }
@@ -290,6 +526,51 @@ public class SmileyVarsTemplate {
         return segment;
     }
 
+    /**
+     * Expand a variable as a {@code ?} parameter or, if it is inline, as a literal.
+     */
+    @Nullable
+    private StringBuilder processParameterizedVar(@NotNull Map<String, ?> values, @NotNull Tokenizer tokenizer,
+                                                  @Nullable StringBuilder segment, @NotNull Token token,
+                                                  @NotNull Deque<StringBuilder> stack, @Nullable List<String> parameterNames) {
+        @NotNull String varName = token.getTokenchars();
+        boolean hasValue;
+        String literal = null;
+        if (tokenizer.peek() == TokenType.VAR) {
+            String typeName = tokenizer.next().getTokenchars();
+            if (INLINE_FORMATTER_NAME.equals(typeName)) {
+                hasValue = values.containsKey(varName);
+                if (hasValue && segment != null) {
+                    literal = formatterRegistry.format(values.get(varName));
+                }
+            } else {
+                // A value that is null is treated as missing, just as it is when it is given to a named formatter.
+                hasValue = values.get(varName) != null;
+            }
+        } else {
+            hasValue = values.containsKey(varName);
+        }
+        if (segment == null) {
+            return null;
+        }
+        if (!hasValue) {
+            if (stack.isEmpty()) {
+                throw new UnboundVariableException("No value is provided for :" + varName);
+            }
+            skipToSmileyClose(tokenizer);
+            return null;
+        }
+        if (literal != null) {
+            segment.append(literal);
+        } else {
+            segment.append('?');
+            if (parameterNames != null) {
+                parameterNames.add(varName);
+            }
+        }
+        return segment;
+    }
+
     private StringBuilder processBracketOpen(StringBuilder segment, @org.jetbrains.annotations.NotNull Deque<StringBuilder> stack) {
         stack.push(segment);
         segment = new StringBuilder();
@@ -333,14 +614,17 @@ public class SmileyVarsTemplate {
      * @param tokenizer The tokenizer to use for getting an explicit formatter name if given.
      * @param segment   A {@link StringBuilder} that is being used to build the expansion of the template.
      * @param varToken  The token that is the variable.
+     * @param expandedVarNames If not null, the variable's name is added to this if its value is formatted.
+     * @param inlineLiterals   Literals to replace inline occurrences of variables with.
      * @return segment if the variable has a value; otherwise null.
      * @throws NoFormatterException if there is no applicable formatter registered to format the variable's value.
      */
     @Nullable
     private StringBuilder doVarExpansion(@NotNull Map<String, ?> values, @NotNull Tokenizer tokenizer,
-                                         @NotNull StringBuilder segment, @NotNull Token varToken) {
+                                         @NotNull StringBuilder segment, @NotNull Token varToken,
+                                         @Nullable List<String> expandedVarNames, @NotNull Map<String, String> inlineLiterals) {
 
-        String value = getVarValue(values, tokenizer, varToken);
+        String value = getVarValue(values, tokenizer, varToken, expandedVarNames, inlineLiterals);
         if (value == null) {
             skipToSmileyClose(tokenizer);
             return null;
@@ -359,24 +643,40 @@ public class SmileyVarsTemplate {
      * @param values    A map of variable names to their assigned value.
      * @param tokenizer The tokenizer to use for getting an explicit formatter name if given.
      * @param varToken  The token that is the variable.
+     * @param expandedVarNames If not null, the variable's name is added to this if its value is formatted.
+     * @param inlineLiterals   Literals to replace inline occurrences of variables with.
      * @return The value of the variable formatted as an SQL literal or null if the variable does not have a value.
      * @throws NoFormatterException if there is no applicable formatter registered to format the variable's value.
      */
-    private String getVarValue(@NotNull Map<String, ?> values, @NotNull Tokenizer tokenizer, @NotNull Token varToken) {
+    private String getVarValue(@NotNull Map<String, ?> values, @NotNull Tokenizer tokenizer, @NotNull Token varToken,
+                               @Nullable List<String> expandedVarNames, @NotNull Map<String, String> inlineLiterals) {
         @NotNull String varName = varToken.getTokenchars();
         logger.debug("Formatting variable {}", varName);
+        String value;
         if (tokenizer.peek() == TokenType.VAR) {
             @NotNull String typeName = tokenizer.next().getTokenchars();
             logger.debug("Found type {}", typeName);
-            return formatterRegistry.format(values.get(varName), typeName);
-        }
-        //No explicit type given for variable, so let the formatter predicates identify the correct formatter to use.
-        if (values.containsKey(varName)) {
-            return formatterRegistry.format(values.get(varName));
+            if (INLINE_FORMATTER_NAME.equals(typeName)) {
+                String literal = inlineLiterals.get(varName);
+                if (literal != null) {
+                    return literal;
+                }
+                // Every value is inline when the template is not parameterized.
+                value = values.containsKey(varName) ? formatterRegistry.format(values.get(varName)) : null;
+            } else {
+                value = formatterRegistry.format(values.get(varName), typeName);
+            }
+        } else if (values.containsKey(varName)) {
+            //No explicit type given for variable, so let the formatter predicates identify the correct formatter to use.
+            value = formatterRegistry.format(values.get(varName));
         } else {
             logger.debug("No value provided for {}", varName);
-            return null;
+            value = null;
         }
+        if (value != null && expandedVarNames != null) {
+            expandedVarNames.add(varName);
+        }
+        return value;
     }
 
     private void skipToSmileyClose(@org.jetbrains.annotations.NotNull Tokenizer tokenizer) {
@@ -406,6 +706,103 @@ public class SmileyVarsTemplate {
         }
     }
 
+    /**
+     * Get the names of the variables in this template that are not inside brackets. The template cannot be expanded
+     * unless all of these variables have values.
+     *
+     * @return a new set containing the names.
+     */
+    @NotNull
+    Set<String> getUnbracketedVarNames() {
+        Set<String> varNames = new HashSet<>();
+        @NotNull Tokenizer tokenizer = builder.build(sql);
+        int depth = 0;
+        while (tokenizer.hasNext()) {
+            Token token = tokenizer.next();
+            switch (token.getTokenType()) {
+                case VAR:
+                    if (depth == 0) {
+                        varNames.add(token.getTokenchars());
+                    }
+                    if (tokenizer.peek() == TokenType.VAR) {
+                        // Skip the formatter name.
+                        tokenizer.next();
+                    }
+                    break;
+                case SMILEY_OPEN:
+                    depth++;
+                    break;
+                case SMILEY_CLOSE:
+                    depth = Math.max(0, depth - 1);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return varNames;
+    }
+
+    /**
+     * Get the names of the variables that are followed by {@code :inline} somewhere in this template.
+     *
+     * @return a new set containing the names.
+     */
+    @NotNull
+    Set<String> getInlineVarNames() {
+        Set<String> varNames = new HashSet<>();
+        @NotNull Tokenizer tokenizer = builder.build(sql);
+        while (tokenizer.hasNext()) {
+            Token token = tokenizer.next();
+            if (token.getTokenType() == TokenType.VAR && tokenizer.peek() == TokenType.VAR
+                        && INLINE_FORMATTER_NAME.equals(tokenizer.next().getTokenchars())) {
+                varNames.add(token.getTokenchars());
+            }
+        }
+        return varNames;
+    }
+
+    /**
+     * Get the names of the variables in each bracketed segment of this template. The names for a segment include the
+     * names of the variables in segments nested inside of it.
+     *
+     * @return a new list with a set of names for each bracketed segment, in the order that the segments end.
+     */
+    @NotNull
+    List<Set<String>> getBracketVarNames() {
+        List<Set<String>> bracketVarNames = new ArrayList<>();
+        Deque<Set<String>> stack = new ArrayDeque<>();
+        @NotNull Tokenizer tokenizer = builder.build(sql);
+        while (tokenizer.hasNext()) {
+            Token token = tokenizer.next();
+            switch (token.getTokenType()) {
+                case VAR:
+                    for (Set<String> varNames : stack) {
+                        varNames.add(token.getTokenchars());
+                    }
+                    if (tokenizer.peek() == TokenType.VAR) {
+                        // Skip the formatter name.
+                        tokenizer.next();
+                    }
+                    break;
+                case SMILEY_OPEN:
+                    stack.push(new HashSet<>());
+                    break;
+                case SMILEY_CLOSE:
+                    if (!stack.isEmpty()) {
+                        bracketVarNames.add(stack.pop());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        while (!stack.isEmpty()) {
+            // A bracket that is not closed.
+            bracketVarNames.add(stack.pop());
+        }
+        return bracketVarNames;
+    }
+
     /**
      * Get the names of the variables in this SmileyVars template.
      *
@@ -0,0 +1,287 @@
+package com.markgrand.smileyvars;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A record of how often each combination of variables that have values has been used with each {@link
+ * SmileyVarsStatementPlan}, kept in a local file so that it survives restarts. When a plan is registered with a
+ * profile, the use counts from the previous run are restored to the plan. This expands the template for the
+ * combinations that were used and lets {@link SmileyVarsPreparedStatement#prewarmMostUsed(int)} prepare the
+ * statements that are most likely to be needed.
+ * <pre>
+ * static final SmileyVarsUsageProfile PROFILE = SmileyVarsUsageProfile.load(Paths.get("smileyvars.profile"));
+ * static final SmileyVarsStatementPlan PLAN
+ *         = PROFILE.register(SmileyVarsStatementPlan.plan(DatabaseType.POSTGRESQL, "SELECT * FROM square WHERE 1=1 (: AND x=:x :)"));
+ * ...
+ * PROFILE.startPeriodicSave(5, TimeUnit.MINUTES);
+ * </pre>
+ * <p>Plans are identified in the file by a hash of their database type, expansion mode and template string, so plans
+ * for the same SQL that differ in database type or expansion mode are kept separately. If more than one plan with the
+ * same identity is registered, the saved use counts are the sum of their counts and the counts from the file are only
+ * restored to the first of them. Restored use counts are halved, so that combinations that stop being used are
+ * eventually forgotten.</p>
+ * <p>This class is thread safe.</p>
+ *
+ * @author Mark Grand
+ */
+@SuppressWarnings("WeakerAccess")
+public class SmileyVarsUsageProfile implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SmileyVarsUsageProfile.class);
+
+    /**
+     * The first four bytes of a profile file are "SVUP".
+     */
+    private static final int MAGIC = 0x53565550;
+    private static final int VERSION = 2;
+
+    private final Path file;
+
+    /**
+     * The use counts read from the file for plans that have not been registered, keyed by plan hash.
+     */
+    private final Map<Long, TemplateProfile> unregisteredProfiles = new HashMap<>();
+
+    /**
+     * The registered plans, keyed by plan hash.
+     */
+    private final Map<Long, List<SmileyVarsStatementPlan>> plans = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    private SmileyVarsUsageProfile(@NotNull Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Create a profile that is kept in the given file, reading the use counts that are already in the file.
+     *
+     * @param file The file. If it does not exist, the profile starts out empty and the file is created the first time
+     *             the profile is saved.
+     * @return the profile.
+     * @throws IOException if there is a problem reading the file or it is not a profile file.
+     */
+    @NotNull
+    public static SmileyVarsUsageProfile load(@NotNull Path file) throws IOException {
+        SmileyVarsUsageProfile profile = new SmileyVarsUsageProfile(file);
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                profile.read(in);
+            }
+            logger.debug("Loaded usage profile for {} templates from {}", profile.unregisteredProfiles.size(), file);
+        }
+        return profile;
+    }
+
+    private void read(@NotNull DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException(file + " is not a SmileyVars usage profile");
+        }
+        int version = in.readInt();
+        if (version == 1) {
+            // Version 1 identified plans by their template string only, so its hashes do not match any plan.
+            logger.info("Ignoring version 1 usage profile {}", file);
+            return;
+        }
+        if (version != VERSION) {
+            throw new IOException(file + " is version " + version + " of the SmileyVars usage profile format. Only version "
+                                          + VERSION + " is supported.");
+        }
+        int templateCount = in.readInt();
+        for (int i = 0; i < templateCount; i++) {
+            long planHash = in.readLong();
+            TemplateProfile templateProfile = new TemplateProfile(in.readInt());
+            int signatureCount = in.readInt();
+            for (int j = 0; j < signatureCount; j++) {
+                long[] words = new long[in.readUnsignedShort()];
+                for (int k = 0; k < words.length; k++) {
+                    words[k] = in.readLong();
+                }
+                templateProfile.useCounts.put(BitSet.valueOf(words), in.readLong());
+            }
+            unregisteredProfiles.put(planHash, templateProfile);
+        }
+    }
+
+    /**
+     * Register a plan with this profile. If the profile has use counts for the plan's database type, expansion mode
+     * and template, half of each count is added to the plan. The plan's use counts are included when this profile is
+     * saved.
+     *
+     * @param plan The plan to register.
+     * @return the plan.
+     */
+    @NotNull
+    public SmileyVarsStatementPlan register(@NotNull SmileyVarsStatementPlan plan) {
+        long planHash = planHash(plan);
+        TemplateProfile templateProfile;
+        synchronized (unregisteredProfiles) {
+            List<SmileyVarsStatementPlan> registeredPlans = plans.computeIfAbsent(planHash, hash -> new ArrayList<>());
+            for (SmileyVarsStatementPlan registeredPlan : registeredPlans) {
+                if (registeredPlan == plan) {
+                    return plan;
+                }
+            }
+            registeredPlans.add(plan);
+            templateProfile = unregisteredProfiles.remove(planHash);
+        }
+        if (templateProfile != null) {
+            if (templateProfile.slotCount != plan.getSlotCount()) {
+                logger.warn("Ignoring usage profile for template with a different number of variables: {}", plan.getTemplateString());
+                return plan;
+            }
+            for (Map.Entry<BitSet, Long> entry : templateProfile.useCounts.entrySet()) {
+                long useCount = entry.getValue() / 2;
+                if (useCount > 0 && entry.getKey().length() <= plan.getSlotCount()) {
+                    try {
+                        plan.addUseCount(entry.getKey(), useCount);
+                    } catch (SmileyVarsException e) {
+                        logger.warn("Ignoring usage profile entry that does not fit template: {}", plan.getTemplateString(), e);
+                    }
+                }
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Write the use counts of the registered plans to this profile's file. Use counts that were read from the file for
+     * plans that have not been registered are written back unchanged. The file is replaced atomically if the file
+     * system supports it, so a crash while saving does not leave a partial profile.
+     *
+     * @throws IOException if there is a problem writing the file.
+     */
+    public void save() throws IOException {
+        Map<Long, TemplateProfile> templateProfiles;
+        synchronized (unregisteredProfiles) {
+            templateProfiles = new HashMap<>(unregisteredProfiles);
+            for (Map.Entry<Long, List<SmileyVarsStatementPlan>> entry : plans.entrySet()) {
+                TemplateProfile templateProfile = new TemplateProfile(entry.getValue().get(0).getSlotCount());
+                for (SmileyVarsStatementPlan plan : entry.getValue()) {
+                    plan.getUseCounts().forEach((signature, count) -> templateProfile.useCounts.merge(signature, count, Long::sum));
+                }
+                templateProfiles.put(entry.getKey(), templateProfile);
+            }
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                write(out, templateProfiles);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        logger.debug("Saved usage profile for {} templates to {}", templateProfiles.size(), file);
+    }
+
+    private static void write(@NotNull DataOutputStream out, @NotNull Map<Long, TemplateProfile> templateProfiles) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(templateProfiles.size());
+        for (Map.Entry<Long, TemplateProfile> entry : templateProfiles.entrySet()) {
+            TemplateProfile templateProfile = entry.getValue();
+            out.writeLong(entry.getKey());
+            out.writeInt(templateProfile.slotCount);
+            out.writeInt(templateProfile.useCounts.size());
+            for (Map.Entry<BitSet, Long> useCount : templateProfile.useCounts.entrySet()) {
+                long[] words = useCount.getKey().toLongArray();
+                out.writeShort(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+                out.writeLong(useCount.getValue());
+            }
+        }
+    }
+
+    /**
+     * Save this profile periodically on a daemon thread. Problems saving the profile are logged.
+     *
+     * @param period The time between saves.
+     * @param unit   The unit of the period.
+     * @throws IllegalStateException if periodic saving has already been started.
+     */
+    public synchronized void startPeriodicSave(long period, @NotNull TimeUnit unit) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Periodic saving of " + file + " has already been started.");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SmileyVars usage profile " + file.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                save();
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to save usage profile to {}", file, e);
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stop saving this profile periodically, if it was started, and save it one last time.
+     *
+     * @throws IOException if there is a problem writing the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+        save();
+    }
+
+    /**
+     * @return the file that this profile is kept in.
+     */
+    @NotNull
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Compute the hash that identifies a plan in the file, which is the 64 bit FNV-1a hash of the UTF-8 encoding of
+     * the plan's database type, expansion mode and template string.
+     */
+    static long planHash(@NotNull SmileyVarsStatementPlan plan) {
+        String identity = plan.getDatabaseType().name() + '\0' + plan.getExpansionMode().name() + '\0' + plan.getTemplateString();
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : identity.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * The use counts for one template.
+     */
+    private static class TemplateProfile {
+        private final int slotCount;
+        private final Map<BitSet, Long> useCounts = new HashMap<>();
+
+        TemplateProfile(int slotCount) {
+            this.slotCount = slotCount;
+        }
+    }
+}
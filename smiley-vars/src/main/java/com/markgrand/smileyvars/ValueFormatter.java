@@ -1,7 +1,12 @@
 package com.markgrand.smileyvars;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -10,6 +15,9 @@ import java.util.function.Predicate;
  */
 class ValueFormatter {
     private final Predicate<Object> isDefaultFor;
+    @Nullable
+    private final Predicate<Class<?>> isDefaultForClass;
+    private final Set<Class<?>> targetClasses;
     private final Predicate<Object> appliesTo;
     private final Function<Object, String> formattingFunction;
     private final String name;
@@ -29,12 +37,79 @@ class ValueFormatter {
                    Predicate<Object> appliesTo,
                    Function<Object, String> formattingFunction,
                    String name) {
+        this(isDefaultFor, null, Collections.emptySet(), appliesTo, formattingFunction, name);
+    }
+
+    private ValueFormatter(Predicate<Object> isDefaultFor,
+                           @Nullable Predicate<Class<?>> isDefaultForClass,
+                           Set<Class<?>> targetClasses,
+                           Predicate<Object> appliesTo,
+                           Function<Object, String> formattingFunction,
+                           String name) {
         this.isDefaultFor = isDefaultFor;
+        this.isDefaultForClass = isDefaultForClass;
+        this.targetClasses = targetClasses;
         this.appliesTo = appliesTo;
         this.formattingFunction = formattingFunction;
         this.name = name;
     }
 
+    /**
+     * Create a formatter whose being the default formatter for a value depends only on the value's class. Unlike
+     * formatters created with the constructor, which formatter is the default for a class of values can be worked out
+     * once and remembered.
+     *
+     * @param isDefaultForClass  Predicate that returns true if this formatter is the default formatter for instances of
+     *                           the given class.
+     * @param targetClasses      The classes that this formatter is primarily intended for.
+     * @param appliesTo          Predicate that returns true if, and only if, its argument is something that the
+     *                           formattingFunction can format.
+     * @param formattingFunction If given a value that appliesTo returns true for, this should return a string that
+     *                           represents to given value as an SQL literal.
+     * @param name               The name of this formatter.
+     * @return the formatter.
+     */
+    @NotNull
+    static ValueFormatter classBased(@NotNull Predicate<Class<?>> isDefaultForClass,
+                                     @NotNull Collection<Class<?>> targetClasses,
+                                     @NotNull Predicate<Object> appliesTo,
+                                     @NotNull Function<Object, String> formattingFunction,
+                                     @NotNull String name) {
+        return new ValueFormatter(value -> isDefaultForClass.test(value.getClass()), isDefaultForClass,
+                Collections.unmodifiableSet(new LinkedHashSet<>(targetClasses)), appliesTo, formattingFunction, name);
+    }
+
+    /**
+     * Return true if whether this is the default formatter for a value depends only on the value's class.
+     *
+     * @return true if this formatter was created by {@link #classBased(Predicate, Collection, Predicate, Function,
+     * String)}.
+     */
+    boolean isClassBased() {
+        return isDefaultForClass != null;
+    }
+
+    /**
+     * Return {@code true} if this is the default formatter for instances of the given class. This should only be called
+     * if {@link #isClassBased()} returns true.
+     *
+     * @param clazz the class of values to be formatted.
+     * @return {@code true} if this is the default formatter for instances of the given class.
+     */
+    boolean isDefaultForClass(Class<?> clazz) {
+        return isDefaultForClass != null && isDefaultForClass.test(clazz);
+    }
+
+    /**
+     * Get the classes that this formatter is primarily intended for.
+     *
+     * @return the classes. The set is empty if none were given.
+     */
+    @NotNull
+    Set<Class<?>> getTargetClasses() {
+        return targetClasses;
+    }
+
     /**
      * Return {@code true} if this object can format the given value, otherwise {@code false}.
      *
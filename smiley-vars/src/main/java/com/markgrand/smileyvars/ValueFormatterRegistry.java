@@ -1,26 +1,46 @@
 package com.markgrand.smileyvars;
 
+import com.markgrand.smileyvars.util.ValueFormatterProvider;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.time.temporal.ChronoField;
 import java.time.temporal.TemporalAccessor;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.LinkedHashMap;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
 /**
  * Singleton to maintain a registry of {@link ValueFormatter} objects
+ * <p>Registries are shared by all of the templates for a type of database, so they are safe for concurrent use. The
+ * registered formatters are published as an immutable {@link Snapshot}. Formatting values reads the current snapshot
+ * without locking. Registering a formatter builds a new snapshot and then atomically replaces the old one.</p>
  */
 class ValueFormatterRegistry {
     private static final Logger logger = LoggerFactory.getLogger(ValueFormatterRegistry.class);
 
+    /**
+     * Classes whose default formatters are worked out when a snapshot is built, in addition to the classes that
+     * formatters are registered for.
+     */
+    private static final Class<?>[] commonValueClasses = {
+            String.class, Integer.class, Long.class, Short.class, Byte.class, Double.class, Float.class,
+            BigDecimal.class, BigInteger.class, Boolean.class, Timestamp.class, java.sql.Date.class, Date.class
+    };
+    /**
+     * The names of the built-in formatters. Provided formatters may not use these names, since they would replace the
+     * built-in formatters for all of the classes that they format.
+     */
+    static final Set<String> BUILTIN_FORMATTER_NAMES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "number", "string", "date", "timestamp", "boolean", SmileyVarsTemplate.INLINE_FORMATTER_NAME)));
     private static final ValueFormatterRegistry ansiRegistry = new ValueFormatterRegistry("ANSI");
     private static final SimpleDateFormat timestampFormatNoZone = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
     private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
@@ -30,19 +50,29 @@ class ValueFormatterRegistry {
     private static final ValueFormatterRegistry preparedStatementRegistry = new ValueFormatterRegistry()
                                                                                     .registerFormatter("preparedStatementParameter", o -> true, o -> true, o -> "?");
     private static LinkedHashMap<String, ValueFormatter> commonBuiltinFormatters;
-    private final LinkedHashMap<String, ValueFormatter> formatterMap = new LinkedHashMap<>();
     private final String name;
+    @NotNull
+    private volatile Snapshot snapshot;
 
     /**
      * This constructor is for PreparedStatements only. It does not add any of the built-in formatters.
      */
     private ValueFormatterRegistry() {
         this.name = "PreparedStatementFormatterRegistry";
+        snapshot = new Snapshot(new LinkedHashMap<>(), null);
     }
 
-    private ValueFormatterRegistry(String name) {
+    /**
+     * Construct a registry that starts with the common built-in formatters.
+     *
+     * @param name The name of the registry.
+     */
+    ValueFormatterRegistry(String name) {
         ensureCommonBuiltinFormattersAreRegistered();
-        formatterMap.putAll(commonBuiltinFormatters);
+        LinkedHashMap<String, ValueFormatter> formatterMap = new LinkedHashMap<>();
+        registerProvidedFormatters(formatterMap);
+        commonBuiltinFormatters.forEach(formatterMap::putIfAbsent);
+        snapshot = new Snapshot(formatterMap, null);
         this.name = name;
         //TODO add formatter for BitSet, Time, Calendar, Duration, Money, unique identifier/GUID
         //TODO need to account for national character set string literals and unicode string literals.
@@ -60,6 +90,23 @@ class ValueFormatterRegistry {
         }
     }
 
+    /**
+     * Register the formatters that are provided through {@link ValueFormatterProvider} services. Since providers
+     * declare the exact classes they format, these formatters are registered ahead of the built-in formatters so that
+     * the classes they declare are dispatched directly to them. {@link ProviderIndex} ensures that their names are
+     * distinct from each other and from the names of the built-in formatters.
+     *
+     * @param registryMap the map to register the formatters in.
+     */
+    private static void registerProvidedFormatters(@NotNull LinkedHashMap<String, ValueFormatter> registryMap) {
+        for (ValueFormatterProvider provider : ProviderIndex.getInstance().getFormatterProviders()) {
+            Set<Class<?>> targetClasses = new HashSet<>(provider.getTargetClasses());
+            registryMap.put(provider.getName(),
+                    ValueFormatter.classBased(targetClasses::contains, targetClasses,
+                            value -> targetClasses.contains(value.getClass()), provider::format, provider.getName()));
+        }
+    }
+
     @NotNull
     static ValueFormatterRegistry ansiInstance() {
         return ansiRegistry;
@@ -77,7 +124,7 @@ class ValueFormatterRegistry {
 
     private static void registerTimestampFormatter(@NotNull @SuppressWarnings("SameParameterValue") LinkedHashMap<String, ValueFormatter> registryMap) {
         @NotNull final String formatterName = "timestamp";
-        @NotNull Predicate<Object> isDefault = object -> object instanceof Timestamp;
+        @NotNull Predicate<Class<?>> isDefault = Timestamp.class::isAssignableFrom;
         @NotNull Predicate<Object> isApplicable = object -> object instanceof Date || object instanceof Calendar || object instanceof TemporalAccessor;
         @NotNull Function<Object, String> formattingFunction = value -> {
             @NotNull StringBuilder builder = new StringBuilder("TIMESTAMP '");
@@ -92,13 +139,14 @@ class ValueFormatterRegistry {
             }
             return builder.append('\'').toString();
         };
-        registerFormatter(formatterName, isDefault, isApplicable, formattingFunction, registryMap);
+        registryMap.put(formatterName, ValueFormatter.classBased(isDefault, Collections.emptySet(), isApplicable, formattingFunction, formatterName));
     }
 
     private static void registerDateFormatter(@NotNull @SuppressWarnings("SameParameterValue") LinkedHashMap<String, ValueFormatter> registryMap) {
         @NotNull final String formatterName = "date";
-        @NotNull Predicate<Object> isDefault = object -> object instanceof Date && !(object instanceof Timestamp)
-                                                                 || object instanceof Calendar || object instanceof TemporalAccessor;
+        @NotNull Predicate<Class<?>> isDefault = clazz -> Date.class.isAssignableFrom(clazz) && !Timestamp.class.isAssignableFrom(clazz)
+                                                                  || Calendar.class.isAssignableFrom(clazz)
+                                                                  || TemporalAccessor.class.isAssignableFrom(clazz);
         @NotNull Predicate<Object> isApplicable = object -> object instanceof Date || object instanceof Calendar || object instanceof TemporalAccessor;
         @NotNull Function<Object, String> formattingFunction = value -> {
             @NotNull StringBuilder builder = new StringBuilder("DATE '");
@@ -113,7 +161,7 @@ class ValueFormatterRegistry {
             }
             return builder.append('\'').toString();
         };
-        registerFormatter(formatterName, isDefault, isApplicable, formattingFunction, registryMap);
+        registryMap.put(formatterName, ValueFormatter.classBased(isDefault, Collections.emptySet(), isApplicable, formattingFunction, formatterName));
     }
 
     private static void formatTemporalAccessorAsTimestamp(@NotNull TemporalAccessor accessor, @NotNull StringBuilder builder) {
@@ -173,14 +221,15 @@ class ValueFormatterRegistry {
 
     @SuppressWarnings("SameParameterValue")
     private static void registerNumberFormatter(@NotNull LinkedHashMap<String, ValueFormatter> registryMap) {
-        registerFormatter("number", Number.class, Object::toString, registryMap);
+        registerFormatter("number", Number.class, NumericLiterals::format, registryMap);
     }
 
     private static void registerFormatter(@NotNull String name,
                                           @NotNull Class clazz,
                                           @NotNull Function<Object, String> formatter,
                                           @NotNull LinkedHashMap<String, ValueFormatter> map) {
-        map.put(name, new ValueFormatter(clazz::isInstance, clazz::isInstance, formatter, name));
+        @SuppressWarnings("unchecked") Predicate<Class<?>> isDefault = clazz::isAssignableFrom;
+        map.put(name, ValueFormatter.classBased(isDefault, Collections.singleton(clazz), clazz::isInstance, formatter, name));
     }
 
     private static void registerFormatter(@NotNull String name,
@@ -210,7 +259,7 @@ class ValueFormatterRegistry {
     @NotNull
     @SuppressWarnings({"WeakerAccess", "SameParameterValue"})
     ValueFormatterRegistry registerFormatter(String name, @NotNull Class clazz, Function<Object, String> formatter) {
-        return registerFormatter(name, clazz::isInstance, clazz::isInstance, formatter);
+        return registerFormatters(map -> registerFormatter(name, clazz, formatter, map));
     }
 
     /**
@@ -229,18 +278,71 @@ class ValueFormatterRegistry {
     @SuppressWarnings("WeakerAccess")
     ValueFormatterRegistry registerFormatter(String name, Predicate<Object> isDefault, Predicate<Object> isApplicable,
                                              Function<Object, String> formatter) {
-        registerFormatter(name, isDefault, isApplicable, formatter, formatterMap);
+        return registerFormatters(map -> registerFormatter(name, isDefault, isApplicable, formatter, map));
+    }
+
+    /**
+     * Copy the current formatters, let the given consumer modify the copy and then publish the modified copy as a new
+     * snapshot. Since a new formatter may change how values are formatted, the new snapshot starts with an empty
+     * literal cache.
+     *
+     * @param modifier modifies the map of formatters.
+     * @return this object
+     */
+    @NotNull
+    private synchronized ValueFormatterRegistry registerFormatters(@NotNull Consumer<LinkedHashMap<String, ValueFormatter>> modifier) {
+        Snapshot oldSnapshot = snapshot;
+        LinkedHashMap<String, ValueFormatter> map = new LinkedHashMap<>(oldSnapshot.formatterMap);
+        modifier.accept(map);
+        FormattedLiteralCache cache = oldSnapshot.literalCache;
+        snapshot = new Snapshot(map, cache == null ? null : cache.emptyCopy());
         return this;
     }
 
+    /**
+     * Memoize the literals that this registry's default formatters produce for immutable values. If a literal cache is
+     * already enabled, it is replaced.
+     *
+     * @param maxEntries The maximum number of literals to cache.
+     * @param maxWeight  The maximum total number of characters in the cached literals and the {@code String} values they
+     *                   were formatted from.
+     * @return this object
+     * @see FormattedLiteralCache
+     */
+    @NotNull
+    synchronized ValueFormatterRegistry enableLiteralCache(int maxEntries, long maxWeight) {
+        snapshot = new Snapshot(snapshot.formatterMap, new FormattedLiteralCache(maxEntries, maxWeight));
+        return this;
+    }
+
+    /**
+     * Stop memoizing formatted literals and discard any that are cached.
+     */
+    synchronized void disableLiteralCache() {
+        snapshot = new Snapshot(snapshot.formatterMap, null);
+    }
+
+    /**
+     * Get this registry's literal cache.
+     *
+     * @return the literal cache or null if literal caching is not enabled.
+     */
+    @Nullable
+    FormattedLiteralCache getLiteralCache() {
+        return snapshot.literalCache;
+    }
+
     /**
      * Format the given object as an string that is an SQL literal that represents the given object. The formatter used
      * to format the object will be determined by going through the list of formatters until one is found whose {@link
      * ValueFormatter#isApplicable(Object)} returns true for the given object.
+     * <p>If a literal cache is enabled and the value is of an immutable type, a previously formatted literal for an
+     * equal value is returned if there is one.</p>
      *
      * @param value the object to be represented as an SQL literal.
      * @return the SQL literal as a String or null if the value is null.
      * @throws NoFormatterException if there is no registered applicable formatter.
+     * @see #enableLiteralCache(int, long)
      */
     @Nullable String format(@Nullable Object value) {
         if (logger.isDebugEnabled()) {
@@ -250,16 +352,30 @@ class ValueFormatterRegistry {
             logger.debug("Formatted value to null");
             return "null";
         }
-        for (@NotNull ValueFormatter valueFormatter : formatterMap.values()) {
-            if (valueFormatter.isDefault(value)) {
-                String formattedValue = valueFormatter.format(value);
-                logger.debug("Formatted value to {}", value);
-                return formattedValue;
+        Snapshot currentSnapshot = snapshot;
+        FormattedLiteralCache cache = currentSnapshot.literalCache;
+        if (cache != null && FormattedLiteralCache.isCacheable(value)) {
+            String literal = cache.get(value);
+            if (literal == null) {
+                literal = formatWithDefaultFormatter(currentSnapshot, value);
+                cache.put(value, literal);
             }
+            return literal;
         }
-        throw new NoFormatterException("No default formatter for value that is an instance of "
-                                               + value.getClass().getName()
-                                               + "; try adding a explicit formatter name using the syntax \":var:formatterName\"");
+        return formatWithDefaultFormatter(currentSnapshot, value);
+    }
+
+    @NotNull
+    private static String formatWithDefaultFormatter(@NotNull Snapshot snapshot, @NotNull Object value) {
+        ValueFormatter valueFormatter = snapshot.getDefaultFormatter(value);
+        if (valueFormatter == null) {
+            throw new NoFormatterException("No default formatter for value that is an instance of "
+                                                   + value.getClass().getName()
+                                                   + "; try adding a explicit formatter name using the syntax \":var:formatterName\"");
+        }
+        String formattedValue = valueFormatter.format(value);
+        logger.debug("Formatted value to {}", formattedValue);
+        return formattedValue;
     }
 
     /**
@@ -275,7 +391,7 @@ class ValueFormatterRegistry {
         if (value == null) {
             return null;
         }
-        ValueFormatter valueFormatter = formatterMap.get(formatterName);
+        ValueFormatter valueFormatter = snapshot.formatterMap.get(formatterName);
         if (valueFormatter == null) {
             throw new NoFormatterException("No registered formatter is named " + formatterName);
         }
@@ -284,4 +400,86 @@ class ValueFormatterRegistry {
         }
         return valueFormatter.format(value);
     }
+
+    /**
+     * An immutable set of formatters, along with a table of which formatter is the default one for each class of
+     * values.
+     * <p>When the default formatter for a class is determined only by formatters that are class based (see {@link
+     * ValueFormatter#isClassBased()}), it is found once and then looked up in the table for all values of the class.
+     * The table entries for the classes that formatters are registered for and some common classes are computed when
+     * the snapshot is built. Entries for other classes are added the first time a value of the class is formatted.
+     * If a formatter that is not class based must be consulted, the formatters are searched for each value.</p>
+     */
+    private static final class Snapshot {
+        /**
+         * Table entry for classes whose values must be checked by each formatter's {@code isDefault} predicate.
+         */
+        private static final ValueFormatter VALUE_DEPENDENT
+                = new ValueFormatter(o -> false, o -> false, o -> null, "valueDependent");
+        /**
+         * Table entry for classes that no formatter is the default for.
+         */
+        private static final ValueFormatter NO_DEFAULT
+                = new ValueFormatter(o -> false, o -> false, o -> null, "noDefault");
+
+        private final Map<String, ValueFormatter> formatterMap;
+        private final ValueFormatter[] formatters;
+        private final ConcurrentHashMap<Class<?>, ValueFormatter> defaultFormatterByClass = new ConcurrentHashMap<>();
+        @Nullable
+        private final FormattedLiteralCache literalCache;
+
+        Snapshot(@NotNull Map<String, ValueFormatter> formatterMap, @Nullable FormattedLiteralCache literalCache) {
+            this.formatterMap = Collections.unmodifiableMap(new LinkedHashMap<>(formatterMap));
+            this.formatters = formatterMap.values().toArray(new ValueFormatter[0]);
+            this.literalCache = literalCache;
+            for (ValueFormatter formatter : formatters) {
+                for (Class<?> targetClass : formatter.getTargetClasses()) {
+                    defaultFormatterByClass.computeIfAbsent(targetClass, this::findDefaultFormatterForClass);
+                }
+            }
+            for (Class<?> clazz : commonValueClasses) {
+                defaultFormatterByClass.computeIfAbsent(clazz, this::findDefaultFormatterForClass);
+            }
+        }
+
+        /**
+         * Get the default formatter for the given value.
+         *
+         * @param value the value to be formatted.
+         * @return the default formatter or null if there is none.
+         */
+        @Nullable
+        ValueFormatter getDefaultFormatter(@NotNull Object value) {
+            Class<?> clazz = value.getClass();
+            ValueFormatter formatter = defaultFormatterByClass.get(clazz);
+            if (formatter == null) {
+                formatter = defaultFormatterByClass.computeIfAbsent(clazz, this::findDefaultFormatterForClass);
+            }
+            if (formatter == NO_DEFAULT) {
+                return null;
+            }
+            if (formatter == VALUE_DEPENDENT) {
+                for (@NotNull ValueFormatter valueFormatter : formatters) {
+                    if (valueFormatter.isDefault(value)) {
+                        return valueFormatter;
+                    }
+                }
+                return null;
+            }
+            return formatter;
+        }
+
+        @NotNull
+        private ValueFormatter findDefaultFormatterForClass(@NotNull Class<?> clazz) {
+            for (ValueFormatter formatter : formatters) {
+                if (!formatter.isClassBased()) {
+                    return VALUE_DEPENDENT;
+                }
+                if (formatter.isDefaultForClass(clazz)) {
+                    return formatter;
+                }
+            }
+            return NO_DEFAULT;
+        }
+    }
 }
@@ -0,0 +1,145 @@
+package com.markgrand.smileyvars;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A concurrent map whose keys are compared by identity and only weakly referenced, so that an entry does not keep its
+ * key from being garbage collected. Keys are compared with {@code ==} rather than {@code equals}, so objects that
+ * override {@code equals} still get their own entries. Entries whose keys have been collected are removed the next
+ * time an entry is added. Lookups do not lock.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values. Values must not refer to their keys, or the keys will never be collected.
+ * @author Mark Grand
+ */
+final class WeakIdentityMap<K, V> {
+    private final ConcurrentHashMap<Object, V> map = new ConcurrentHashMap<>();
+    private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+
+    /**
+     * Get the value for a key.
+     *
+     * @param key The key.
+     * @return the value or null if there is no entry for the key.
+     */
+    @Nullable
+    V get(@NotNull K key) {
+        return map.get(new LookupKey(key));
+    }
+
+    /**
+     * Add an entry, unless there already is one for the key.
+     *
+     * @param key   The key.
+     * @param value The value.
+     * @return the value that is now in the map for the key.
+     */
+    @NotNull
+    V putIfAbsent(@NotNull K key, @NotNull V value) {
+        expungeStaleEntries();
+        V previous = map.putIfAbsent(new WeakKey<>(key, queue), value);
+        return previous == null ? value : previous;
+    }
+
+    /**
+     * @return the number of entries, including entries whose keys have been collected but not yet removed.
+     */
+    int size() {
+        return map.size();
+    }
+
+    /**
+     * Remove all of the entries.
+     */
+    void clear() {
+        map.clear();
+        expungeStaleEntries();
+    }
+
+    private void expungeStaleEntries() {
+        Reference<? extends K> reference;
+        while ((reference = queue.poll()) != null) {
+            map.remove(reference);
+        }
+    }
+
+    /**
+     * Something that refers to a key object.
+     */
+    private interface IdentityKey {
+        @Nullable
+        Object getKey();
+    }
+
+    private static boolean sameKey(@NotNull IdentityKey identityKey, @Nullable Object other) {
+        if (identityKey == other) {
+            return true;
+        }
+        if (!(other instanceof IdentityKey)) {
+            return false;
+        }
+        Object key = identityKey.getKey();
+        return key != null && key == ((IdentityKey) other).getKey();
+    }
+
+    /**
+     * A key that is stored in the map.
+     */
+    private static final class WeakKey<K> extends WeakReference<K> implements IdentityKey {
+        private final int hashCode;
+
+        WeakKey(@NotNull K key, @NotNull ReferenceQueue<K> queue) {
+            super(key, queue);
+            hashCode = System.identityHashCode(key);
+        }
+
+        @Nullable
+        @Override
+        public Object getKey() {
+            return get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return sameKey(this, obj);
+        }
+    }
+
+    /**
+     * A key that is only used to look up a value.
+     */
+    private static final class LookupKey implements IdentityKey {
+        private final Object key;
+
+        LookupKey(@NotNull Object key) {
+            this.key = key;
+        }
+
+        @NotNull
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(key);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return sameKey(this, obj);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.markgrand.smileyvars.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+
+/**
+ * Service provider interface for binding values of additional classes to the parameters of a {@link
+ * PreparedStatement}. Implementations are discovered with {@link java.util.ServiceLoader}, so an implementation is
+ * made available by listing its fully qualified class name in a {@code
+ * META-INF/services/com.markgrand.smileyvars.util.ParameterBinderProvider} resource. Implementations must be public
+ * and have a public no-argument constructor.
+ * <p>When a value whose class is one of a binder's target classes is passed to {@code
+ * SmileyVarsPreparedStatement.setObject(String, Object)}, the binder is used to set the parameter.</p>
+ *
+ * @author Mark Grand
+ * @see ValueFormatterProvider
+ */
+public interface ParameterBinderProvider {
+    /**
+     * Get the classes that this provider binds. Subclasses of these classes are not bound by this provider unless
+     * they are also included.
+     *
+     * @return the classes of the values that this provider binds.
+     */
+    @NotNull
+    Collection<Class<?>> getTargetClasses();
+
+    /**
+     * Set the designated parameter of the given prepared statement to the given value.
+     *
+     * @param preparedStatement the prepared statement whose parameter is to be set.
+     * @param parameterIndex    the index of the parameter. The first parameter is 1.
+     * @param value             a value that is an instance of one of the classes returned by {@link
+     *                          #getTargetClasses()}.
+     * @throws SQLException if there is a problem setting the parameter.
+     */
+    void bind(@NotNull PreparedStatement preparedStatement, int parameterIndex, @NotNull Object value) throws SQLException;
+}
@@ -0,0 +1,21 @@
+package com.markgrand.smileyvars.util;
+
+import java.sql.SQLException;
+
+/**
+ * This is like Function, but throws SqlException.
+ *
+ * @param <T> the type of the argument.
+ * @param <R> the type of the result.
+ */
+@FunctionalInterface
+public interface SqlFunction<T, R> {
+    /**
+     * Apply this function to the given argument.
+     *
+     * @param t the argument.
+     * @return the result.
+     * @throws SQLException if the implementation chooses to throw the exception.
+     */
+    R apply(T t) throws SQLException;
+}
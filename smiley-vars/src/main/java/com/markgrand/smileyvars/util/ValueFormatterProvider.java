@@ -0,0 +1,45 @@
+package com.markgrand.smileyvars.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+
+/**
+ * Service provider interface for adding formatters that format values of additional classes as SQL literals.
+ * Implementations are discovered with {@link java.util.ServiceLoader}, so an implementation is made available by
+ * listing its fully qualified class name in a {@code META-INF/services/com.markgrand.smileyvars.util.ValueFormatterProvider}
+ * resource. Implementations must be public and have a public no-argument constructor.
+ * <p>A provider declares up front the exact classes that it formats. Its formatter is the default formatter for values
+ * whose class is one of those classes. It can also be explicitly selected for a variable using the syntax
+ * {@code :var:name}, where <i>name</i> is the value returned by {@link #getName()}.</p>
+ *
+ * @author Mark Grand
+ * @see ParameterBinderProvider
+ */
+public interface ValueFormatterProvider {
+    /**
+     * Get the name of the formatter that this provides.
+     *
+     * @return the formatter name.
+     */
+    @NotNull
+    String getName();
+
+    /**
+     * Get the classes that this provider formats. Subclasses of these classes are not formatted by this provider
+     * unless they are also included.
+     *
+     * @return the classes of the values that this provider formats.
+     */
+    @NotNull
+    Collection<Class<?>> getTargetClasses();
+
+    /**
+     * Format the given value as an SQL literal.
+     *
+     * @param value a value that is an instance of one of the classes returned by {@link #getTargetClasses()}.
+     * @return the SQL literal.
+     */
+    @NotNull
+    String format(@NotNull Object value);
+}
@@ -0,0 +1,74 @@
+package com.markgrand.smileyvars;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BeanAccessorsTest {
+    @SuppressWarnings("unused")
+    public static class PublicBean {
+        private final int x;
+        private String comment = "field";
+        private final boolean even;
+
+        public PublicBean(int x) {
+            this.x = x;
+            this.even = x % 2 == 0;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public boolean isEven() {
+            return even;
+        }
+
+        public String getURL() {
+            return "http://example.com";
+        }
+
+        public String get() {
+            return "not a property";
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static class PrivateBean extends PublicBean {
+        private final Long y;
+
+        PrivateBean(int x, Long y) {
+            super(x);
+            this.y = y;
+        }
+
+        public Long getY() {
+            return y;
+        }
+    }
+
+    @Test
+    void publicBean() {
+        Map<String, Function<Object, Object>> accessors = BeanAccessors.forClass(PublicBean.class);
+        PublicBean bean = new PublicBean(4);
+        assertEquals(4, accessors.get("x").apply(bean));
+        assertEquals(true, accessors.get("even").apply(bean));
+        assertEquals("field", accessors.get("comment").apply(bean));
+        assertEquals("http://example.com", accessors.get("URL").apply(bean));
+        assertFalse(accessors.containsKey(""));
+        assertFalse(accessors.containsKey("class"));
+        assertSame(accessors, BeanAccessors.forClass(PublicBean.class));
+    }
+
+    @Test
+    void privateBean() {
+        Map<String, Function<Object, Object>> accessors = BeanAccessors.forClass(PrivateBean.class);
+        PrivateBean bean = new PrivateBean(3, 9L);
+        assertEquals(3, accessors.get("x").apply(bean));
+        assertEquals(9L, accessors.get("y").apply(bean));
+        assertEquals(false, accessors.get("even").apply(bean));
+    }
+}
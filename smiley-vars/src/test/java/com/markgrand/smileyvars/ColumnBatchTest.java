@@ -0,0 +1,114 @@
+package com.markgrand.smileyvars;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnBatchTest {
+    private Connection h2Connection;
+    private Statement stmt;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        h2Connection = DriverManager.getConnection("jdbc:h2:mem:columnbatch", "sa", "");
+        stmt = h2Connection.createStatement();
+        stmt.execute("CREATE TABLE SALE (ID BIGINT, AMOUNT DECIMAL(10,2), QTY DECIMAL(10,0), RATE DOUBLE, "
+                             + "PAID BOOLEAN, REGION VARCHAR(20), SOLD DATE)");
+        stmt.execute("INSERT INTO SALE VALUES (1, 2.50, 3, 0.5, TRUE, 'East', DATE '2020-01-02')");
+        stmt.execute("INSERT INTO SALE VALUES (2, NULL, 4, NULL, FALSE, 'West', NULL)");
+        stmt.execute("INSERT INTO SALE VALUES (3, 7.25, NULL, 1.5, NULL, 'East', DATE '2020-01-03')");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        stmt.execute("DROP TABLE SALE");
+        h2Connection.close();
+    }
+
+    @Test
+    void fill() throws Exception {
+        try (ResultSet rs = stmt.executeQuery("SELECT * FROM SALE ORDER BY ID")) {
+            ColumnBatch batch = new ColumnBatch(rs.getMetaData(), 3);
+            while (rs.next()) {
+                batch.addRow(rs);
+            }
+            assertTrue(batch.isFull());
+            assertEquals(3, batch.getRowCount());
+            assertEquals(7, batch.getColumnCount());
+            assertEquals(ColumnBatch.ColumnType.LONG, batch.getColumnType(batch.findColumn("id")));
+            assertEquals(ColumnBatch.ColumnType.DECIMAL, batch.getColumnType(1));
+            assertEquals(ColumnBatch.ColumnType.DOUBLE, batch.getColumnType(3));
+            assertEquals(ColumnBatch.ColumnType.LONG, batch.getColumnType(2));
+            assertEquals(ColumnBatch.ColumnType.STRING, batch.getColumnType(5));
+            assertEquals(ColumnBatch.ColumnType.OBJECT, batch.getColumnType(6));
+            assertArrayEquals(new long[]{1, 2, 3}, batch.getLongs(0));
+            assertArrayEquals(new long[]{250, 0, 725}, batch.getUnscaledLongs(1));
+            assertEquals(2, batch.getScale(1));
+            assertEquals(new BigDecimal("7.25"), batch.getBigDecimal(1, 2));
+            assertNull(batch.getBigDecimal(1, 1));
+            assertArrayEquals(new double[]{0.5, 0, 1.5}, batch.getDoubles(3));
+            assertTrue(batch.isNull(1, 1));
+            assertFalse(batch.isNull(1, 0));
+            assertArrayEquals(new long[]{3, 4, 0}, batch.getLongs(2));
+            assertEquals(4L, batch.getNullBitmap(2)[0]);
+            assertArrayEquals(new long[]{1, 0, 0}, batch.getLongs(4));
+            assertTrue(batch.isNull(4, 2));
+            assertArrayEquals(new int[]{0, 1, 0}, batch.getStringCodes(5));
+            assertEquals(Arrays.asList("East", "West"), batch.getDictionary(5));
+            assertEquals("West", batch.getString(5, 1));
+            assertEquals(Date.valueOf("2020-01-02"), batch.getObjects(6)[0]);
+            assertThrows(SmileyVarsException.class, () -> batch.getDoubles(0));
+            assertThrows(SmileyVarsException.class, () -> batch.getLongs(1));
+            assertThrows(SmileyVarsException.class, () -> batch.getUnscaledLongs(2));
+            assertThrows(SmileyVarsException.class, () -> batch.findColumn("price"));
+
+            batch.clear();
+            assertEquals(0, batch.getRowCount());
+            assertFalse(batch.isNull(1, 1));
+            assertTrue(batch.getDictionary(5).isEmpty());
+            assertNull(batch.getObjects(6)[0]);
+        }
+    }
+
+    @Test
+    void wideDecimals() throws Exception {
+        stmt.execute("CREATE TABLE TOTAL (BIG DECIMAL(30,2), ANY_SIZE NUMERIC)");
+        stmt.execute("INSERT INTO TOTAL VALUES (1234567890123456789012.34, 12345678901234567890123)");
+        stmt.execute("INSERT INTO TOTAL VALUES (NULL, NULL)");
+        try (ResultSet rs = stmt.executeQuery("SELECT * FROM TOTAL")) {
+            ColumnBatch batch = new ColumnBatch(rs.getMetaData(), 2);
+            while (rs.next()) {
+                batch.addRow(rs);
+            }
+            assertEquals(ColumnBatch.ColumnType.OBJECT, batch.getColumnType(0));
+            assertEquals(ColumnBatch.ColumnType.OBJECT, batch.getColumnType(1));
+            assertEquals(new BigDecimal("1234567890123456789012.34"), batch.getObjects(0)[0]);
+            assertEquals(0, new BigDecimal("12345678901234567890123").compareTo((BigDecimal) batch.getObjects(1)[0]));
+            assertTrue(batch.isNull(0, 1));
+            assertTrue(batch.isNull(1, 1));
+        }
+    }
+
+    @Test
+    void wideBatch() throws Exception {
+        try (ResultSet rs = stmt.executeQuery("SELECT RATE FROM SALE WHERE ID = 2")) {
+            ColumnBatch batch = new ColumnBatch(rs.getMetaData(), 130);
+            assertTrue(rs.next());
+            for (int i = 0; i < 130; i++) {
+                batch.addRow(rs);
+            }
+            assertTrue(batch.isNull(0, 129));
+            assertEquals(3, batch.getNullBitmap(0).length);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.markgrand.smileyvars;
+
+import com.mockrunner.mock.jdbc.MockConnection;
+import com.mockrunner.mock.jdbc.MockDatabaseMetaData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseInfoTest {
+    @AfterEach
+    void clearCache() {
+        DatabaseInfo.clearCache();
+    }
+
+    private static MockConnection mockConnection(String productName, String url) throws SQLException {
+        MockDatabaseMetaData metaData = new MockDatabaseMetaData();
+        metaData.setDatabaseProductName(productName);
+        metaData.setURL(url);
+        metaData.setSupportsBatchUpdates(true);
+        MockConnection conn = new MockConnection();
+        conn.setMetaData(metaData);
+        return conn;
+    }
+
+    @Test
+    void forConnection() throws Exception {
+        DatabaseInfo info = DatabaseInfo.forConnection(mockConnection("Microsoft SQL Server", "jdbc:sqlserver://host1"));
+        assertEquals(DatabaseType.SQL_SERVER, info.getDatabaseType());
+        assertEquals("Microsoft SQL Server", info.getProductName());
+        assertTrue(info.isBatchUpdatesSupported());
+        assertEquals(2100, info.getMaxParameterCount());
+    }
+
+    @Test
+    void unknownMaxParameterCount() throws Exception {
+        DatabaseInfo info = DatabaseInfo.forConnection(mockConnection("H2", "jdbc:h2:mem:info"));
+        assertEquals(DatabaseType.ANSI, info.getDatabaseType());
+        assertEquals(0, info.getMaxParameterCount());
+    }
+
+    @Test
+    void streaming() throws Exception {
+        DatabaseInfo mysql = DatabaseInfo.forConnection(mockConnection("MySQL", "jdbc:mysql://host1/db"));
+        assertEquals(Integer.MIN_VALUE, mysql.getStreamingFetchSize(500));
+        assertFalse(mysql.isStreamingTransactional());
+        DatabaseInfo postgresql = DatabaseInfo.forConnection(mockConnection("PostgreSQL", "jdbc:postgresql://host1/db"));
+        assertEquals(500, postgresql.getStreamingFetchSize(500));
+        assertTrue(postgresql.isStreamingTransactional());
+    }
+
+    @Test
+    void cachedByUrl() throws Exception {
+        DatabaseInfo info = DatabaseInfo.forConnection(mockConnection("PostgreSQL", "jdbc:postgresql://host1/db"));
+        assertSame(info, DatabaseInfo.forConnection(mockConnection("PostgreSQL", "jdbc:postgresql://host1/db")));
+        assertNotSame(info, DatabaseInfo.forConnection(mockConnection("PostgreSQL", "jdbc:postgresql://host2/db")));
+    }
+
+    @Test
+    void notCachedWithoutUrl() throws Exception {
+        DatabaseInfo info = DatabaseInfo.forConnection(mockConnection("Oracle", null));
+        assertEquals(DatabaseType.ORACLE, info.getDatabaseType());
+        assertNotSame(info, DatabaseInfo.forConnection(mockConnection("Oracle", null)));
+    }
+
+    @Test
+    void cachedByDataSource() throws Exception {
+        AtomicInteger connectionCount = new AtomicInteger();
+        DataSource ds = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    if ("getConnection".equals(method.getName())) {
+                        connectionCount.incrementAndGet();
+                        return mockConnection("PostgreSQL", "jdbc:postgresql://host3/db");
+                    }
+                    if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    }
+                    if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        DatabaseInfo info = DatabaseInfo.forDataSource(ds);
+        assertEquals(DatabaseType.POSTGRESQL, info.getDatabaseType());
+        assertSame(info, DatabaseInfo.forDataSource(ds));
+        SmileyVarsTemplate template = SmileyVarsTemplate.template(ds, "SELECT * FROM foo WHERE 1=1 (: AND x=:x :)");
+        assertEquals("SELECT * FROM foo WHERE 1=1 ", template.apply(new HashMap<>()));
+        assertEquals(1, connectionCount.get());
+        Connection conn = mockConnection("Oracle", "jdbc:postgresql://host3/db");
+        assertSame(info, DatabaseInfo.forConnection(conn));
+    }
+
+    @Test
+    void dataSourcesComparedByIdentity() throws Exception {
+        AtomicInteger connectionCount = new AtomicInteger();
+        InvocationHandler handler = (proxy, method, args) -> {
+            if ("getConnection".equals(method.getName())) {
+                connectionCount.incrementAndGet();
+                return mockConnection("PostgreSQL", "jdbc:postgresql://host4/db");
+            }
+            if ("hashCode".equals(method.getName())) {
+                return 1;
+            }
+            if ("equals".equals(method.getName())) {
+                return true;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        };
+        DataSource ds1 = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class}, handler);
+        DataSource ds2 = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class}, handler);
+        DatabaseInfo.forDataSource(ds1);
+        DatabaseInfo.forDataSource(ds2);
+        DatabaseInfo.forDataSource(ds1);
+        assertEquals(2, connectionCount.get());
+    }
+
+    @Test
+    void cachedByConnection() throws Exception {
+        AtomicInteger metaDataCount = new AtomicInteger();
+        MockConnection conn = new MockConnection() {
+            @Override
+            public DatabaseMetaData getMetaData() throws SQLException {
+                metaDataCount.incrementAndGet();
+                return super.getMetaData();
+            }
+        };
+        MockDatabaseMetaData metaData = new MockDatabaseMetaData();
+        metaData.setDatabaseProductName("H2");
+        metaData.setURL("jdbc:h2:mem:cachedByConnection");
+        conn.setMetaData(metaData);
+        DatabaseInfo info = DatabaseInfo.forConnection(conn);
+        assertSame(info, DatabaseInfo.forConnection(conn));
+        assertEquals(1, metaDataCount.get());
+    }
+}
@@ -0,0 +1,106 @@
+package com.markgrand.smileyvars;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormattedLiteralCacheTest {
+    @Test
+    void isCacheable() {
+        assertTrue(FormattedLiteralCache.isCacheable("abc"));
+        assertTrue(FormattedLiteralCache.isCacheable(42));
+        assertTrue(FormattedLiteralCache.isCacheable(42L));
+        assertTrue(FormattedLiteralCache.isCacheable(new BigDecimal("1.5")));
+        assertTrue(FormattedLiteralCache.isCacheable(UUID.randomUUID()));
+        assertTrue(FormattedLiteralCache.isCacheable(TokenType.VAR));
+        assertFalse(FormattedLiteralCache.isCacheable(new Date()));
+        assertFalse(FormattedLiteralCache.isCacheable(new StringBuilder("abc")));
+    }
+
+    @Test
+    void hitAndMiss() {
+        FormattedLiteralCache cache = new FormattedLiteralCache(10, 100);
+        assertNull(cache.get("abc"));
+        cache.put("abc", "'abc'");
+        assertEquals("'abc'", cache.get("abc"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate());
+        assertEquals(1, cache.size());
+        assertEquals(8, cache.getWeight());
+    }
+
+    @Test
+    void entryBound() {
+        FormattedLiteralCache cache = new FormattedLiteralCache(2, 1000);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        assertEquals("1", cache.get(1));
+        cache.put(3, "3");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(0, cache.getRejectionCount());
+        assertEquals("1", cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals("3", cache.get(3));
+    }
+
+    @Test
+    void changingValuesAreAdmitted() {
+        FormattedLiteralCache cache = new FormattedLiteralCache(10, 1000);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, Integer.toString(i));
+        }
+        assertEquals(10, cache.size());
+        assertEquals(90, cache.getEvictionCount());
+        assertEquals("99", cache.get(99));
+        assertNull(cache.get(0));
+    }
+
+    @Test
+    void weightBound() {
+        FormattedLiteralCache cache = new FormattedLiteralCache(100, 12);
+        cache.put("abc", "'abc'");
+        assertEquals(8, cache.getWeight());
+        cache.put("de", "'de'");
+        assertEquals(1, cache.size());
+        assertEquals(6, cache.getWeight());
+        assertEquals(1, cache.getEvictionCount());
+        cache.put("defghij", "'defghij'");
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getRejectionCount());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    void badBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new FormattedLiteralCache(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new FormattedLiteralCache(10, 0));
+    }
+
+    @Test
+    void templateUsesCache() {
+        DatabaseType.POSTGRESQL.enableLiteralCache(100, 1000);
+        try {
+            SmileyVarsTemplate template = SmileyVarsTemplate.template(DatabaseType.POSTGRESQL, "SELECT * FROM t WHERE s=:s AND n=:n");
+            Map<String, Object> values = new HashMap<>();
+            values.put("s", "can't");
+            values.put("n", 7);
+            assertEquals("SELECT * FROM t WHERE s='can''t' AND n=7", template.apply(values));
+            assertEquals("SELECT * FROM t WHERE s='can''t' AND n=7", template.apply(values));
+            FormattedLiteralCache cache = DatabaseType.POSTGRESQL.getLiteralCache();
+            assertNotNull(cache);
+            assertEquals(2, cache.getHitCount());
+            assertEquals(2, cache.getMissCount());
+            assertEquals(2, cache.size());
+        } finally {
+            DatabaseType.POSTGRESQL.disableLiteralCache();
+        }
+        assertNull(DatabaseType.POSTGRESQL.getLiteralCache());
+    }
+}
@@ -0,0 +1,50 @@
+package com.markgrand.smileyvars;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongKeyedMapTest {
+    @Test
+    void zeroKey() {
+        LongKeyedMap<String> map = new LongKeyedMap<>();
+        assertNull(map.get(0));
+        assertNull(map.put(0, "zero"));
+        assertEquals("zero", map.get(0));
+        assertEquals("zero", map.put(0, "nothing"));
+        assertEquals(1, map.size());
+        assertEquals("nothing", map.remove(0));
+        assertNull(map.get(0));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void randomOperations() throws Exception {
+        LongKeyedMap<Long> map = new LongKeyedMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(31);
+        for (int i = 0; i < 200_000; i++) {
+            // A small key range gives many collisions, removals and re-insertions.
+            long key = random.nextBoolean() ? random.nextInt(512) : random.nextInt(512) * 0x100000000L;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        List<Long> values = new ArrayList<>();
+        map.forEachValue(values::add);
+        assertEquals(new HashSet<>(expected.values()), new HashSet<>(values));
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(values.get(0)));
+    }
+}
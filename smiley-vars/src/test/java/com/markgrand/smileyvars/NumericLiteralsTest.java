@@ -0,0 +1,116 @@
+package com.markgrand.smileyvars;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumericLiteralsTest {
+    private static final int SAMPLES = 50_000;
+
+    @Test
+    void doubleExamples() {
+        assertEquals("0.0", NumericLiterals.format(0.0));
+        assertEquals("-0.0", NumericLiterals.format(-0.0));
+        assertEquals("1.0", NumericLiterals.format(1.0));
+        assertEquals("100.0", NumericLiterals.format(100.0));
+        assertEquals("-1234.125", NumericLiterals.format(-1234.125));
+        assertEquals("0.1", NumericLiterals.format(0.1));
+        assertEquals("0.3", NumericLiterals.format(0.3));
+        assertEquals("0.30000000000000004", NumericLiterals.format(0.1 + 0.2));
+        assertEquals("0.0001", NumericLiterals.format(1e-4));
+        assertEquals("1.0E-8", NumericLiterals.format(1e-8));
+        assertEquals("100000000000000000000.0", NumericLiterals.format(1e20));
+        assertEquals("1.0E21", NumericLiterals.format(1e21));
+        assertEquals("1.7976931348623157E308", NumericLiterals.format(Double.MAX_VALUE));
+        assertEquals("5.0E-324", NumericLiterals.format(Double.MIN_VALUE));
+    }
+
+    @Test
+    void floatExamples() {
+        assertEquals("0.1", NumericLiterals.format(0.1F));
+        assertEquals("-234.125", NumericLiterals.format(-234.125F));
+        assertEquals("3.4028235E38", NumericLiterals.format(Float.MAX_VALUE));
+        assertEquals("1.0E-45", NumericLiterals.format(Float.MIN_VALUE));
+    }
+
+    @Test
+    void notFinite() {
+        assertThrows(SmileyVarsException.class, () -> NumericLiterals.format(Double.NaN));
+        assertThrows(SmileyVarsException.class, () -> NumericLiterals.format(Double.POSITIVE_INFINITY));
+        assertThrows(SmileyVarsException.class, () -> NumericLiterals.format(Float.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    void randomDoubles() {
+        Random random = new Random(20261018L);
+        for (int i = 0; i < SAMPLES; i++) {
+            double value = i % 2 == 0 ? Double.longBitsToDouble(random.nextLong()) : random.nextDouble() * Math.pow(10, random.nextInt(40) - 20);
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                continue;
+            }
+            String literal = NumericLiterals.format(value);
+            assertEquals(Double.doubleToLongBits(value), Double.doubleToLongBits(Double.parseDouble(literal)), literal);
+            int digits = significantDigits(literal);
+            assertTrue(digits <= significantDigits(Double.toString(value)), literal);
+            if (digits > 1) {
+                BigDecimal exact = new BigDecimal(value);
+                MathContext shorter = new MathContext(digits - 1, RoundingMode.FLOOR);
+                assertNotEquals(value, exact.round(shorter).doubleValue(), literal);
+                shorter = new MathContext(digits - 1, RoundingMode.CEILING);
+                assertNotEquals(value, exact.round(shorter).doubleValue(), literal);
+            }
+        }
+    }
+
+    @Test
+    void randomFloats() {
+        Random random = new Random(20261019L);
+        for (int i = 0; i < SAMPLES; i++) {
+            float value = Float.intBitsToFloat(random.nextInt());
+            if (Float.isNaN(value) || Float.isInfinite(value)) {
+                continue;
+            }
+            String literal = NumericLiterals.format(value);
+            assertEquals(Float.floatToIntBits(value), Float.floatToIntBits(Float.parseFloat(literal)), literal);
+            int digits = significantDigits(literal);
+            assertTrue(digits <= significantDigits(Float.toString(value)), literal);
+            if (digits > 1) {
+                BigDecimal exact = new BigDecimal(value);
+                MathContext shorter = new MathContext(digits - 1, RoundingMode.FLOOR);
+                assertNotEquals(value, exact.round(shorter).floatValue(), literal);
+                shorter = new MathContext(digits - 1, RoundingMode.CEILING);
+                assertNotEquals(value, exact.round(shorter).floatValue(), literal);
+            }
+        }
+    }
+
+    @Test
+    void bigDecimal() {
+        assertEquals("1.5", NumericLiterals.format(new BigDecimal("1.5")));
+        assertEquals("1500", NumericLiterals.format(new BigDecimal("1.5E3")));
+        assertEquals("0.00015", NumericLiterals.format(new BigDecimal("1.5E-4")));
+        assertEquals("-0.5", NumericLiterals.format(new BigDecimal("-0.5")));
+        assertEquals("0", NumericLiterals.format(new BigDecimal("0E+3")));
+        assertEquals("0.000", NumericLiterals.format(new BigDecimal("0.000")));
+        Random random = new Random(20261020L);
+        for (int i = 0; i < SAMPLES; i++) {
+            BigDecimal value = BigDecimal.valueOf(random.nextLong() >> random.nextInt(64), random.nextInt(40) - 20);
+            assertEquals(value.toPlainString(), NumericLiterals.format(value));
+        }
+        BigDecimal big = new BigDecimal("12345678901234567890123.456");
+        assertEquals(big.toPlainString(), NumericLiterals.format(big));
+    }
+
+    private static int significantDigits(String literal) {
+        int exponentIndex = literal.indexOf('E');
+        String mantissa = exponentIndex < 0 ? literal : literal.substring(0, exponentIndex);
+        String digits = mantissa.replace("-", "").replace(".", "");
+        digits = digits.replaceFirst("^0+", "").replaceFirst("0+$", "");
+        return Math.max(1, digits.length());
+    }
+}
@@ -0,0 +1,60 @@
+package com.markgrand.smileyvars;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParameterizedSqlTest {
+    private Connection h2Connection;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        h2Connection = DriverManager.getConnection("jdbc:h2:mem:test", "sa", "");
+        Statement stmt = h2Connection.createStatement();
+        stmt.execute("CREATE TABLE IF NOT EXISTS SQUARE (X INT PRIMARY KEY, Y INT, COMNT VARCHAR(400))");
+        stmt.execute("MERGE INTO SQUARE (X,Y) VALUES (2,4);");
+        stmt.execute("MERGE INTO SQUARE (X,Y) VALUES (3,9);");
+        h2Connection.commit();
+        stmt.close();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        h2Connection.close();
+    }
+
+    @Test
+    void prepare() throws Exception {
+        SmileyVarsTemplate template = SmileyVarsTemplate.template(DatabaseType.ANSI,
+                "SELECT x,y FROM square WHERE 1=1 (: AND x=:x :)(: AND y=:y:inline :)(: AND comnt=:c :)");
+        Map<String, Object> values = new HashMap<>();
+        values.put("x", BigInteger.valueOf(3));
+        values.put("y", 9);
+        ParameterizedSql parameterizedSql = template.applyParameterized(values);
+        assertEquals("SELECT x,y FROM square WHERE 1=1  AND x=?  AND y=9 ", parameterizedSql.getSql());
+        try (PreparedStatement pstmt = parameterizedSql.prepare(h2Connection);
+             ResultSet rs = pstmt.executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals(3, rs.getInt("x"));
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    void sqlTypeOf() {
+        assertEquals(Types.VARCHAR, ParameterizedSql.sqlTypeOf("abc"));
+        assertEquals(Types.BIGINT, ParameterizedSql.sqlTypeOf(1L));
+        assertEquals(Types.NUMERIC, ParameterizedSql.sqlTypeOf(BigInteger.ONE));
+        assertEquals(Types.DATE, ParameterizedSql.sqlTypeOf(LocalDate.now()));
+        assertEquals(Types.TIMESTAMP, ParameterizedSql.sqlTypeOf(new java.util.Date()));
+        assertEquals(Types.OTHER, ParameterizedSql.sqlTypeOf(new Object()));
+    }
+}
@@ -0,0 +1,56 @@
+package com.markgrand.smileyvars;
+
+import com.markgrand.smileyvars.util.ParameterBinderProvider;
+import com.markgrand.smileyvars.util.ValueFormatterProvider;
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Formatter and binder provider used to test the provider services.
+ */
+public class PointProvider implements ValueFormatterProvider, ParameterBinderProvider {
+    @NotNull
+    @Override
+    public String getName() {
+        return "point";
+    }
+
+    @NotNull
+    @Override
+    public Collection<Class<?>> getTargetClasses() {
+        return Collections.singleton(Point.class);
+    }
+
+    @NotNull
+    @Override
+    public String format(@NotNull Object value) {
+        return "'" + value + "'";
+    }
+
+    @Override
+    public void bind(@NotNull PreparedStatement preparedStatement, int parameterIndex, @NotNull Object value) throws SQLException {
+        preparedStatement.setString(parameterIndex, value.toString());
+    }
+
+    /**
+     * A value class that no built-in formatter can format.
+     */
+    static class Point {
+        private final int x;
+        private final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + x + "," + y + ")";
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.markgrand.smileyvars;
+
+import com.markgrand.smileyvars.util.ValueFormatterProvider;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProviderIndexTest {
+    @Test
+    void formatterProviders() {
+        assertEquals(1, ProviderIndex.getInstance().getFormatterProviders().size());
+        assertEquals("point", ProviderIndex.getInstance().getFormatterProviders().get(0).getName());
+    }
+
+    private static ValueFormatterProvider provider(String name, Class<?> targetClass) {
+        return new ValueFormatterProvider() {
+            @NotNull
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @NotNull
+            @Override
+            public Collection<Class<?>> getTargetClasses() {
+                return Collections.singleton(targetClass);
+            }
+
+            @NotNull
+            @Override
+            public String format(@NotNull Object value) {
+                return "'" + value + "'";
+            }
+        };
+    }
+
+    @Test
+    void formatterNameCollisions() {
+        ValueFormatterProvider point = provider("point", PointProvider.Point.class);
+        List<ValueFormatterProvider> providers = ProviderIndex.indexFormatterProviders(Arrays.asList(
+                provider("number", BitSet.class), point, provider("point", UUID.class), provider("inline", Currency.class)));
+        assertEquals(Collections.singletonList(point), providers);
+    }
+
+    @Test
+    void binderProvider() {
+        assertNotNull(ProviderIndex.getInstance().getBinderProvider(PointProvider.Point.class));
+        assertNull(ProviderIndex.getInstance().getBinderProvider(String.class));
+    }
+
+    @Test
+    void providedFormatter() {
+        SmileyVarsTemplate template = SmileyVarsTemplate.template(DatabaseType.ANSI, "SELECT * FROM t WHERE p=:p (: AND q=:q:point :)");
+        Map<String, Object> values = new HashMap<>();
+        values.put("p", new PointProvider.Point(1, 2));
+        values.put("q", new PointProvider.Point(3, 4));
+        assertEquals("SELECT * FROM t WHERE p='(1,2)'  AND q='(3,4)' ", template.apply(values));
+    }
+
+    @Test
+    void providedBinder() throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:test", "sa", "");
+             SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(conn, "SELECT :p")) {
+            svps.setObject("p", new PointProvider.Point(5, 6));
+            ResultSet rs = svps.executeQuery();
+            assertTrue(rs.next());
+            assertEquals("(5,6)", rs.getString(1));
+        }
+    }
+}
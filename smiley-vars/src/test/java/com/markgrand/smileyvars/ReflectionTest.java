@@ -0,0 +1,28 @@
+package com.markgrand.smileyvars;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReflectionTest {
+    public static class PublicNested {
+    }
+
+    private static class PrivateNested {
+    }
+
+    @Test
+    void isVisiblePublicClass() {
+        assertTrue(Reflection.isVisiblePublicClass(String.class));
+        assertTrue(Reflection.isVisiblePublicClass(java.util.Map.Entry.class));
+        assertFalse(Reflection.isVisiblePublicClass(PrivateNested.class));
+        // The class that it is nested in is not public.
+        assertFalse(Reflection.isVisiblePublicClass(PublicNested.class));
+    }
+
+    @Test
+    void recordComponentsOfOtherClasses() {
+        assertNull(Reflection.recordComponents(PublicNested.class));
+        assertNull(Reflection.recordComponents(String.class));
+    }
+}
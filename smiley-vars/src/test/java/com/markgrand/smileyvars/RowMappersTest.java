@@ -0,0 +1,105 @@
+package com.markgrand.smileyvars;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RowMappersTest {
+    private Connection h2Connection;
+    private Statement stmt;
+
+    @SuppressWarnings("unused")
+    public static class PublicItem {
+        private int itemId;
+        private String itemName;
+        private BigDecimal price;
+        private Long stock = -1L;
+
+        public void setItemId(int itemId) {
+            this.itemId = itemId;
+        }
+
+        public void setItemName(String itemName) {
+            this.itemName = itemName;
+        }
+
+        public void setPrice(BigDecimal price) {
+            this.price = price;
+        }
+
+        public void setStock(Long stock) {
+            this.stock = stock;
+        }
+    }
+
+    private static class PrivateItem {
+        private long itemId;
+        private String itemName;
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        h2Connection = DriverManager.getConnection("jdbc:h2:mem:rowmappers", "sa", "");
+        stmt = h2Connection.createStatement();
+        stmt.execute("CREATE TABLE ITEM (ITEM_ID INT PRIMARY KEY, ITEM_NAME VARCHAR(40), PRICE DECIMAL(9,2), STOCK BIGINT)");
+        stmt.execute("INSERT INTO ITEM VALUES (1, 'Widget', 2.50, NULL)");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        stmt.execute("DROP TABLE ITEM");
+        h2Connection.close();
+    }
+
+    @Test
+    void publicBean() throws Exception {
+        RowMappers.CompiledRowMapper<PublicItem> mapper = RowMappers.compile(PublicItem.class);
+        assertFalse(mapper.isResolved());
+        try (ResultSet rs = stmt.executeQuery("SELECT * FROM ITEM")) {
+            assertTrue(rs.next());
+            PublicItem item = mapper.apply(rs);
+            assertTrue(mapper.isResolved());
+            assertEquals(1, item.itemId);
+            assertEquals("Widget", item.itemName);
+            assertEquals(new BigDecimal("2.50"), item.price);
+            assertEquals(-1L, item.stock);
+        }
+    }
+
+    @Test
+    void privateBean() throws Exception {
+        try (ResultSet rs = stmt.executeQuery("SELECT item_name, item_id FROM ITEM")) {
+            assertTrue(rs.next());
+            PrivateItem item = RowMappers.compile(PrivateItem.class).apply(rs);
+            assertEquals(1L, item.itemId);
+            assertEquals("Widget", item.itemName);
+        }
+    }
+
+    @Test
+    void scalar() throws Exception {
+        try (ResultSet rs = stmt.executeQuery("SELECT STOCK, ITEM_ID FROM ITEM")) {
+            assertTrue(rs.next());
+            assertNull(RowMappers.compile(Long.class).apply(rs));
+            assertEquals(0L, RowMappers.compile(long.class).apply(rs));
+        }
+    }
+
+    @Test
+    void noMatchingColumns() throws Exception {
+        try (ResultSet rs = stmt.executeQuery("SELECT 1 AS ONE FROM ITEM")) {
+            assertTrue(rs.next());
+            RowMappers.CompiledRowMapper<PublicItem> mapper = RowMappers.compile(PublicItem.class);
+            assertThrows(SmileyVarsException.class, () -> mapper.apply(rs));
+        }
+        assertThrows(SmileyVarsException.class, () -> RowMappers.compile(Runnable.class));
+    }
+}
@@ -1,5 +1,6 @@
 package com.markgrand.smileyvars;
 
+import com.markgrand.smileyvars.util.SqlFunction;
 import com.mockrunner.mock.jdbc.*;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -9,11 +10,18 @@ import javax.sql.rowset.serial.SerialBlob;
 import javax.sql.rowset.serial.SerialClob;
 import java.awt.*;
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
 import java.net.URL;
+import java.sql.Date;
 import java.sql.*;
-import java.util.GregorianCalendar;
-import java.util.Set;
+import java.util.List;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -476,6 +484,636 @@ class SmileyVarsPreparedStatementTest {
         }
     }
 
+    @Test
+    void partlyBoundBracket() throws Exception {
+        try (SmileyVarsPreparedStatement svps
+                     = new SmileyVarsPreparedStatement(h2Connection, "SELECT x FROM square WHERE 1=1 (: AND y=:y AND comnt=:c :)(: AND x=:x :)")) {
+            svps.setInt("y", 4);
+            svps.setInt("x", -2);
+            ResultSet rs = svps.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(-2, rs.getInt(1));
+            assertFalse(rs.next());
+            rs.close();
+            svps.setInt("x", 2);
+            rs = svps.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+            assertFalse(rs.next());
+            rs.close();
+        }
+    }
+
+    @Test
+    void moreThan64Variables() throws Exception {
+        StringBuilder sql = new StringBuilder("SELECT x FROM square WHERE 1=1");
+        for (int i = 0; i < 70; i++) {
+            sql.append(" (: AND x<>:v").append(i).append(" :)");
+        }
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection, sql.toString())) {
+            svps.setInt("v3", -3);
+            svps.setInt("v68", 4);
+            ResultSet rs = svps.executeQuery();
+            assertHasRows(rs, 4);
+            assertFalse(rs.next());
+            rs.close();
+            svps.clearParameter("v68");
+            rs = svps.executeQuery();
+            assertHasRows(rs, 5);
+            assertFalse(rs.next());
+            rs.close();
+        }
+    }
+
+    @Test
+    void onlyChangedValuesAreRebound() throws Exception {
+        List<String> setterCalls = new ArrayList<>();
+        Connection connection = recordingConnection(h2Connection, setterCalls);
+        try (SmileyVarsPreparedStatement svps
+                     = new SmileyVarsPreparedStatement(connection, "SELECT x,y FROM square WHERE x>:x AND y>:y")) {
+            svps.setInt("x", 0).setInt("y", 0).setFetchSize(10);
+            svps.executeQuery().close();
+            assertEquals(3, setterCalls.size());
+            setterCalls.clear();
+            svps.executeQuery().close();
+            assertEquals(0, setterCalls.size());
+            svps.setInt("x", 2);
+            ResultSet rs = svps.executeQuery();
+            assertEquals(Collections.singletonList("setInt"), setterCalls);
+            assertHasRows(rs, 2);
+            assertFalse(rs.next());
+            rs.close();
+        }
+    }
+
+    @Test
+    void streamsAreAlwaysRebound() throws Exception {
+        List<String> setterCalls = new ArrayList<>();
+        Connection connection = recordingConnection(h2Connection, setterCalls);
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(connection, "SELECT :x")) {
+            svps.setCharacterStream("x", new StringReader("fubar"));
+            svps.executeQuery().close();
+            svps.executeQuery().close();
+            assertEquals(Arrays.asList("setCharacterStream", "setCharacterStream"), setterCalls);
+        }
+    }
+
+    /**
+     * Wrap a connection so that the names of the set and executeBatch methods called on its prepared statements are
+     * recorded.
+     */
+    private static Connection recordingConnection(Connection connection, List<String> setterCalls) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (result instanceof PreparedStatement) {
+                        PreparedStatement pstmt = (PreparedStatement) result;
+                        return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                                (pProxy, pMethod, pArgs) -> {
+                                    if (pMethod.getName().startsWith("set") || pMethod.getName().equals("executeBatch")) {
+                                        setterCalls.add(pMethod.getName());
+                                    }
+                                    return invoke(pstmt, pMethod, pArgs);
+                                });
+                    }
+                    return result;
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    void setObjectUsesTypedSetters() throws Exception {
+        List<String> calls = new ArrayList<>();
+        Connection connection = recordingConnection(h2Connection, calls);
+        try (SmileyVarsPreparedStatement svps
+                     = new SmileyVarsPreparedStatement(connection, "UPDATE square SET comnt=:c WHERE x=:x")) {
+            assertEquals(1, svps.setObject("x", 2).setObject("c", "two").executeUpdate());
+            assertEquals(Arrays.asList("setString", "setInt"), calls);
+            calls.clear();
+            assertEquals(1, svps.setObject("c", null).setObject("x", new BigDecimal(2)).executeUpdate());
+            assertEquals(Arrays.asList("setNull", "setBigDecimal"), calls);
+        }
+        try (Statement stmt = h2Connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT comnt FROM square WHERE x=2")) {
+            assertTrue(rs.next());
+            assertNull(rs.getString(1));
+        }
+    }
+
+    @Test
+    void stream() throws Exception {
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection,
+                "SELECT x,y FROM square WHERE x > 0 (: AND y <= :maxY :) ORDER BY x")) {
+            int fetchSize = svps.getFetchSize();
+            svps.setStreamFetchSize(2);
+            try (Stream<Integer> stream = svps.stream(rs -> rs.getInt("y"))) {
+                assertEquals(Arrays.asList(1, 4, 9, 16), stream.collect(Collectors.toList()));
+            }
+            assertEquals(fetchSize, svps.getFetchSize());
+            svps.setInt("maxY", 4);
+            try (SmileyVarsRowIterator<Integer> iterator = svps.iterator(rs -> rs.getInt("x"))) {
+                assertEquals(1, iterator.next());
+                assertFalse(iterator.isClosed());
+                assertEquals(2, iterator.next());
+                assertFalse(iterator.hasNext());
+                assertTrue(iterator.isClosed());
+                assertEquals(2, iterator.getRowCount());
+            }
+            assertFalse(svps.isClosed());
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static class Square {
+        private int x;
+        private Integer y;
+        private String comnt;
+    }
+
+    @Test
+    void streamMappedRows() throws Exception {
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection,
+                "SELECT y,x,comnt FROM square WHERE x > 0 (: AND y = :y :) ORDER BY x")) {
+            try (Stream<Square> stream = svps.stream(Square.class)) {
+                List<Square> squares = stream.collect(Collectors.toList());
+                assertEquals(4, squares.size());
+                assertEquals(3, squares.get(2).x);
+                assertEquals(9, squares.get(2).y);
+            }
+            SqlFunction<ResultSet, Square> mapper = svps.rowMapper(Square.class);
+            assertSame(mapper, svps.rowMapper(Square.class));
+            svps.setInt("y", 4);
+            assertNotSame(mapper, svps.rowMapper(Square.class));
+            try (SmileyVarsRowIterator<Square> iterator = svps.iterator(Square.class)) {
+                Square square = iterator.next();
+                assertEquals(2, square.x);
+                assertNull(square.comnt);
+                assertFalse(iterator.hasNext());
+            }
+            try (Stream<Integer> stream = svps.stream(Integer.class)) {
+                assertEquals(Collections.singletonList(4), stream.collect(Collectors.toList()));
+            }
+        }
+    }
+
+    @Test
+    void forEachBatch() throws Exception {
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection,
+                "SELECT x,y,comnt FROM square WHERE 1=1 (: AND y = :y :) ORDER BY x")) {
+            List<Integer> rowCounts = new ArrayList<>();
+            long[] sums = new long[1];
+            assertEquals(6, svps.forEachBatch(4, batch -> {
+                rowCounts.add(batch.getRowCount());
+                long[] ys = batch.getLongs(batch.findColumn("y"));
+                for (int row = 0; row < batch.getRowCount(); row++) {
+                    sums[0] += ys[row];
+                    assertTrue(batch.isNull(2, row));
+                }
+            }));
+            assertEquals(Arrays.asList(4, 2), rowCounts);
+            assertEquals(43, sums[0]);
+            svps.setInt("y", 100);
+            assertEquals(0, svps.forEachBatch(4, batch -> fail("No rows expected")));
+            assertThrows(IllegalArgumentException.class, () -> svps.forEachBatch(0, batch -> { }));
+        }
+    }
+
+    @Test
+    void streamCloseOnCompletion() throws Exception {
+        SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection, "SELECT x FROM square ORDER BY x");
+        svps.closeOnCompletion();
+        assertTrue(svps.isCloseOnCompletion());
+        try (SmileyVarsRowIterator<Integer> iterator = svps.iterator(rs -> rs.getInt(1))) {
+            assertEquals(-3, iterator.next());
+        }
+        assertTrue(svps.isClosed());
+        assertThrows(SQLException.class, () -> svps.stream(rs -> rs.getInt(1)));
+        assertThrows(IllegalArgumentException.class, () -> svps.setStreamFetchSize(0));
+    }
+
+    @Test
+    void bind() throws Exception {
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection,
+                "SELECT x,y FROM square WHERE 1=1 (: AND x=:x :)(: AND y=:y :)")) {
+            ResultSet rs = svps.bind(new BeanAccessorsTest.PublicBean(3)).executeQuery();
+            assertHasRows(rs, 1);
+            assertEquals(9, rs.getInt("y"));
+            assertFalse(rs.next());
+            rs.close();
+            Map<String, Object> values = new HashMap<>();
+            values.put("y", 4);
+            rs = svps.bind(values).bind(new SquareFilter(null, 4)).executeQuery();
+            assertHasRows(rs, 2);
+            assertFalse(rs.next());
+            rs.close();
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static class SquareFilter {
+        private final Integer x;
+        private final Integer y;
+
+        SquareFilter(Integer x, Integer y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    @Test
+    void setBySlot() throws Exception {
+        try (SmileyVarsPreparedStatement svps
+                     = new SmileyVarsPreparedStatement(h2Connection, "SELECT x,y FROM square WHERE 1=1 (: AND x=:x:)(: AND y=:y :)")) {
+            int xSlot = svps.getParameterSlot("x");
+            int ySlot = svps.getParameterSlot("y");
+            assertNotEquals(xSlot, ySlot);
+            assertThrows(SQLException.class, () -> svps.getParameterSlot("bogus"));
+            assertThrows(SQLException.class, () -> svps.setInt(7, 1));
+            svps.setInt(ySlot, 4);
+            ResultSet rs = svps.executeQuery();
+            assertHasRows(rs, 2);
+            assertFalse(rs.next());
+            rs.close();
+            svps.setLong(xSlot, -2L);
+            rs = svps.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(-2, rs.getInt(1));
+            assertFalse(rs.next());
+            rs.close();
+            assertEquals(new HashSet<>(Arrays.asList("x", "y")), svps.getBoundVarNames());
+        }
+    }
+
+    @Test
+    void executeBatch() throws Exception {
+        try (SmileyVarsPreparedStatement svps
+                     = new SmileyVarsPreparedStatement(h2Connection, "UPDATE square SET y=:y (: , comnt=:c :) WHERE x=:x")) {
+            svps.setInt("x", 1).setInt("y", 10).addBatch();
+            svps.setInt("x", 2).setInt("y", 20).setString("c", "two").addBatch();
+            svps.clearParameter("c");
+            svps.setInt("x", 99).setInt("y", 0).addBatch();
+            svps.setInt("x", 3).setInt("y", 30).setString("c", "three").addBatch();
+            assertArrayEquals(new int[]{1, 1, 0, 1}, svps.executeBatch());
+            assertArrayEquals(new int[0], svps.executeBatch());
+        }
+        try (Statement stmt = h2Connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT x, y, comnt FROM square WHERE x IN (1,2,3) ORDER BY x")) {
+            assertTrue(rs.next());
+            assertEquals(10, rs.getInt(2));
+            assertNull(rs.getString(3));
+            assertTrue(rs.next());
+            assertEquals(20, rs.getInt(2));
+            assertEquals("two", rs.getString(3));
+            assertTrue(rs.next());
+            assertEquals(30, rs.getInt(2));
+            assertEquals("three", rs.getString(3));
+        }
+    }
+
+    @Test
+    void batchFlushSize() throws Exception {
+        List<String> calls = new ArrayList<>();
+        Connection connection = recordingConnection(h2Connection, calls);
+        try (SmileyVarsPreparedStatement svps
+                     = new SmileyVarsPreparedStatement(connection, "UPDATE square SET y=:y (: , comnt=:c :) WHERE x=:x")) {
+            svps.setBatchFlushSize(2);
+            assertEquals(2, svps.getBatchFlushSize());
+            svps.setInt("x", 1).setInt("y", 10).addBatch();
+            svps.setInt("x", 99).setInt("y", 10).setString("c", "none").addBatch();
+            svps.clearParameter("c");
+            svps.setInt("x", 2).setInt("y", 10).addBatch();
+            assertTrue(calls.contains("executeBatch"));
+            svps.setInt("x", 3).setInt("y", 10).setString("c", "three").addBatch();
+            assertArrayEquals(new int[]{1, 0, 1, 1}, svps.executeBatch());
+            svps.setInt("x", 4).setInt("y", 10).addBatch();
+            svps.clearBatch();
+            assertArrayEquals(new int[0], svps.executeBatch());
+            assertThrows(IllegalArgumentException.class, () -> svps.setBatchFlushSize(-1));
+        }
+    }
+
+    @Test
+    void maxOpenStatements() throws Exception {
+        try (SmileyVarsPreparedStatement svps
+                     = new SmileyVarsPreparedStatement(h2Connection, "SELECT x,y FROM square WHERE 1=1 (: AND x=:x:)(: AND y=:y :)")) {
+            svps.setMaxOpenStatements(2);
+            assertEquals(2, svps.getMaxOpenStatements());
+            svps.setInt("x", 3);
+            PreparedStatement xStatement = svps.getPreparedStatement();
+            svps.executeQuery().close();
+            svps.executeQuery().close();
+            svps.clearParameter("x");
+            svps.setInt("y", 4);
+            PreparedStatement yStatement = svps.getPreparedStatement();
+            svps.clearParameter("y");
+            svps.executeQuery().close();
+            assertEquals(2, svps.getOpenStatementCount());
+            assertEquals(1, svps.getStatementEvictionCount());
+            assertTrue(yStatement.isClosed());
+            assertFalse(xStatement.isClosed());
+            assertEquals(0, svps.getStatementReprepareCount());
+            svps.setInt("y", 4);
+            ResultSet rs = svps.executeQuery();
+            assertHasRows(rs, 2);
+            assertFalse(rs.next());
+            rs.close();
+            assertEquals(1, svps.getStatementReprepareCount());
+            assertEquals(2, svps.getStatementEvictionCount());
+            svps.setMaxOpenStatements(1);
+            assertEquals(1, svps.getOpenStatementCount());
+            assertThrows(IllegalArgumentException.class, () -> svps.setMaxOpenStatements(-1));
+        }
+    }
+
+    @Test
+    void statementIdleTimeout() throws Exception {
+        try (SmileyVarsPreparedStatement svps
+                     = new SmileyVarsPreparedStatement(h2Connection, "SELECT x,y FROM square WHERE 1=1 (: AND x=:x:)(: AND y=:y :)")) {
+            svps.setStatementIdleTimeout(10, TimeUnit.MILLISECONDS);
+            assertEquals(10, svps.getStatementIdleTimeout(TimeUnit.MILLISECONDS));
+            svps.setInt("x", 3).executeQuery().close();
+            svps.setInt("y", 4).executeQuery().close();
+            assertEquals(2, svps.getOpenStatementCount());
+            Thread.sleep(50);
+            svps.clearParameters();
+            svps.executeQuery().close();
+            assertEquals(1, svps.getOpenStatementCount());
+            assertEquals(2, svps.getStatementExpirationCount());
+            assertEquals(0, svps.getStatementEvictionCount());
+            ResultSet rs = svps.setInt("x", 2).setInt("y", 4).executeQuery();
+            assertHasRows(rs, 1);
+            rs.close();
+            assertEquals(1, svps.getStatementReprepareCount());
+        }
+    }
+
+    @Test
+    void sameSqlSharesStatement() throws Exception {
+        try (SmileyVarsPreparedStatement svps
+                     = new SmileyVarsPreparedStatement(h2Connection, "SELECT x,y FROM square WHERE 1=1 (: AND x=:x AND y=:y :)")) {
+            ResultSet rs = svps.executeQuery();
+            assertHasRows(rs, 6);
+            rs.close();
+            PreparedStatement unfiltered = svps.getPreparedStatement();
+            svps.setInt("x", 2);
+            assertSame(unfiltered, svps.getPreparedStatement());
+            svps.clearParameter("x");
+            svps.setInt("y", 4);
+            assertSame(unfiltered, svps.getPreparedStatement());
+            svps.setInt("x", 2);
+            rs = svps.executeQuery();
+            assertHasRows(rs, 1);
+            assertFalse(rs.next());
+            rs.close();
+            assertNotSame(unfiltered, svps.getPreparedStatement());
+            assertEquals(2, svps.getOpenStatementCount());
+        }
+    }
+
+    @Test
+    void nullTolerant() throws Exception {
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection,
+                "SELECT x,y FROM square WHERE 1=1 (: AND x=:x:)(: AND y=:y :)", ExpansionMode.NULL_TOLERANT)) {
+            ResultSet rs = svps.executeQuery();
+            assertHasRows(rs, 6);
+            assertFalse(rs.next());
+            rs.close();
+            PreparedStatement preparedStatement = svps.getPreparedStatement();
+            rs = svps.setInt("y", 4).executeQuery();
+            assertHasRows(rs, 2);
+            assertFalse(rs.next());
+            rs.close();
+            rs = svps.setInt("x", 2).executeQuery();
+            assertHasRows(rs, 1);
+            assertFalse(rs.next());
+            rs.close();
+            svps.clearParameter("y");
+            rs = svps.setInt("x", 3).executeQuery();
+            assertHasRows(rs, 1);
+            assertEquals(9, rs.getInt("y"));
+            rs.close();
+            svps.clearParameters();
+            rs = svps.executeQuery();
+            assertHasRows(rs, 6);
+            rs.close();
+            assertSame(preparedStatement, svps.getPreparedStatement());
+            assertEquals(1, svps.getOpenStatementCount());
+        }
+    }
+
+    @Test
+    void nullTolerantOr() throws Exception {
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection,
+                "SELECT x,y FROM square WHERE 1=0 (: OR x=:x:)(: OR y=:y :)", ExpansionMode.NULL_TOLERANT)) {
+            ResultSet rs = svps.executeQuery();
+            assertFalse(rs.next());
+            rs.close();
+            rs = svps.setInt("x", 3).setInt("y", 4).executeQuery();
+            assertHasRows(rs, 3);
+            assertFalse(rs.next());
+            rs.close();
+        }
+    }
+
+    @Test
+    void prepareThreshold() throws Exception {
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection,
+                "SELECT x,y FROM square WHERE 1=1 (: AND x=:x:)(: AND y=:y :)")) {
+            assertEquals(0, svps.getPrepareThreshold());
+            assertThrows(IllegalArgumentException.class, () -> svps.setPrepareThreshold(-1));
+            svps.setPrepareThreshold(2).setMaxRows(1);
+            for (int i = 0; i < 2; i++) {
+                ResultSet rs = svps.setInt("y", 4).executeQuery();
+                assertHasRows(rs, 1);
+                assertEquals(4, rs.getInt("y"));
+                assertFalse(rs.next());
+                rs.close();
+                assertEquals(0, svps.getOpenStatementCount());
+            }
+            assertEquals(2, svps.getLiteralExecutionCount());
+            assertTrue(svps.execute());
+            ResultSet rs = svps.getResultSet();
+            assertHasRows(rs, 1);
+            assertFalse(rs.next());
+            rs.close();
+            assertEquals(1, svps.getOpenStatementCount());
+            assertEquals(2, svps.getLiteralExecutionCount());
+
+            // Values that are not written as literals are bound to a prepared statement.
+            svps.clearParameters();
+            rs = svps.setObject("x", 3).executeQuery();
+            assertHasRows(rs, 1);
+            assertEquals(9, rs.getInt("y"));
+            rs.close();
+            assertEquals(2, svps.getOpenStatementCount());
+            assertEquals(2, svps.getLiteralExecutionCount());
+        }
+    }
+
+    @Test
+    void prepareThresholdUpdate() throws Exception {
+        String sql = "UPDATE square SET comnt=:comnt WHERE x=:x";
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection,
+                SmileyVarsStatementPlan.plan(DatabaseType.SQL_SERVER, sql))) {
+            svps.setPrepareThreshold(10);
+            assertEquals(1, svps.setString("comnt", "it's four").setInt("x", 2).executeUpdate());
+            assertEquals(1, svps.getUpdateCount());
+            assertEquals(0, svps.getOpenStatementCount());
+            assertEquals(1, svps.getLiteralExecutionCount());
+        }
+        assertEquals("it's four", selectComment(2));
+    }
+
+    @Test
+    void stringsBoundWhenBackslashMayEscape() throws Exception {
+        String sql = "UPDATE square SET comnt=:comnt WHERE x=:x";
+        String[] comments = {"\\' OR 1=1 -- ", "back\\slash", "it's \\'quoted\\'"};
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection, sql)) {
+            svps.setPrepareThreshold(10);
+            for (String comment : comments) {
+                assertEquals(1, svps.setString("comnt", comment).setInt("x", 2).executeUpdate());
+                assertEquals(comment, selectComment(2));
+            }
+            assertEquals(0, svps.getLiteralExecutionCount());
+            assertEquals(1, svps.getOpenStatementCount());
+        }
+        assertFalse(DatabaseType.ANSI.hasSafeStringLiterals());
+        assertFalse(DatabaseType.POSTGRESQL.hasSafeStringLiterals());
+        assertTrue(DatabaseType.ORACLE.hasSafeStringLiterals());
+    }
+
+    private String selectComment(int x) throws SQLException {
+        try (Statement stmt = h2Connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT comnt FROM square WHERE x=" + x)) {
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+
+    @Test
+    void inlineValues() throws Exception {
+        SmileyVarsStatementPlan plan = SmileyVarsStatementPlan.plan(h2Connection,
+                "SELECT x,y FROM square WHERE 1=1 (: AND y=:y:inline :)(: AND x>:x :)");
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection, plan)) {
+            assertEquals(10, plan.getMaxInlineValues());
+            plan.setMaxInlineValues(2);
+            svps.setInt("x", 0);
+            int[] ys = {4, 9, 4, 16, 1};
+            int[] openCounts = {1, 2, 2, 3, 3};
+            for (int i = 0; i < ys.length; i++) {
+                ResultSet rs = svps.setInt("y", ys[i]).executeQuery();
+                assertHasRows(rs, 1);
+                assertEquals(ys[i], rs.getInt("y"));
+                assertFalse(rs.next());
+                rs.close();
+                assertEquals(openCounts[i], svps.getOpenStatementCount());
+            }
+            plan.setMaxInlineValues(0);
+            ResultSet rs = svps.setInt("y", 9).executeQuery();
+            assertHasRows(rs, 1);
+            assertFalse(rs.next());
+            rs.close();
+            assertEquals(3, svps.getOpenStatementCount());
+        }
+    }
+
+    @Test
+    void inlineExpansionsSharedByPlan() throws Exception {
+        SmileyVarsStatementPlan plan = SmileyVarsStatementPlan.plan(h2Connection,
+                "SELECT x,y FROM square WHERE 1=1 (: AND y=:y:inline :)");
+        for (int i = 0; i < 3; i++) {
+            try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection, plan)) {
+                svps.setPrepareThreshold(2).setInt("y", 9).executeQuery().close();
+                // The third instance finds that the inline expansion has been used enough to be prepared.
+                assertEquals(i < 2 ? 1 : 0, svps.getLiteralExecutionCount());
+                assertEquals(i < 2 ? 0 : 1, svps.getOpenStatementCount());
+            }
+        }
+    }
+
+    @Test
+    void inlineStringsBound() throws Exception {
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection,
+                "SELECT x FROM square WHERE 1=1 (: AND comnt=:c:inline :)")) {
+            for (String comment : new String[]{"\\' OR 1=1 -- ", "plain"}) {
+                try (ResultSet rs = svps.setString("c", comment).executeQuery()) {
+                    assertFalse(rs.next());
+                }
+            }
+            // Both values were bound to the same statement rather than inlined.
+            assertEquals(1, svps.getOpenStatementCount());
+        }
+    }
+
+    @Test
+    void inlineValuesLimitedByPlan() throws Exception {
+        SmileyVarsStatementPlan plan = SmileyVarsStatementPlan.plan(h2Connection,
+                "SELECT x,y FROM square WHERE 1=1 (: AND y=:y:inline :)");
+        plan.setMaxInlineValues(1);
+        try (SmileyVarsPreparedStatement svps1 = new SmileyVarsPreparedStatement(h2Connection, plan);
+             SmileyVarsPreparedStatement svps2 = new SmileyVarsPreparedStatement(h2Connection, plan)) {
+            svps1.setInt("y", 4).executeQuery().close();
+            svps2.setInt("y", 9).executeQuery().close();
+            svps2.setInt("y", 4).executeQuery().close();
+            assertEquals(1, svps1.getOpenStatementCount());
+            assertEquals(2, svps2.getOpenStatementCount());
+        }
+    }
+
+    @Test
+    void prewarm() throws Exception {
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection,
+                "SELECT x,y FROM square WHERE x>:min (: AND x=:x:)(: AND y=:y :)")) {
+            assertEquals(4, svps.prewarm(10));
+            assertEquals(4, svps.getOpenStatementCount());
+            assertEquals(0, svps.prewarm(10));
+            ResultSet rs = svps.setInt("min", 0).setInt("y", 4).executeQuery();
+            assertHasRows(rs, 1);
+            assertFalse(rs.next());
+            rs.close();
+            assertEquals(4, svps.getOpenStatementCount());
+        }
+    }
+
+    @Test
+    void prewarmExplicit() throws Exception {
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection,
+                "SELECT x,y FROM square WHERE x>:min (: AND x=:x:)(: AND y=:y :)")) {
+            svps.setMaxOpenStatements(2);
+            assertEquals(1, svps.prewarm(Collections.singletonList(Arrays.asList("min", "y"))));
+            assertThrows(SQLException.class, () -> svps.prewarm(Collections.singletonList(Collections.singletonList("bogus"))));
+            assertThrows(UnboundVariableException.class, () -> svps.prewarm(Collections.singletonList(Collections.singletonList("x"))));
+            assertEquals(1, svps.prewarm(10));
+            assertEquals(2, svps.getOpenStatementCount());
+            assertEquals(0, svps.getStatementEvictionCount());
+        }
+    }
+
+    @Test
+    void prewarmMostUsed() throws Exception {
+        SmileyVarsStatementPlan plan
+                = SmileyVarsStatementPlan.plan(h2Connection, "SELECT x,y FROM square WHERE 1=1 (: AND x=:x:)(: AND y=:y :)");
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection, plan)) {
+            svps.setInt("x", 2).executeQuery().close();
+            svps.executeQuery().close();
+            svps.clearParameters();
+            svps.setInt("y", 4).executeQuery().close();
+        }
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection, plan)) {
+            assertEquals(1, svps.prewarmMostUsed(1));
+            svps.setInt("x", 2).executeQuery().close();
+            assertEquals(1, svps.getOpenStatementCount());
+            assertEquals(1, svps.prewarmMostUsed(5));
+        }
+    }
+
     @Test
     void setCharacterStream() throws Exception {
         try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection, "SELECT :x")) {
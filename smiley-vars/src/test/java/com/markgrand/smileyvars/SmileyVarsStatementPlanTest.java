@@ -0,0 +1,232 @@
+package com.markgrand.smileyvars;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmileyVarsStatementPlanTest {
+    private static final String SQL = "SELECT x,y FROM square WHERE 1=1 (: AND x=:x :)(: AND y=:y :)";
+
+    private Connection h2Connection;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        h2Connection = DriverManager.getConnection("jdbc:h2:mem:test", "sa", "");
+        Statement stmt = h2Connection.createStatement();
+        stmt.execute("CREATE TABLE IF NOT EXISTS SQUARE (X INT PRIMARY KEY, Y INT, COMNT VARCHAR(400))");
+        stmt.execute("MERGE INTO SQUARE (X,Y) VALUES (-2,4);");
+        stmt.execute("MERGE INTO SQUARE (X,Y) VALUES (2,4);");
+        stmt.execute("MERGE INTO SQUARE (X,Y) VALUES (3,9);");
+        h2Connection.commit();
+        stmt.close();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        h2Connection.close();
+    }
+
+    @Test
+    void varNames() {
+        SmileyVarsStatementPlan plan = SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL);
+        assertEquals(SQL, plan.getTemplateString());
+        assertEquals(new HashSet<>(Arrays.asList("x", "y")), plan.getVarNames());
+        assertEquals(2, plan.getSlotCount());
+        assertNotNull(plan.getSlot("x"));
+        assertNull(plan.getSlot("z"));
+    }
+
+    @Test
+    void expansion() {
+        SmileyVarsStatementPlan plan = SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL);
+        BitSet signature = new BitSet();
+        signature.set(plan.getSlot("y"));
+        SmileyVarsStatementPlan.Expansion expansion = plan.getExpansion(signature);
+        assertEquals("SELECT x,y FROM square WHERE 1=1  AND y=? ", expansion.getSql());
+        assertArrayEquals(new int[]{plan.getSlot("y")}, expansion.getParameterSlots());
+        assertSame(expansion, plan.getExpansion((BitSet) signature.clone()));
+    }
+
+    @Test
+    void sharedAcrossStatements() throws Exception {
+        SmileyVarsStatementPlan plan = SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL);
+        for (int x : new int[]{2, 3}) {
+            try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection, plan)) {
+                ResultSet rs = svps.setInt("x", x).executeQuery();
+                assertTrue(rs.next());
+                assertEquals(x * x, rs.getInt("y"));
+                assertFalse(rs.next());
+                rs.close();
+            }
+        }
+    }
+
+    @Test
+    void signatures() {
+        SmileyVarsStatementPlan plan
+                = SmileyVarsStatementPlan.plan(DatabaseType.ANSI, "SELECT * FROM square WHERE x>:min (: AND x=:x :)(: AND y=:y :)");
+        int min = plan.getSlot("min");
+        int x = plan.getSlot("x");
+        int y = plan.getSlot("y");
+        List<BitSet> signatures = plan.signatures(10);
+        assertEquals(4, signatures.size());
+        assertEquals(bits(min), signatures.get(0));
+        assertEquals(new HashSet<>(Arrays.asList(bits(min, x), bits(min, y))), new HashSet<>(signatures.subList(1, 3)));
+        assertEquals(bits(min, x, y), signatures.get(3));
+        assertEquals(signatures.subList(0, 2), plan.signatures(2));
+        for (BitSet signature : signatures) {
+            assertNotNull(plan.getExpansion(signature));
+        }
+    }
+
+    @Test
+    void canonicalSignature() {
+        SmileyVarsStatementPlan plan
+                = SmileyVarsStatementPlan.plan(DatabaseType.ANSI, "SELECT * FROM square WHERE x>:min (: AND x=:x AND y=:y :)(: AND comnt=:c :)");
+        int min = plan.getSlot("min");
+        int x = plan.getSlot("x");
+        int y = plan.getSlot("y");
+        int c = plan.getSlot("c");
+        SmileyVarsStatementPlan.Expansion base = plan.getExpansion(bits(min));
+        assertEquals(bits(min), base.getSignature());
+        assertSame(base, plan.getExpansion(bits(min, x)));
+        assertSame(base, plan.getExpansion(bits(min, y)));
+        SmileyVarsStatementPlan.Expansion withComment = plan.getExpansion(bits(min, y, c));
+        assertEquals(bits(min, c), withComment.getSignature());
+        assertSame(withComment, plan.getExpansion(bits(min, c)));
+        assertNotSame(base, plan.getExpansion(bits(min, x, y)));
+        assertEquals(Arrays.asList(bits(min), bits(min, x, y), bits(min, c), bits(min, x, y, c)), plan.signatures(10));
+        plan.addUseCount(bits(min, x), 2);
+        plan.addUseCount(bits(min, y), 3);
+        assertEquals(Collections.singletonMap(bits(min), 5L), plan.getUseCounts());
+    }
+
+    @Test
+    void nullTolerantExpansion() {
+        SmileyVarsStatementPlan plan = SmileyVarsStatementPlan.plan(DatabaseType.ANSI,
+                "SELECT * FROM square WHERE x>:min (: AND x=:x :)(: or y=:y AND comnt=:c :)", ExpansionMode.NULL_TOLERANT);
+        assertEquals(ExpansionMode.NULL_TOLERANT, plan.getExpansionMode());
+        int min = plan.getSlot("min");
+        SmileyVarsStatementPlan.Expansion expansion = plan.getExpansion(bits(min));
+        assertEquals("SELECT * FROM square WHERE x>?  AND (? = 0 OR ( x=? )) OR (? = 1 AND ( y=? AND comnt=? ))", expansion.getSql());
+        assertArrayEquals(new int[]{min, -1, plan.getSlot("x"), -2, plan.getSlot("y"), plan.getSlot("c")}, expansion.getParameterSlots());
+        assertEquals(2, expansion.getFlagSlots().length);
+        assertSame(expansion, plan.getExpansion(bits(min, plan.getSlot("y"))));
+        assertEquals(Collections.singletonList(expansion.getSignature()), plan.signatures(10));
+        assertThrows(UnboundVariableException.class, () -> plan.getExpansion(new BitSet()));
+        assertEquals(ExpansionMode.VARIANTS, SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL).getExpansionMode());
+    }
+
+    @Test
+    void nullTolerantUnsupported() {
+        assertThrows(UnsupportedFeatureException.class, () -> SmileyVarsStatementPlan.plan(DatabaseType.ANSI,
+                "UPDATE square SET y=:y (: , comnt=:c :) WHERE x=:x", ExpansionMode.NULL_TOLERANT));
+        assertThrows(UnsupportedFeatureException.class, () -> SmileyVarsStatementPlan.plan(DatabaseType.ANSI,
+                "SELECT * FROM square WHERE 1=1 (: AND x=:x (: AND y=:y :) :)", ExpansionMode.NULL_TOLERANT));
+    }
+
+    @Test
+    void inlineExpansion() {
+        SmileyVarsStatementPlan plan = SmileyVarsStatementPlan.plan(DatabaseType.ANSI,
+                "SELECT * FROM square WHERE y=:y (: AND x=:x:inline AND x<>:x :)");
+        int x = plan.getSlot("x");
+        int y = plan.getSlot("y");
+        assertEquals(bits(x), plan.getInlineSlots());
+        SmileyVarsStatementPlan.Expansion expansion = plan.getExpansion(bits(x, y));
+        assertEquals("SELECT * FROM square WHERE y=?  AND x=? AND x<>? ", expansion.getSql());
+        SmileyVarsStatementPlan.Expansion inlineExpansion
+                = plan.getInlineExpansion(expansion.getSignature(), 1, Collections.singletonMap(x, "3"));
+        assertEquals("SELECT * FROM square WHERE y=?  AND x=3 AND x<>? ", inlineExpansion.getSql());
+        assertArrayEquals(new int[]{y, x}, inlineExpansion.getParameterSlots());
+        assertEquals(bits(x, y), inlineExpansion.getSignature());
+        assertSame(inlineExpansion, plan.getInlineExpansion(expansion.getSignature(), 1, Collections.emptyMap()));
+        assertTrue(SmileyVarsStatementPlan.plan(DatabaseType.ANSI, "SELECT :x:inline", ExpansionMode.NULL_TOLERANT)
+                           .getInlineSlots().isEmpty());
+    }
+
+    @Test
+    void inlineLiteralIds() {
+        SmileyVarsStatementPlan plan = SmileyVarsStatementPlan.plan(DatabaseType.ANSI,
+                "SELECT * FROM square WHERE x=:x:inline AND y=:y:inline");
+        int x = plan.getSlot("x");
+        int y = plan.getSlot("y");
+        assertEquals(10, plan.getMaxInlineValues());
+        plan.setMaxInlineValues(2);
+        assertEquals(0, plan.getInlineLiteralId(x, "1"));
+        assertEquals(1, plan.getInlineLiteralId(x, "2"));
+        assertEquals(0, plan.getInlineLiteralId(x, "1"));
+        assertEquals(-1, plan.getInlineLiteralId(x, "3"));
+        assertEquals(0, plan.getInlineLiteralId(y, "3"));
+        assertNotEquals(plan.inlineKeyBits(x, 0), plan.inlineKeyBits(y, 0));
+        assertEquals(0, plan.inlineKeyBits(x, 1) & plan.inlineKeyBits(y, 0));
+        assertTrue(plan.isInlineLiteralIdAllowed(1));
+        plan.setMaxInlineValues(1);
+        assertFalse(plan.isInlineLiteralIdAllowed(1));
+        assertEquals(-1, plan.getInlineLiteralId(x, "2"));
+        assertThrows(IllegalArgumentException.class, () -> plan.setMaxInlineValues(-1));
+        assertEquals(Integer.MAX_VALUE, plan.getInlineKeyLimit());
+    }
+
+    @Test
+    void inlineKeyLimit() {
+        StringBuilder sql = new StringBuilder("SELECT * FROM t WHERE 1=1");
+        for (int i = 0; i < 10; i++) {
+            sql.append(" AND c").append(i).append("=:v").append(i).append(":inline");
+        }
+        SmileyVarsStatementPlan plan = SmileyVarsStatementPlan.plan(DatabaseType.ANSI, sql.toString());
+        assertEquals(63, plan.getInlineKeyLimit());
+        plan.setMaxInlineValues(100);
+        int v9 = plan.getSlot("v9");
+        for (int i = 0; i < 63; i++) {
+            assertEquals(i, plan.getInlineLiteralId(v9, Integer.toString(i)));
+        }
+        assertEquals(-1, plan.getInlineLiteralId(v9, "63"));
+        assertTrue(plan.inlineKeyBits(v9, 62) > 0);
+    }
+
+    @Test
+    void mostUsedSignatures() throws Exception {
+        SmileyVarsStatementPlan plan = SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL);
+        assertEquals(Collections.emptyList(), plan.getMostUsedSignatures(2));
+        try (SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(h2Connection, plan)) {
+            svps.setInt("y", 4).executeQuery().close();
+            svps.executeQuery().close();
+            svps.clearParameters();
+            svps.setInt("x", 2).executeQuery().close();
+        }
+        assertEquals(Arrays.asList(Collections.singleton("y"), Collections.singleton("x")), plan.getMostUsedSignatures(2));
+        assertEquals(1, plan.getMostUsedSignatures(1).size());
+    }
+
+    private static BitSet bits(int... slots) {
+        BitSet bitSet = new BitSet();
+        for (int slot : slots) {
+            bitSet.set(slot);
+        }
+        return bitSet;
+    }
+
+    @Test
+    void concurrentExpansion() throws Exception {
+        SmileyVarsStatementPlan plan = SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<SmileyVarsStatementPlan.Expansion>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executor.submit(() -> plan.getExpansion(BitSet.valueOf(new long[]{3}))));
+            }
+            SmileyVarsStatementPlan.Expansion first = futures.get(0).get();
+            for (Future<SmileyVarsStatementPlan.Expansion> future : futures) {
+                assertSame(first, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.markgrand.smileyvars;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmileyVarsStatementPoolTest {
+    private static final String SQL = "SELECT x,y FROM square WHERE 1=1 (: AND x=:x :)(: AND y=:y :)";
+
+    private Connection h2Connection;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        h2Connection = DriverManager.getConnection("jdbc:h2:mem:test", "sa", "");
+        Statement stmt = h2Connection.createStatement();
+        stmt.execute("CREATE TABLE IF NOT EXISTS SQUARE (X INT PRIMARY KEY, Y INT, COMNT VARCHAR(400))");
+        stmt.execute("MERGE INTO SQUARE (X,Y) VALUES (-2,4);");
+        stmt.execute("MERGE INTO SQUARE (X,Y) VALUES (2,4);");
+        stmt.execute("MERGE INTO SQUARE (X,Y) VALUES (3,9);");
+        h2Connection.commit();
+        stmt.close();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        h2Connection.close();
+    }
+
+    @Test
+    void reusedStatements() throws Exception {
+        SmileyVarsStatementPlan plan = SmileyVarsStatementPlan.plan(h2Connection, SQL);
+        try (SmileyVarsStatementPool pool = new SmileyVarsStatementPool(h2Connection)) {
+            assertSame(h2Connection, pool.getConnection());
+            SmileyVarsPreparedStatement svps1 = new SmileyVarsPreparedStatement(pool, plan);
+            SmileyVarsPreparedStatement svps2 = new SmileyVarsPreparedStatement(pool, SQL);
+            svps1.setInt("x", 2);
+            svps2.setInt("x", 3);
+            PreparedStatement preparedStatement = svps1.getPreparedStatement();
+            assertNotSame(preparedStatement, svps2.getPreparedStatement());
+            assertEquals(2, pool.getStatementCount());
+            assertEquals(2, pool.getMissCount());
+            assertEquals(0, pool.getHitCount());
+            assertEquals(4, queryY(svps1));
+            assertEquals(9, queryY(svps2));
+            assertEquals(4, queryY(svps1));
+
+            svps1.close();
+            assertFalse(preparedStatement.isClosed());
+            assertEquals(1, pool.getIdleStatementCount());
+            svps2.close();
+            assertEquals(2, pool.getIdleStatementCount());
+
+            try (SmileyVarsPreparedStatement svps3 = new SmileyVarsPreparedStatement(pool, plan)) {
+                svps3.setInt("x", -2);
+                svps3.getPreparedStatement();
+                assertEquals(4, queryY(svps3));
+                assertEquals(1, pool.getIdleStatementCount());
+                assertEquals(1, pool.getHitCount());
+            }
+            pool.setMaxIdleStatements(1);
+            assertEquals(1, pool.getStatementCount());
+            pool.setMaxIdleStatements(0);
+            assertEquals(0, pool.getMaxIdleStatements());
+            assertEquals(0, pool.getStatementCount());
+            assertTrue(preparedStatement.isClosed());
+            assertThrows(IllegalArgumentException.class, () -> pool.setMaxIdleStatements(-1));
+        }
+    }
+
+    @Test
+    void settingsNotPassedOn() throws Exception {
+        String query = "SELECT x FROM square WHERE y >= :y";
+        try (SmileyVarsStatementPool pool = new SmileyVarsStatementPool(h2Connection)) {
+            PreparedStatement preparedStatement;
+            try (SmileyVarsPreparedStatement svps1 = new SmileyVarsPreparedStatement(pool, query)) {
+                svps1.setMaxRows(1);
+                svps1.setFetchSize(1);
+                preparedStatement = svps1.setInt("y", 0).getPreparedStatement();
+                try (ResultSet rs = svps1.executeQuery()) {
+                    assertTrue(rs.next());
+                    assertFalse(rs.next());
+                }
+            }
+            try (SmileyVarsPreparedStatement svps2 = new SmileyVarsPreparedStatement(pool, query)) {
+                assertSame(preparedStatement, svps2.setInt("y", 0).getPreparedStatement());
+                assertEquals(0, preparedStatement.getMaxRows());
+                assertNotEquals(1, preparedStatement.getFetchSize());
+                int rows = 0;
+                try (ResultSet rs = svps2.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                    }
+                }
+                assertEquals(3, rows);
+            }
+
+            // A statement with a cursor name is not kept.
+            try (SmileyVarsPreparedStatement svps3 = new SmileyVarsPreparedStatement(pool, query)) {
+                svps3.setCursorName("c1");
+                preparedStatement = svps3.setInt("y", 0).getPreparedStatement();
+            }
+            assertTrue(preparedStatement.isClosed());
+            assertEquals(0, pool.getStatementCount());
+        }
+    }
+
+    @Test
+    void interleavedBatches() throws Exception {
+        String insert = "INSERT INTO square (x, y) VALUES ( :x, :y )";
+        try (SmileyVarsStatementPool pool = new SmileyVarsStatementPool(h2Connection);
+             SmileyVarsPreparedStatement svps1 = new SmileyVarsPreparedStatement(pool, insert);
+             SmileyVarsPreparedStatement svps2 = new SmileyVarsPreparedStatement(pool, insert)) {
+            svps1.setInt("x", 10).setInt("y", 100).addBatch();
+            svps2.setInt("x", 11).setInt("y", 121).addBatch();
+            assertArrayEquals(new int[]{1}, svps2.executeBatch());
+            assertEquals(1, countRows(11));
+            assertEquals(0, countRows(10));
+            assertArrayEquals(new int[]{1}, svps1.executeBatch());
+            assertEquals(1, countRows(10));
+
+            // Rows that were never executed are not left for the next user of a statement.
+            svps1.setInt("x", 12).setInt("y", 144).addBatch();
+            svps1.close();
+            try (SmileyVarsPreparedStatement svps3 = new SmileyVarsPreparedStatement(pool, insert)) {
+                svps3.setInt("x", 13).setInt("y", 169).addBatch();
+                assertArrayEquals(new int[]{1}, svps3.executeBatch());
+            }
+            assertEquals(0, countRows(12));
+            assertEquals(1, countRows(13));
+        }
+    }
+
+    @Test
+    void nestedIteration() throws Exception {
+        String query = "SELECT x FROM square WHERE y = :y ORDER BY x";
+        try (SmileyVarsStatementPool pool = new SmileyVarsStatementPool(h2Connection);
+             SmileyVarsPreparedStatement outer = new SmileyVarsPreparedStatement(pool, query);
+             SmileyVarsPreparedStatement inner = new SmileyVarsPreparedStatement(pool, query)) {
+            int rows = 0;
+            try (ResultSet rs = outer.setInt("y", 4).executeQuery()) {
+                while (rs.next()) {
+                    inner.setInt("y", 9);
+                    try (ResultSet innerRs = inner.executeQuery()) {
+                        assertTrue(innerRs.next());
+                        assertEquals(3, innerRs.getInt(1));
+                    }
+                    assertFalse(rs.isClosed());
+                    rows++;
+                }
+            }
+            assertEquals(2, rows);
+        }
+    }
+
+    @Test
+    void close() throws Exception {
+        SmileyVarsStatementPool pool = new SmileyVarsStatementPool(h2Connection);
+        SmileyVarsPreparedStatement svps = new SmileyVarsPreparedStatement(pool, SQL);
+        PreparedStatement preparedStatement = svps.setInt("y", 4).getPreparedStatement();
+        pool.close();
+        assertTrue(preparedStatement.isClosed());
+        svps.clearParameters();
+        assertThrows(SQLException.class, svps::getPreparedStatement);
+        svps.close();
+    }
+
+    private int countRows(int x) throws SQLException {
+        try (Statement stmt = h2Connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM square WHERE x = " + x)) {
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+
+    private static int queryY(SmileyVarsPreparedStatement svps) throws SQLException {
+        try (ResultSet rs = svps.executeQuery()) {
+            assertTrue(rs.next());
+            int y = rs.getInt("y");
+            assertFalse(rs.next());
+            return y;
+        }
+    }
+}
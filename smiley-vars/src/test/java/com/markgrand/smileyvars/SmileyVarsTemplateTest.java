@@ -8,6 +8,7 @@ import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
@@ -355,6 +356,48 @@ class SmileyVarsTemplateTest {
         assertEquals("Select * from foo where 1=1 and x=null", template.apply(map));
     }
 
+    @Test
+    void applyParameterized() {
+        @NotNull SmileyVarsTemplate template = SmileyVarsTemplate.template(DatabaseType.ANSI,
+                "Select * from foo where x=:x (: and y=:y :)(: and z=:z :)(: and status=:status:inline :)");
+        @NotNull Map<String, Object> map = new HashMap<>();
+        map.put("x", 3);
+        map.put("z", null);
+        map.put("status", "open");
+        ParameterizedSql parameterizedSql = template.applyParameterized(map);
+        assertEquals("Select * from foo where x=?  and z=?  and status='open' ", parameterizedSql.getSql());
+        assertEquals(Arrays.asList("x", "z"), parameterizedSql.getParameterNames());
+        assertEquals(Arrays.asList(3, null), parameterizedSql.getValues());
+        assertArrayEquals(new int[]{Types.INTEGER, Types.NULL}, parameterizedSql.getSqlTypes());
+        assertThrows(UnboundVariableException.class, () -> template.applyParameterized(new HashMap<>()));
+    }
+
+    @Test
+    void applyParameterizedNamedFormatter() {
+        @NotNull SmileyVarsTemplate template = SmileyVarsTemplate.template(DatabaseType.ANSI,
+                "Select * from foo where 1=1 (: and d=:d:date :)(: and e=:e:date :)");
+        @NotNull Map<String, Object> map = new HashMap<>();
+        map.put("d", new Timestamp(0));
+        map.put("e", null);
+        ParameterizedSql parameterizedSql = template.applyParameterized(map);
+        assertEquals("Select * from foo where 1=1  and d=? ", parameterizedSql.getSql());
+        assertEquals(Collections.singletonList("d"), parameterizedSql.getParameterNames());
+    }
+
+    @Test
+    void inlineFormatter() {
+        @NotNull SmileyVarsTemplate template = SmileyVarsTemplate.template(DatabaseType.ANSI, "Select * from foo where 1=1 (: and x=:x:inline :)");
+        assertEquals("Select * from foo where 1=1  and x=4 ", template.apply(Collections.singletonMap("x", 4)));
+        assertEquals("Select * from foo where 1=1 ", template.apply(new HashMap<>()));
+    }
+
+    @Test
+    void applyBean() {
+        @NotNull SmileyVarsTemplate template = SmileyVarsTemplate.template(DatabaseType.ANSI,
+                "Select * from foo where x=:x (: and c=:comment :)(: and y=:y :)");
+        assertEquals("Select * from foo where x=4  and c='field' ", template.applyBean(new BeanAccessorsTest.PublicBean(4)));
+    }
+
     @Test
     void getNoVarNames() {
         SmileyVarsTemplate template = SmileyVarsTemplate.template(DatabaseType.ANSI, "select * from foo");
@@ -0,0 +1,107 @@
+package com.markgrand.smileyvars;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmileyVarsUsageProfileTest {
+    private static final String SQL = "SELECT x,y FROM square WHERE 1=1 (: AND x=:x :)(: AND y=:y :)";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void missingFile() throws Exception {
+        Path file = tempDir.resolve("missing.profile");
+        SmileyVarsUsageProfile profile = SmileyVarsUsageProfile.load(file);
+        assertEquals(file, profile.getFile());
+        SmileyVarsStatementPlan plan = profile.register(SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL));
+        assertTrue(plan.getUseCounts().isEmpty());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void saveAndLoad() throws Exception {
+        Path file = tempDir.resolve("usage.profile");
+        SmileyVarsUsageProfile profile = SmileyVarsUsageProfile.load(file);
+        SmileyVarsStatementPlan plan = profile.register(SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL));
+        SmileyVarsStatementPlan otherPlan = profile.register(SmileyVarsStatementPlan.plan(DatabaseType.ANSI, "SELECT :z"));
+        BitSet xSignature = new BitSet();
+        xSignature.set(plan.getSlot("x"));
+        plan.addUseCount(xSignature, 10);
+        plan.addUseCount(new BitSet(), 4);
+        otherPlan.addUseCount(BitSet.valueOf(new long[]{1}), 6);
+        profile.save();
+        assertTrue(Files.exists(file));
+
+        SmileyVarsUsageProfile reloaded = SmileyVarsUsageProfile.load(file);
+        SmileyVarsStatementPlan newPlan = reloaded.register(SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL));
+        Map<BitSet, Long> useCounts = newPlan.getUseCounts();
+        assertEquals(2, useCounts.size());
+        assertEquals(5L, useCounts.get(xSignature));
+        assertEquals(2L, useCounts.get(new BitSet()));
+        assertEquals(Collections.singletonList(Collections.singleton("x")), newPlan.getMostUsedSignatures(1));
+
+        // The profile of the template that was not registered is kept.
+        reloaded.save();
+        SmileyVarsUsageProfile reloadedAgain = SmileyVarsUsageProfile.load(file);
+        SmileyVarsStatementPlan newOtherPlan = reloadedAgain.register(SmileyVarsStatementPlan.plan(DatabaseType.ANSI, "SELECT :z"));
+        assertEquals(3L, newOtherPlan.getUseCounts().get(BitSet.valueOf(new long[]{1})));
+    }
+
+    @Test
+    void plansForSameSqlKeptSeparately() throws Exception {
+        Path file = tempDir.resolve("same-sql.profile");
+        SmileyVarsUsageProfile profile = SmileyVarsUsageProfile.load(file);
+        SmileyVarsStatementPlan ansiPlan = profile.register(SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL));
+        SmileyVarsStatementPlan postgresqlPlan = profile.register(SmileyVarsStatementPlan.plan(DatabaseType.POSTGRESQL, SQL));
+        SmileyVarsStatementPlan nullTolerantPlan
+                = profile.register(SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL, ExpansionMode.NULL_TOLERANT));
+        SmileyVarsStatementPlan duplicatePlan = profile.register(SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL));
+        ansiPlan.addUseCount(new BitSet(), 4);
+        duplicatePlan.addUseCount(new BitSet(), 6);
+        postgresqlPlan.addUseCount(new BitSet(), 20);
+        nullTolerantPlan.addUseCount(new BitSet(), 40);
+        profile.save();
+
+        SmileyVarsUsageProfile reloaded = SmileyVarsUsageProfile.load(file);
+        assertEquals(5L, reloaded.register(SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL)).getUseCounts().get(new BitSet()));
+        assertTrue(reloaded.register(SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL)).getUseCounts().isEmpty());
+        assertEquals(10L, reloaded.register(SmileyVarsStatementPlan.plan(DatabaseType.POSTGRESQL, SQL)).getUseCounts().get(new BitSet()));
+        assertEquals(Collections.singletonList(20L), new ArrayList<>(reloaded.register(
+                SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL, ExpansionMode.NULL_TOLERANT)).getUseCounts().values()));
+    }
+
+    @Test
+    void notAProfile() throws Exception {
+        Path file = tempDir.resolve("bogus.profile");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> SmileyVarsUsageProfile.load(file));
+    }
+
+    @Test
+    void periodicSave() throws Exception {
+        Path file = tempDir.resolve("periodic.profile");
+        try (SmileyVarsUsageProfile profile = SmileyVarsUsageProfile.load(file)) {
+            profile.register(SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL)).addUseCount(new BitSet(), 2);
+            profile.startPeriodicSave(10, TimeUnit.MILLISECONDS);
+            assertThrows(IllegalStateException.class, () -> profile.startPeriodicSave(10, TimeUnit.MILLISECONDS));
+            for (int i = 0; i < 100 && !Files.exists(file); i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(Files.exists(file));
+        }
+        SmileyVarsUsageProfile reloaded = SmileyVarsUsageProfile.load(file);
+        assertEquals(1L, reloaded.register(SmileyVarsStatementPlan.plan(DatabaseType.ANSI, SQL)).getUseCounts().get(new BitSet()));
+    }
+}
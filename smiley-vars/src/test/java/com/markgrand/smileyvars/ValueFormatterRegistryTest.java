@@ -0,0 +1,91 @@
+package com.markgrand.smileyvars;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueFormatterRegistryTest {
+    @Test
+    void classBasedDispatch() {
+        ValueFormatterRegistry registry = new ValueFormatterRegistry("test");
+        assertEquals("42", registry.format(42));
+        assertEquals("1.5", registry.format(new BigDecimal("1.5")));
+        assertEquals("'x'", registry.format("x"));
+        assertTrue(registry.format(new Timestamp(0)).startsWith("TIMESTAMP '"));
+        assertThrows(NoFormatterException.class, () -> registry.format(new Object()));
+        assertThrows(NoFormatterException.class, () -> registry.format(new Object()));
+    }
+
+    @Test
+    void registrationReplacesSnapshot() {
+        ValueFormatterRegistry registry = new ValueFormatterRegistry("test");
+        assertThrows(NoFormatterException.class, () -> registry.format(TokenType.VAR));
+        registry.registerFormatter("tokenType", TokenType.class, value -> "'" + value + "'");
+        assertEquals("'VAR'", registry.format(TokenType.VAR));
+        assertEquals("'TEXT'", registry.format(TokenType.TEXT, "tokenType"));
+    }
+
+    @Test
+    void predicateFormatter() {
+        ValueFormatterRegistry registry = new ValueFormatterRegistry("test");
+        registry.registerFormatter("short list", value -> value instanceof List && ((List<?>) value).size() < 2,
+                value -> value instanceof List, value -> "'list'");
+        List<String> list = new ArrayList<>();
+        assertEquals("'list'", registry.format(list));
+        list.add("a");
+        assertEquals("'list'", registry.format(list));
+        list.add("b");
+        assertThrows(NoFormatterException.class, () -> registry.format(list));
+        assertEquals("'x'", registry.format("x"));
+    }
+
+    @Test
+    void registrationEmptiesLiteralCache() {
+        ValueFormatterRegistry registry = new ValueFormatterRegistry("test").enableLiteralCache(10, 100);
+        assertEquals("'abc'", registry.format("abc"));
+        assertEquals("'abc'", registry.format("abc"));
+        FormattedLiteralCache cache = registry.getLiteralCache();
+        assertNotNull(cache);
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHitCount());
+        registry.registerFormatter("upper", value -> value instanceof String, value -> value instanceof String,
+                value -> "'" + value.toString().toUpperCase() + "'");
+        assertEquals("'abc'", registry.format("abc"));
+        FormattedLiteralCache newCache = registry.getLiteralCache();
+        assertNotNull(newCache);
+        assertEquals(1, newCache.size());
+        assertEquals(1, newCache.getHitCount());
+        assertEquals(2, newCache.getMissCount());
+        registry.disableLiteralCache();
+        assertNull(registry.getLiteralCache());
+    }
+
+    @Test
+    void concurrentRegistration() throws Exception {
+        ValueFormatterRegistry registry = new ValueFormatterRegistry("test");
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                for (int i = 0; i < 20000; i++) {
+                    assertEquals("'abc'", registry.format("abc"));
+                    assertEquals(Integer.toString(i), registry.format(i));
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 200; i++) {
+            registry.registerFormatter("f" + i, TokenType.class, Object::toString);
+        }
+        reader.join();
+        assertNull(failure.get());
+        assertEquals("VAR", registry.format(TokenType.VAR));
+    }
+}
@@ -0,0 +1,24 @@
+package com.markgrand.smileyvars;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WeakIdentityMapTest {
+    @Test
+    void identityKeys() {
+        WeakIdentityMap<String, Integer> map = new WeakIdentityMap<>();
+        String key1 = new String("key");
+        String key2 = new String("key");
+        assertEquals(1, map.putIfAbsent(key1, 1));
+        assertEquals(1, map.putIfAbsent(key1, 3));
+        assertNull(map.get(key2));
+        assertEquals(2, map.putIfAbsent(key2, 2));
+        assertEquals(1, map.get(key1));
+        assertEquals(2, map.get(key2));
+        assertEquals(2, map.size());
+        map.clear();
+        assertNull(map.get(key1));
+        assertEquals(0, map.size());
+    }
+}